@@ -0,0 +1,244 @@
+package ru.itmo.ctlab.sgmwcs;
+
+import ru.itmo.ctlab.sgmwcs.graph.IntIntMap;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable snapshot of {@link Signals} stored in primitive arrays.
+ * Signals keep their numbers, units get dense ids, and both unit to signal and
+ * signal to unit relations are stored in compressed sparse row form.
+ * Sets of signals are represented by {@link BitSet}s indexed by signal number,
+ * so set operations and weight sums do not box integers.
+ * The snapshot does not follow later changes of the source {@link Signals}.
+ */
+public class CompactSignals {
+    private final double[] weights;
+    private final int[] signalStart;
+    private final int[] signalUnits;
+    private final int[] unitStart;
+    private final int[] unitSignals;
+    private final Unit[] units;
+    private final IntIntMap nodeIndex;
+    private final IntIntMap edgeIndex;
+
+    public CompactSignals(Signals signals) {
+        int n = signals.size();
+        weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = signals.weightOrNaN(i);
+        }
+        Map<Unit, List<Integer>> unitsSets = signals.unitsView();
+        units = new Unit[unitsSets.size()];
+        nodeIndex = new IntIntMap(unitsSets.size());
+        edgeIndex = new IntIntMap(unitsSets.size());
+        unitStart = new int[units.length + 1];
+        int total = 0;
+        for (List<Integer> l : unitsSets.values()) {
+            total += l.size();
+        }
+        unitSignals = new int[total];
+        int id = 0, pos = 0;
+        for (Map.Entry<Unit, List<Integer>> kvp : unitsSets.entrySet()) {
+            Unit unit = kvp.getKey();
+            units[id] = unit;
+            (unit instanceof Node ? nodeIndex : edgeIndex).put(unit.getNum(), id);
+            unitStart[id] = pos;
+            for (int sig : kvp.getValue()) {
+                unitSignals[pos++] = sig;
+            }
+            id++;
+        }
+        unitStart[id] = pos;
+        signalStart = new int[n + 1];
+        total = 0;
+        for (int i = 0; i < n; i++) {
+            total += signals.units(i).size();
+        }
+        signalUnits = new int[total];
+        pos = 0;
+        for (int i = 0; i < n; i++) {
+            signalStart[i] = pos;
+            for (Unit unit : signals.units(i)) {
+                int u = id(unit);
+                if (u != -1) {
+                    signalUnits[pos++] = u;
+                }
+            }
+        }
+        signalStart[n] = pos;
+    }
+
+    public int size() {
+        return weights.length;
+    }
+
+    public double weight(int sig) {
+        return weights[sig];
+    }
+
+    /**
+     * @return dense id of <code>unit</code> or -1 if it has no signals.
+     */
+    public int id(Unit unit) {
+        return (unit instanceof Node ? nodeIndex : edgeIndex).get(unit.getNum());
+    }
+
+    public Unit unit(int id) {
+        return units[id];
+    }
+
+    public int setSize(int sig) {
+        return signalStart[sig + 1] - signalStart[sig];
+    }
+
+    public void forEachUnit(int sig, Consumer<Unit> action) {
+        for (int i = signalStart[sig]; i < signalStart[sig + 1]; i++) {
+            action.accept(units[signalUnits[i]]);
+        }
+    }
+
+    public List<Unit> set(int sig) {
+        List<Unit> res = new ArrayList<>(setSize(sig));
+        forEachUnit(sig, res::add);
+        return res;
+    }
+
+    public void forEachSignal(Unit unit, IntConsumer action) {
+        int id = id(unit);
+        if (id == -1) {
+            return;
+        }
+        for (int i = unitStart[id]; i < unitStart[id + 1]; i++) {
+            action.accept(unitSignals[i]);
+        }
+    }
+
+    /**
+     * @return sum of weights of all signals of <code>unit</code>.
+     */
+    public double weight(Unit unit) {
+        int id = id(unit);
+        if (id == -1) {
+            return 0;
+        }
+        double res = 0;
+        for (int i = unitStart[id]; i < unitStart[id + 1]; i++) {
+            res += weights[unitSignals[i]];
+        }
+        return res;
+    }
+
+    /**
+     * Adds signals of <code>unit</code> to <code>sets</code>.
+     */
+    public void addTo(BitSet sets, Unit unit) {
+        int id = id(unit);
+        if (id == -1) {
+            return;
+        }
+        for (int i = unitStart[id]; i < unitStart[id + 1]; i++) {
+            sets.set(unitSignals[i]);
+        }
+    }
+
+    public BitSet unitSets(Unit... units) {
+        return unitSets(Arrays.asList(units));
+    }
+
+    public BitSet unitSets(Collection<? extends Unit> units) {
+        BitSet res = new BitSet(size());
+        for (Unit unit : units) {
+            addTo(res, unit);
+        }
+        return res;
+    }
+
+    public BitSet positiveUnitSets(Unit... units) {
+        return positiveUnitSets(Arrays.asList(units));
+    }
+
+    public BitSet positiveUnitSets(Collection<? extends Unit> units) {
+        BitSet res = unitSets(units);
+        for (int i = res.nextSetBit(0); i >= 0; i = res.nextSetBit(i + 1)) {
+            if (!(weights[i] > 0)) {
+                res.clear(i);
+            }
+        }
+        return res;
+    }
+
+    public BitSet negativeUnitSets(Unit... units) {
+        return negativeUnitSets(Arrays.asList(units));
+    }
+
+    public BitSet negativeUnitSets(Collection<? extends Unit> units) {
+        BitSet res = unitSets(units);
+        for (int i = res.nextSetBit(0); i >= 0; i = res.nextSetBit(i + 1)) {
+            if (!(weights[i] < 0)) {
+                res.clear(i);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Same as {@link Signals#minSum(Unit...)}: sums weights of distinct signals
+     * of <code>units</code> which are negative or belong to a single unit.
+     */
+    public double minSum(Unit... units) {
+        return minSum(Arrays.asList(units));
+    }
+
+    public double minSum(Collection<? extends Unit> units) {
+        BitSet sets = unitSets(units);
+        double res = 0;
+        for (int i = sets.nextSetBit(0); i >= 0; i = sets.nextSetBit(i + 1)) {
+            if (setSize(i) == 1 || weights[i] < 0) {
+                res += weights[i];
+            }
+        }
+        return res;
+    }
+
+    public double sum(Collection<? extends Unit> units) {
+        return weightSum(unitSets(units));
+    }
+
+    public double weightSum(BitSet sets) {
+        double res = 0;
+        for (int i = sets.nextSetBit(0); i >= 0; i = sets.nextSetBit(i + 1)) {
+            res += weights[i];
+        }
+        return res;
+    }
+
+    /**
+     * @return sum of negative weights of signals in <code>sets</code>.
+     */
+    public double negativeSum(BitSet sets) {
+        double res = 0;
+        for (int i = sets.nextSetBit(0); i >= 0; i = sets.nextSetBit(i + 1)) {
+            if (weights[i] < 0) {
+                res += weights[i];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return <code>true</code> if every signal of <code>sub</code> is in <code>sets</code>.
+     */
+    public static boolean containsAll(BitSet sets, BitSet sub) {
+        for (int i = sub.nextSetBit(0); i >= 0; i = sub.nextSetBit(i + 1)) {
+            if (!sets.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
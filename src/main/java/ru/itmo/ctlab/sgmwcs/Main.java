@@ -4,7 +4,11 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import ru.itmo.ctlab.sgmwcs.graph.*;
 import ru.itmo.ctlab.sgmwcs.solver.ComponentSolver;
+import ru.itmo.ctlab.sgmwcs.solver.PreprocessingCache;
+import ru.itmo.ctlab.sgmwcs.solver.PreprocessingStats;
+import ru.itmo.ctlab.sgmwcs.solver.Separator;
 import ru.itmo.ctlab.sgmwcs.solver.SolverException;
+import ru.itmo.ctlab.sgmwcs.solver.SolverPool;
 import ru.itmo.ctlab.sgmwcs.solver.Utils;
 
 import java.io.File;
@@ -39,7 +43,8 @@ public class Main {
         OptionSet optionSet = optionParser.parse(args);
         optionParser.acceptsAll(asList("n", "nodes"), "Node list file").withRequiredArg().required();
         optionParser.acceptsAll(asList("e", "edges"), "Edge list file").withRequiredArg().required();
-        optionParser.acceptsAll(asList("s", "signals"), "Signals file").withRequiredArg().required();
+        optionParser.acceptsAll(asList("s", "signals"), "Signals file, required unless --binary is given")
+                .withRequiredArg();
         optionParser.acceptsAll(asList("m", "threads"), "Number of threads")
                 .withRequiredArg().ofType(Integer.class).defaultsTo(1);
         optionParser.acceptsAll(asList("t", "timelimit"), "Timelimit in seconds (<= 0 - unlimited)")
@@ -54,8 +59,34 @@ public class Main {
                 .withOptionalArg().defaultsTo("");
         optionParser.acceptsAll(asList("pl", "preprocessing-level"), "Disable preprocessing")
                 .withOptionalArg().ofType(Integer.class).defaultsTo(2);
+        optionParser.acceptsAll(asList("pt", "preprocessing-time"), "Share of time limit available for preprocessing")
+                .withRequiredArg().ofType(Double.class).defaultsTo(0.5);
+        optionParser.acceptsAll(asList("ap", "adaptive-preprocessing"),
+                "Skip reduction rules which reduce few units per second");
+        optionParser.acceptsAll(asList("js", "java-solver"),
+                "Solve components of at most this many nodes without CPLEX, 0 - never")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        optionParser.acceptsAll(asList("st", "separation-threads"),
+                "Number of threads separating connectivity cuts of each component")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        optionParser.acceptsAll(asList("bc", "back-cuts"), "Also separate connectivity cuts closest to sinks");
+        optionParser.acceptsAll(asList("nc", "nested-cuts"), "Number of nested connectivity cuts per sink")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        optionParser.acceptsAll(asList("cf", "creep-flow"), "Capacity added to edges while separating cuts")
+                .withRequiredArg().ofType(Double.class).defaultsTo(Separator.ADDITION_CAPACITY);
         optionParser.acceptsAll(asList("f", "stats-file"), "Dump stats").withOptionalArg().ofType(String.class).defaultsTo("");
         optionParser.acceptsAll(Collections.singletonList("mst"), "Use primal heuristic only").withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        optionParser.acceptsAll(asList("cg", "compact-graph"), "Use compact CSR graph representation");
+        optionParser.acceptsAll(asList("mm", "mmap"), "Read input files through memory mapping");
+        optionParser.acceptsAll(asList("b", "binary"), "Read instance from a binary file written by --convert, " +
+                "node and edge files only name output files").withRequiredArg();
+        optionParser.accepts("convert", "Convert input files to a binary instance file and exit")
+                .withRequiredArg();
+        optionParser.accepts("cache", "Directory of cache of preprocessed instances").withRequiredArg();
+        optionParser.accepts("cache-size", "Size limit of cache of preprocessed instances in megabytes")
+                .withRequiredArg().ofType(Long.class).defaultsTo(1024L);
+        optionParser.accepts("prep-stats", "Write metrics of reduction rules to file, " +
+                "CSV if its name ends with .csv and JSON otherwise").withRequiredArg();
         if (optionSet.has("h")) {
             optionParser.printHelpOn(System.out);
             System.exit(0);
@@ -72,6 +103,12 @@ public class Main {
             optionParser.printHelpOn(System.err);
             System.exit(1);
         }
+        if (!optionSet.has("s") && !optionSet.has("b")) {
+            System.err.println("Missing required option(s) [s/signals]");
+            System.err.println();
+            optionParser.printHelpOn(System.err);
+            System.exit(1);
+        }
         return optionSet;
     }
 
@@ -89,25 +126,68 @@ public class Main {
         int threads = (Integer) optionSet.valueOf("m");
         File nodeFile = new File((String) optionSet.valueOf("nodes"));
         File edgeFile = new File((String) optionSet.valueOf("edges"));
-        File signalFile = new File((String) optionSet.valueOf("signals"));
+        File signalFile = optionSet.has("s") ? new File((String) optionSet.valueOf("signals")) : null;
         double edgePenalty = (Double) optionSet.valueOf("p");
         int logLevel = (Integer) optionSet.valueOf("l");
         int preprocessLevel = (Integer) optionSet.valueOf("pl");
+        double preprocessingShare = (Double) optionSet.valueOf("pt");
+        int javaSolverSize = (Integer) optionSet.valueOf("js");
+        int separationThreads = (Integer) optionSet.valueOf("st");
+        int nestedCuts = (Integer) optionSet.valueOf("nc");
+        double creepFlow = (Double) optionSet.valueOf("cf");
         int heuristicOnly = (Integer) optionSet.valueOf("mst");
         String bmOutput = (String) optionSet.valueOf("bm");
         String statsFile = (String) optionSet.valueOf("f");
+        boolean compactGraph = optionSet.has("cg");
+        boolean memoryMapped = optionSet.has("mm");
+        File binaryFile = optionSet.has("b") ? new File((String) optionSet.valueOf("b")) : null;
+        File convertFile = optionSet.has("convert") ? new File((String) optionSet.valueOf("convert")) : null;
         if (edgePenalty < 0) {
             System.err.println("Edge penalty can't be negative");
             System.exit(1);
         }
+        if (preprocessingShare < 0 || preprocessingShare > 1) {
+            System.err.println("Share of time for preprocessing must be between 0 and 1");
+            System.exit(1);
+        }
+        if (javaSolverSize < 0) {
+            System.err.println("Size of components for the Java solver can't be negative");
+            System.exit(1);
+        }
+        if (separationThreads < 1) {
+            System.err.println("Number of separation threads must be positive");
+            System.exit(1);
+        }
+        if (nestedCuts < 0 || creepFlow < 0) {
+            System.err.println("Number of nested cuts and creep flow can't be negative");
+            System.exit(1);
+        }
         // Solver solver = new BlockSolver();
         ComponentSolver solver = new ComponentSolver(threshold, edgePenalty > 0);
-        solver.setThreadsNum(threads);
+        SolverPool pool = new SolverPool(threads);
+        solver.setPool(pool);
         solver.setTimeLimit(tl);
         solver.setLogLevel(logLevel);
         solver.setPreprocessingLevel(preprocessLevel);
+        solver.setPreprocessingShare(preprocessingShare);
+        solver.setAdaptivePreprocessing(optionSet.has("ap"));
+        solver.setJavaSolverSize(javaSolverSize);
+        solver.setSeparationThreads(separationThreads);
+        solver.setCutFamilies(optionSet.has("bc"), nestedCuts, creepFlow);
         solver.setCplexOff(heuristicOnly > 0);
+        solver.setCompactGraph(compactGraph);
+        if (optionSet.has("cache")) {
+            long cacheSize = (Long) optionSet.valueOf("cache-size");
+            solver.setPreprocessingCache(new PreprocessingCache(new File((String) optionSet.valueOf("cache")),
+                    cacheSize << 20));
+        }
+        PreprocessingStats prepStats = optionSet.has("prep-stats") ? new PreprocessingStats() : null;
+        solver.setPreprocessingStats(prepStats);
         GraphIO graphIO = new GraphIO(nodeFile, edgeFile, signalFile);
+        graphIO.setMemoryMapped(memoryMapped);
+        graphIO.setThreads(threads);
+        graphIO.setPool(pool.forkJoinPool());
+        graphIO.setBinary(binaryFile);
         try {
             long before = System.currentTimeMillis();
             Graph graph = graphIO.read();
@@ -115,6 +195,10 @@ public class Main {
                     graph.edgeSet().size() + " edges and " +
                     graph.vertexSet().size() + " nodes");
             Signals signals = graphIO.getSignals();
+            if (convertFile != null) {
+                graphIO.writeBinary(graph, convertFile);
+                return;
+            }
             /*if (edgePenalty > 0) {
                 signals.addEdgePenalties(-edgePenalty);
             }*/
@@ -124,6 +208,9 @@ public class Main {
             }
             List<Unit> units = solver.solve(graph, signals);
             long now = System.currentTimeMillis();
+            if (prepStats != null) {
+                prepStats.write(new File((String) optionSet.valueOf("prep-stats")));
+            }
             if (solver.isSolvedToOptimality()) {
                 System.out.println("SOLVED TO OPTIMALITY");
             }
@@ -148,7 +235,8 @@ public class Main {
                     new GraphPrinter(solGraph, signals).toTSV("nodes-sol.tsv", "edges-sol.tsv");
                 printStats(solver.isSolvedToOptimality() ? 1 : 0, solver.preprocessedNodes(), solver.preprocessedEdges(),
                         solGraph, timeConsumed, statsFile,
-                        nodeFile.getAbsolutePath(), edgeFile.getAbsolutePath(), signalFile.getAbsolutePath());
+                        nodeFile.getAbsolutePath(), edgeFile.getAbsolutePath(),
+                        (signalFile != null ? signalFile : binaryFile).getAbsolutePath());
             }
             graphIO.write(units);
         } catch (ParseException e) {
@@ -157,6 +245,8 @@ public class Main {
             System.err.println("Error occurred while solving:" + e.getMessage());
         } catch (IOException e) {
             System.err.println("Error occurred while reading/writing input/output files");
+        } finally {
+            pool.close();
         }
     }
 
@@ -32,15 +32,37 @@ public class Signals {
         return s;
     }
 
+    /**
+     * Projects <code>signals</code> onto <code>subset</code> of units keeping
+     * only signals of these units. Work is proportional to the signals
+     * touched by the subset rather than to the whole signal table.
+     */
     public Signals(Signals signals, Set<Unit> subset) {
         this();
+        int[] touched = new int[16];
+        int n = 0;
         for (Unit unit : subset) {
             unitsSets.put(unit, new ArrayList<>());
+            List<Integer> us = signals.unitsSets.get(unit);
+            if (us == null) {
+                continue;
+            }
+            for (int sig : us) {
+                if (n == touched.length) {
+                    touched = Arrays.copyOf(touched, 2 * n);
+                }
+                touched[n++] = sig;
+            }
         }
+        Arrays.sort(touched, 0, n);
         int j = 0;
-        for (int i = 0; i < signals.size(); i++) {
+        for (int k = 0; k < n; k++) {
+            int i = touched[k];
+            if (k > 0 && touched[k - 1] == i) {
+                continue;
+            }
             Set<Unit> set = new HashSet<>();
-            for (Unit unit : signals.set(i)) {
+            for (Unit unit : signals.sets.get(i)) {
                 if (subset.contains(unit)) {
                     set.add(unit);
                     unitsSets.get(unit).add(j);
@@ -205,6 +227,28 @@ public class Signals {
         return distinct ? res.distinct() : res;
     }
 
+    /**
+     * @return weight of the signal or <code>NaN</code> if it isn't set.
+     */
+    double weightOrNaN(int num) {
+        OptionalDouble w = weights.get(num);
+        return w.isPresent() ? w.getAsDouble() : Double.NaN;
+    }
+
+    /**
+     * @return read-only view of units of the signal.
+     */
+    Set<Unit> units(int num) {
+        return Collections.unmodifiableSet(sets.get(num));
+    }
+
+    /**
+     * @return read-only view of signals of every unit.
+     */
+    Map<Unit, List<Integer>> unitsView() {
+        return Collections.unmodifiableMap(unitsSets);
+    }
+
     public List<Unit> set(int num) {
         List<Unit> result = new ArrayList<>(sets.get(num));
         return result;
@@ -0,0 +1,175 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+
+/**
+ * Versioned binary form of an instance. All sections are stored as big endian arrays:
+ * <pre>
+ * header         int magic, version, nodes, edges, signals, links, nodeNameBytes, signalNameBytes
+ * ends           int[2 * edges]     node ids of edge ends, counting from 0
+ * weights        double[signals]
+ * unitOffsets    int[nodes + edges + 1]  CSR of signals of nodes followed by edges
+ * unitSignals    int[links]
+ * nodeNames      int[nodes + 1] offsets followed by byte[nodeNameBytes] of UTF-8 names
+ * signalNames    int[signals + 1] offsets followed by byte[signalNameBytes]
+ * </pre>
+ * Sections are read from memory mapped regions by bulk copies, no tokenizing
+ * or hashing of names is done while loading.
+ */
+class BinaryInstance {
+    static final int MAGIC = 0x53474D57;
+    static final int VERSION = 1;
+    private static final int HEADER = 8 * 4;
+    private static final int MAX_REGION = 1 << 28;
+
+    int nodes;
+    int edges;
+    int[] ends;
+    double[] weights;
+    int[] unitOffsets;
+    int[] unitSignals;
+    NameDictionary nodeNames;
+    NameDictionary signalNames;
+
+    void write(File out) throws IOException {
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16))) {
+            int[] header = {MAGIC, VERSION, nodes, edges, weights.length, unitOffsets[nodes + edges],
+                    nodeNames.bytesUsed(), signalNames.bytesUsed()};
+            for (int v : header) {
+                os.writeInt(v);
+            }
+            writeInts(os, ends, 2 * edges);
+            for (double w : weights) {
+                os.writeDouble(w);
+            }
+            writeInts(os, unitOffsets, nodes + edges + 1);
+            writeInts(os, unitSignals, unitOffsets[nodes + edges]);
+            writeNames(os, nodeNames, nodes);
+            writeNames(os, signalNames, weights.length);
+        }
+    }
+
+    private static void writeInts(DataOutputStream os, int[] a, int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            os.writeInt(a[i]);
+        }
+    }
+
+    private static void writeNames(DataOutputStream os, NameDictionary names, int size) throws IOException {
+        for (int i = 0; i <= size; i++) {
+            os.writeInt(names.offset(i));
+        }
+        os.write(names.bytes(), 0, names.bytesUsed());
+    }
+
+    static BinaryInstance read(File in) throws IOException, ParseException {
+        try (RandomAccessFile file = new RandomAccessFile(in, "r");
+             FileChannel channel = file.getChannel()) {
+            long length = channel.size();
+            if (length < HEADER) {
+                throw new ParseException("Binary instance is truncated at byte", (int) length);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt() != MAGIC) {
+                throw new ParseException("Not a binary instance file, byte", 0);
+            }
+            if (header.getInt() != VERSION) {
+                throw new ParseException("Unsupported version of binary instance, byte", 4);
+            }
+            int[] counts = new int[6];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = header.getInt();
+                if (counts[i] < 0) {
+                    throw new ParseException("Negative section size in binary instance header, byte", 8 + 4 * i);
+                }
+            }
+            BinaryInstance res = new BinaryInstance();
+            res.nodes = counts[0];
+            res.edges = counts[1];
+            int signals = counts[2];
+            long units = (long) res.nodes + res.edges;
+            long expected = HEADER + 4L * (2L * res.edges + units + 1 + counts[3] + res.nodes + 1 + signals + 1)
+                    + 8L * signals + counts[4] + counts[5];
+            if (length != expected) {
+                throw new ParseException("Binary instance size doesn't match its header, byte", (int) Math.min(length, Integer.MAX_VALUE));
+            }
+            if (2L * res.edges >= Integer.MAX_VALUE || units >= Integer.MAX_VALUE) {
+                throw new ParseException("Binary instance is too large, byte", 8);
+            }
+            long pos = HEADER;
+            res.ends = new int[2 * res.edges];
+            pos = readInts(channel, pos, res.ends);
+            res.weights = new double[signals];
+            pos = readDoubles(channel, pos, res.weights);
+            res.unitOffsets = new int[(int) units + 1];
+            pos = readInts(channel, pos, res.unitOffsets);
+            res.unitSignals = new int[counts[3]];
+            pos = readInts(channel, pos, res.unitSignals);
+            int[] nodeOffsets = new int[res.nodes + 1];
+            pos = readInts(channel, pos, nodeOffsets);
+            byte[] nodeBytes = new byte[counts[4]];
+            pos = readBytes(channel, pos, nodeBytes);
+            int[] signalOffsets = new int[signals + 1];
+            pos = readInts(channel, pos, signalOffsets);
+            byte[] signalBytes = new byte[counts[5]];
+            readBytes(channel, pos, signalBytes);
+            checkRange(res.ends, res.nodes, "Edge end out of range in binary instance, index");
+            checkRange(res.unitSignals, signals, "Signal id out of range in binary instance, index");
+            checkOffsets(res.unitOffsets, counts[3]);
+            checkOffsets(nodeOffsets, counts[4]);
+            checkOffsets(signalOffsets, counts[5]);
+            res.nodeNames = new NameDictionary(nodeBytes, nodeOffsets, res.nodes);
+            res.signalNames = new NameDictionary(signalBytes, signalOffsets, signals);
+            return res;
+        }
+    }
+
+    private static void checkRange(int[] a, int bound, String message) throws ParseException {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] < 0 || a[i] >= bound) {
+                throw new ParseException(message, i);
+            }
+        }
+    }
+
+    private static void checkOffsets(int[] offsets, int end) throws ParseException {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+            throw new ParseException("Wrong offsets in binary instance, index", 0);
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new ParseException("Wrong offsets in binary instance, index", i);
+            }
+        }
+    }
+
+    private static long readInts(FileChannel channel, long pos, int[] a) throws IOException {
+        for (int from = 0; from < a.length; from += MAX_REGION / 4) {
+            int len = Math.min(MAX_REGION / 4, a.length - from);
+            channel.map(FileChannel.MapMode.READ_ONLY, pos, 4L * len).asIntBuffer().get(a, from, len);
+            pos += 4L * len;
+        }
+        return pos;
+    }
+
+    private static long readDoubles(FileChannel channel, long pos, double[] a) throws IOException {
+        for (int from = 0; from < a.length; from += MAX_REGION / 8) {
+            int len = Math.min(MAX_REGION / 8, a.length - from);
+            channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * len).asDoubleBuffer().get(a, from, len);
+            pos += 8L * len;
+        }
+        return pos;
+    }
+
+    private static long readBytes(FileChannel channel, long pos, byte[] a) throws IOException {
+        for (int from = 0; from < a.length; from += MAX_REGION) {
+            int len = Math.min(MAX_REGION, a.length - from);
+            channel.map(FileChannel.MapMode.READ_ONLY, pos, len).get(a, from, len);
+            pos += len;
+        }
+        return pos;
+    }
+}
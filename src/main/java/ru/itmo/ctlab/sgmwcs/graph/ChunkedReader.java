@@ -0,0 +1,235 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * {@link TokenSource} which splits a memory mapped file into chunks ending at
+ * line boundaries and tokenizes them in parallel. Every chunk records offsets,
+ * lengths and {@link NameDictionary} hashes of tokens of its meaningful lines,
+ * so the consumer walks the file in order and only resolves names.
+ * Lines and tokens are the same as ones of {@link MappedReader}.
+ */
+class ChunkedReader implements TokenSource {
+    private static final long MAX_CHUNK = 1 << 30;
+    private static final long MIN_CHUNK = 1 << 20;
+    private static final int WINDOW = 1 << 16;
+
+    private final List<ForkJoinTask<Chunk>> chunks;
+    private int chunkIndex;
+    private Chunk chunk;
+    private ByteBuffer view;
+    private int lineBase;
+    private int line;
+    private int tokenIndex;
+    private int tokenEnd;
+    private int lineNumber;
+    private byte[] token;
+    private int tokenLength;
+    private int tokenHash;
+
+    ChunkedReader(File in, ForkJoinPool pool) throws IOException {
+        this(in, pool, MIN_CHUNK);
+    }
+
+    /**
+     * @param minChunk minimal size of a chunk in bytes, chunks are extended up to the next line end.
+     */
+    ChunkedReader(File in, ForkJoinPool pool, long minChunk) throws IOException {
+        chunks = new ArrayList<>();
+        token = new byte[64];
+        try (RandomAccessFile file = new RandomAccessFile(in, "r");
+             FileChannel channel = file.getChannel()) {
+            long length = channel.size();
+            long size = Math.max(minChunk, length / (4L * pool.getParallelism()) + 1);
+            size = Math.min(size, MAX_CHUNK);
+            long from = 0;
+            while (from < length) {
+                long to = from + size >= length ? length : lineEnd(channel, from + size, length);
+                if (to - from > Integer.MAX_VALUE) {
+                    to = from + size;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                chunks.add(pool.submit(() -> new Chunk(buffer)));
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * @return position right after the first '\n' at or after <code>from</code>.
+     */
+    private static long lineEnd(FileChannel channel, long from, long length) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(WINDOW);
+        while (from < length) {
+            window.clear();
+            int read = channel.read(window, from);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            from += read;
+        }
+        return length;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f';
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static class Chunk {
+        private final ByteBuffer buffer;
+        private int lines;
+        private int[] lineData = new int[32];
+        private int lineCount;
+        private int[] tokens = new int[96];
+        private int tokenCount;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+            int n = buffer.limit();
+            int pos = 0;
+            while (pos < n) {
+                lines++;
+                boolean comment = buffer.get(pos) == '#';
+                int first = tokenCount;
+                while (pos < n) {
+                    byte b = buffer.get(pos);
+                    if (isLineEnd(b)) {
+                        break;
+                    }
+                    if (isSpace(b)) {
+                        pos++;
+                        continue;
+                    }
+                    int start = pos;
+                    int h = NameDictionary.HASH_SEED;
+                    while (pos < n && !isSpace(b) && !isLineEnd(b)) {
+                        h = NameDictionary.step(h, b);
+                        if (++pos < n) {
+                            b = buffer.get(pos);
+                        }
+                    }
+                    if (!comment) {
+                        addToken(start, pos - start, NameDictionary.finish(h));
+                    }
+                }
+                if (pos < n && buffer.get(pos++) == '\r' && pos < n && buffer.get(pos) == '\n') {
+                    pos++;
+                }
+                if (tokenCount > first) {
+                    if (2 * lineCount + 2 > lineData.length) {
+                        lineData = Arrays.copyOf(lineData, lineData.length * 2);
+                    }
+                    lineData[2 * lineCount] = lines;
+                    lineData[2 * lineCount + 1] = first;
+                    lineCount++;
+                }
+            }
+        }
+
+        private void addToken(int start, int len, int hash) {
+            if (3 * tokenCount + 3 > tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[3 * tokenCount] = start;
+            tokens[3 * tokenCount + 1] = len;
+            tokens[3 * tokenCount + 2] = hash;
+            tokenCount++;
+        }
+    }
+
+    @Override
+    public boolean nextLine() {
+        while (chunk == null || line + 1 >= chunk.lineCount) {
+            if (chunk != null) {
+                lineBase += chunk.lines;
+            }
+            if (chunkIndex == chunks.size()) {
+                tokenIndex = tokenEnd;
+                return false;
+            }
+            chunk = chunks.get(chunkIndex++).join();
+            view = chunk.buffer.duplicate();
+            line = -1;
+        }
+        line++;
+        lineNumber = lineBase + chunk.lineData[2 * line];
+        tokenIndex = chunk.lineData[2 * line + 1];
+        tokenEnd = line + 1 < chunk.lineCount ? chunk.lineData[2 * line + 3] : chunk.tokenCount;
+        return true;
+    }
+
+    @Override
+    public boolean isComment() {
+        return false;
+    }
+
+    @Override
+    public boolean nextToken() {
+        if (tokenIndex == tokenEnd) {
+            tokenLength = 0;
+            return false;
+        }
+        int[] tokens = chunk.tokens;
+        tokenLength = tokens[3 * tokenIndex + 1];
+        tokenHash = tokens[3 * tokenIndex + 2];
+        if (tokenLength > token.length) {
+            token = new byte[Math.max(tokenLength, 2 * token.length)];
+        }
+        view.position(tokens[3 * tokenIndex]);
+        view.get(token, 0, tokenLength);
+        tokenIndex++;
+        return true;
+    }
+
+    @Override
+    public byte[] token() {
+        return token;
+    }
+
+    @Override
+    public int tokenLength() {
+        return tokenLength;
+    }
+
+    @Override
+    public int tokenHash() {
+        return tokenHash;
+    }
+
+    @Override
+    public String tokenString() {
+        return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() {
+        for (ForkJoinTask<Chunk> task : chunks) {
+            task.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,676 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed sparse row implementation of {@link Graph}.
+ * Vertices and edges get dense int ids in order of insertion. Endpoints of edges
+ * are kept in primitive arrays and adjacency of every vertex is a block of edge ids
+ * inside of one shared int array, so no objects are allocated per edge.
+ * Blocks are relocated to the end of the array when they overflow and
+ * the array is compacted when more than a half of it is garbage.
+ * Iteration order is the same as in {@link Graph}.
+ * For every vertex the number of adjacency entries leading to an already seen
+ * neighbor is maintained, so neighbors of vertices without parallel edges
+ * are enumerated without deduplication.
+ * Ids of removed units are not reused, so the id space is renumbered
+ * by {@link #compact()} once more than a half of it is dead.
+ */
+public class CompactGraph extends Graph {
+    private static final int MIN_BLOCK = 4;
+    private static final int MIN_COMPACTION = 256;
+
+    private Node[] nodes;
+    private Edge[] edges;
+    private int[] source;
+    private int[] target;
+    private int[] start;
+    private int[] size;
+    private int[] capacity;
+    private int[] parallel;
+    private int[] adj;
+    private int adjEnd;
+    private int adjUsed;
+    private int vertexIds;
+    private int edgeIds;
+    private int vertexCount;
+    private int edgeCount;
+    private IntIntMap vertexIndex;
+    private IntIntMap edgeIndex;
+    private final ThreadLocal<Marks> marks = ThreadLocal.withInitial(Marks::new);
+
+    public CompactGraph() {
+        nodes = new Node[16];
+        start = new int[16];
+        size = new int[16];
+        capacity = new int[16];
+        parallel = new int[16];
+        edges = new Edge[16];
+        source = new int[16];
+        target = new int[16];
+        adj = new int[64];
+        vertexIndex = new IntIntMap();
+        edgeIndex = new IntIntMap();
+    }
+
+    public CompactGraph(Graph that) {
+        this();
+        Map<Node, Node> oldToNew = new HashMap<>();
+        that.vertexSet().forEach(v -> {
+            Node newV = new Node(v);
+            addVertex(newV);
+            oldToNew.put(v, newV);
+        });
+        that.edgeSet().forEach(e -> addEdge(
+                oldToNew.get(that.getEdgeSource(e)),
+                oldToNew.get(that.getEdgeTarget(e)),
+                new Edge(e))
+        );
+    }
+
+    /**
+     * Builds compact representation of <code>graph</code> sharing
+     * its {@link Node} and {@link Edge} instances.
+     */
+    public static CompactGraph of(Graph graph) {
+        if (graph instanceof CompactGraph) {
+            return (CompactGraph) graph;
+        }
+        CompactGraph res = new CompactGraph();
+        graph.vertexSet().forEach(res::addVertex);
+        for (Edge e : graph.edgeSet()) {
+            res.addEdge(graph.getEdgeSource(e), graph.getEdgeTarget(e), e);
+        }
+        return res;
+    }
+
+    private int vid(Node v) {
+        int id = vertexIndex.get(v.getNum());
+        if (id == -1) {
+            throw new IllegalArgumentException();
+        }
+        return id;
+    }
+
+    private int eid(Edge e) {
+        int id = edgeIndex.get(e.getNum());
+        if (id == -1) {
+            throw new IllegalArgumentException();
+        }
+        return id;
+    }
+
+    private int opposite(int v, int e) {
+        return source[e] == v ? target[e] : source[e];
+    }
+
+    @Override
+    public void addVertex(Node v) {
+        if (vertexIndex.containsKey(v.getNum())) {
+            throw new IllegalArgumentException();
+        }
+        if (vertexIds == nodes.length) {
+            int len = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, len);
+            start = Arrays.copyOf(start, len);
+            size = Arrays.copyOf(size, len);
+            capacity = Arrays.copyOf(capacity, len);
+            parallel = Arrays.copyOf(parallel, len);
+        }
+        int id = vertexIds++;
+        nodes[id] = v;
+        vertexIndex.put(v.getNum(), id);
+        vertexCount++;
+    }
+
+    @Override
+    public void addEdge(Node v, Node u, Edge e) {
+        if (edgeIndex.containsKey(e.getNum())) {
+            throw new IllegalArgumentException();
+        }
+        int from = vid(v), to = vid(u);
+        if (edgeIds == edges.length) {
+            int len = edges.length * 2;
+            edges = Arrays.copyOf(edges, len);
+            source = Arrays.copyOf(source, len);
+            target = Arrays.copyOf(target, len);
+        }
+        int id = edgeIds++;
+        edges[id] = e;
+        source[id] = from;
+        target[id] = to;
+        edgeIndex.put(e.getNum(), id);
+        edgeCount++;
+        if (from == to) {
+            parallel[from] += adjacent(from, from) ? 2 : 1;
+        } else if (adjacent(from, to)) {
+            parallel[from]++;
+            parallel[to]++;
+        }
+        append(from, id);
+        append(to, id);
+    }
+
+    private boolean adjacent(int v, int u) {
+        if (size[u] < size[v]) {
+            int t = u;
+            u = v;
+            v = t;
+        }
+        for (int i = start[v], end = i + size[v]; i < end; i++) {
+            if (opposite(v, adj[i]) == u) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(int v, int e) {
+        if (size[v] == capacity[v]) {
+            int cap = Math.max(MIN_BLOCK, capacity[v] * 2);
+            reserve(cap);
+            System.arraycopy(adj, start[v], adj, adjEnd, size[v]);
+            start[v] = adjEnd;
+            adjEnd += cap;
+            adjUsed += cap - capacity[v];
+            capacity[v] = cap;
+        }
+        adj[start[v] + size[v]++] = e;
+    }
+
+    private void reserve(int cap) {
+        if (adjEnd + cap <= adj.length) {
+            return;
+        }
+        if (2 * (adjUsed + cap) <= adj.length) {
+            compactAdjacency(adj.length);
+        } else {
+            compactAdjacency(Math.max(adj.length * 2, adjUsed + cap));
+        }
+    }
+
+    private void compactAdjacency(int len) {
+        int[] res = new int[len];
+        int pos = 0;
+        for (int v = 0; v < vertexIds; v++) {
+            if (nodes[v] == null) {
+                continue;
+            }
+            System.arraycopy(adj, start[v], res, pos, size[v]);
+            start[v] = pos;
+            pos += capacity[v];
+        }
+        adj = res;
+        adjEnd = pos;
+    }
+
+    private void detach(int v, int e) {
+        int from = start[v], to = from + size[v];
+        for (int i = from; i < to; i++) {
+            if (adj[i] == e) {
+                System.arraycopy(adj, i + 1, adj, i, to - i - 1);
+                size[v]--;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Set<Edge> edgesOf(Node v) {
+        int id = vid(v);
+        Set<Edge> res = new LinkedHashSet<>();
+        for (int i = start[id], end = i + size[id]; i < end; i++) {
+            res.add(edges[adj[i]]);
+        }
+        return res;
+    }
+
+    @Override
+    public Node getOppositeVertex(Node v, Edge e) {
+        int id = eid(e);
+        int u = vertexIndex.get(v.getNum());
+        if (source[id] == u) {
+            return nodes[target[id]];
+        }
+        if (target[id] == u) {
+            return nodes[source[id]];
+        }
+        throw new IllegalArgumentException();
+    }
+
+    @Override
+    public boolean containsEdge(Edge e) {
+        return edgeIndex.containsKey(e.getNum());
+    }
+
+    @Override
+    public boolean containsVertex(Node v) {
+        return vertexIndex.containsKey(v.getNum());
+    }
+
+    @Override
+    public void removeVertex(Node v) {
+        int id = vid(v);
+        while (size[id] > 0) {
+            unlink(adj[start[id] + size[id] - 1]);
+        }
+        nodes[id] = null;
+        parallel[id] = 0;
+        adjUsed -= capacity[id];
+        capacity[id] = 0;
+        vertexIndex.remove(v.getNum());
+        vertexCount--;
+        compactIfNeeded();
+    }
+
+    @Override
+    public void removeEdge(Edge e) {
+        unlink(eid(e));
+        compactIfNeeded();
+    }
+
+    private void unlink(int id) {
+        Edge e = edges[id];
+        int from = source[id], to = target[id];
+        detach(from, id);
+        detach(to, id);
+        if (from == to) {
+            parallel[from] -= adjacent(from, from) ? 2 : 1;
+        } else if (adjacent(from, to)) {
+            parallel[from]--;
+            parallel[to]--;
+        }
+        edges[id] = null;
+        edgeIndex.remove(e.getNum());
+        edgeCount--;
+    }
+
+    private void compactIfNeeded() {
+        int deadVertices = vertexIds - vertexCount;
+        int deadEdges = edgeIds - edgeCount;
+        if (deadVertices > MIN_COMPACTION && deadVertices > vertexCount
+                || deadEdges > MIN_COMPACTION && deadEdges > edgeCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Renumbers vertices and edges densely preserving their order
+     * and packs adjacency blocks to the beginning of a new array.
+     * Does nothing if no vertex or edge was removed since the last compaction.
+     */
+    @Override
+    public void compact() {
+        if (vertexIds == vertexCount && edgeIds == edgeCount) {
+            return;
+        }
+        int[] vmap = new int[vertexIds];
+        int n = 0;
+        for (int v = 0; v < vertexIds; v++) {
+            if (nodes[v] != null) {
+                vmap[v] = n;
+                nodes[n] = nodes[v];
+                start[n] = start[v];
+                size[n] = size[v];
+                capacity[n] = capacity[v];
+                parallel[n] = parallel[v];
+                n++;
+            }
+        }
+        Arrays.fill(nodes, n, vertexIds, null);
+        int[] emap = new int[edgeIds];
+        int m = 0;
+        for (int e = 0; e < edgeIds; e++) {
+            if (edges[e] != null) {
+                emap[e] = m;
+                edges[m] = edges[e];
+                source[m] = vmap[source[e]];
+                target[m] = vmap[target[e]];
+                m++;
+            }
+        }
+        Arrays.fill(edges, m, edgeIds, null);
+        int[] res = new int[Math.max(64, 2 * adjUsed)];
+        int pos = 0;
+        for (int v = 0; v < n; v++) {
+            for (int i = 0; i < size[v]; i++) {
+                res[pos + i] = emap[adj[start[v] + i]];
+            }
+            start[v] = pos;
+            pos += capacity[v];
+        }
+        adj = res;
+        adjEnd = pos;
+        vertexIds = n;
+        edgeIds = m;
+        vertexIndex = new IntIntMap(n);
+        for (int v = 0; v < n; v++) {
+            vertexIndex.put(nodes[v].getNum(), v);
+        }
+        edgeIndex = new IntIntMap(m);
+        for (int e = 0; e < m; e++) {
+            edgeIndex.put(edges[e].getNum(), e);
+        }
+    }
+
+    @Override
+    public int liveLinks() {
+        return edgeCount;
+    }
+
+    @Override
+    public int deadLinks() {
+        return edgeIds - edgeCount;
+    }
+
+    @Override
+    public List<Edge> getAllEdges(Node v, Node u) {
+        int a = vid(v), b = vid(u);
+        List<Edge> res = new ArrayList<>();
+        for (int i = start[a], end = i + size[a]; i < end; i++) {
+            if (opposite(a, adj[i]) == b) {
+                res.add(edges[adj[i]]);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Edge getEdge(Node v, Node u) {
+        int a = vid(v);
+        int b = vertexIndex.get(u.getNum());
+        for (int i = start[a], end = i + size[a]; i < end; i++) {
+            if (opposite(a, adj[i]) == b) {
+                return edges[adj[i]];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Node> neighborListOf(Node v) {
+        int id = vid(v);
+        List<Node> res = new ArrayList<>(size[id]);
+        forEachNeighbor(id, u -> res.add(nodes[u]));
+        return res;
+    }
+
+    @Override
+    public void forEachNeighbor(Node v, Consumer<Node> action) {
+        int id = vid(v);
+        int from = start[id], to = from + size[id];
+        if (parallel[id] == 0) {
+            for (int i = from; i < to; i++) {
+                action.accept(nodes[opposite(id, adj[i])]);
+            }
+            return;
+        }
+        Marks seen = marks.get().acquire(vertexIds);
+        try {
+            for (int i = from; i < to; i++) {
+                int u = opposite(id, adj[i]);
+                if (seen.add(u)) {
+                    action.accept(nodes[u]);
+                }
+            }
+        } finally {
+            seen.release();
+        }
+    }
+
+    @Override
+    public void forEachNeighborNum(Node v, IntConsumer action) {
+        int id = vid(v);
+        int from = start[id], to = from + size[id];
+        if (parallel[id] == 0) {
+            for (int i = from; i < to; i++) {
+                action.accept(nodes[opposite(id, adj[i])].getNum());
+            }
+            return;
+        }
+        Marks seen = marks.get().acquire(vertexIds);
+        try {
+            for (int i = from; i < to; i++) {
+                int u = opposite(id, adj[i]);
+                if (seen.add(u)) {
+                    action.accept(nodes[u].getNum());
+                }
+            }
+        } finally {
+            seen.release();
+        }
+    }
+
+    private void forEachNeighbor(int v, IntConsumer action) {
+        int from = start[v], to = from + size[v];
+        if (parallel[v] == 0) {
+            for (int i = from; i < to; i++) {
+                action.accept(opposite(v, adj[i]));
+            }
+            return;
+        }
+        Marks seen = marks.get().acquire(vertexIds);
+        try {
+            for (int i = from; i < to; i++) {
+                int u = opposite(v, adj[i]);
+                if (seen.add(u)) {
+                    action.accept(u);
+                }
+            }
+        } finally {
+            seen.release();
+        }
+    }
+
+    @Override
+    public void forEachIncidentEdge(Node v, BiConsumer<Edge, Node> action) {
+        int id = vid(v);
+        for (int i = start[id], end = i + size[id]; i < end; i++) {
+            int e = adj[i];
+            if (source[e] == target[e] && i > start[id] && adj[i - 1] == e) {
+                continue;
+            }
+            action.accept(edges[e], nodes[opposite(id, e)]);
+        }
+    }
+
+    @Override
+    public Set<Node> vertexSet() {
+        return new UnitSetView<Node>() {
+            @Override
+            Node at(int i) {
+                return i < vertexIds ? nodes[i] : null;
+            }
+
+            @Override
+            int bound() {
+                return vertexIds;
+            }
+
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Node && containsVertex((Node) o);
+            }
+        };
+    }
+
+    @Override
+    public Set<Edge> edgeSet() {
+        return new UnitSetView<Edge>() {
+            @Override
+            Edge at(int i) {
+                return i < edgeIds ? edges[i] : null;
+            }
+
+            @Override
+            int bound() {
+                return edgeIds;
+            }
+
+            @Override
+            public int size() {
+                return edgeCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Edge && containsEdge((Edge) o);
+            }
+        };
+    }
+
+    @Override
+    public Node getEdgeSource(Edge e) {
+        return nodes[source[eid(e)]];
+    }
+
+    @Override
+    public Node getEdgeTarget(Edge e) {
+        return nodes[target[eid(e)]];
+    }
+
+    @Override
+    public List<Node> disjointVertices(Edge e) {
+        int id = eid(e);
+        return Arrays.asList(nodes[target[id]], nodes[source[id]]);
+    }
+
+    @Override
+    public Graph subgraph(Set<Node> nodes, Set<Edge> edges) {
+        CompactGraph res = new CompactGraph();
+        nodes.forEach(res::addVertex);
+        for (Edge e : edges) {
+            if (containsEdge(e)) {
+                res.addEdge(getEdgeSource(e), getEdgeTarget(e), e);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public List<Set<Node>> connectedSets() {
+        List<Set<Node>> res = new ArrayList<>();
+        boolean[] vis = new boolean[vertexIds];
+        int[] stack = new int[vertexIds];
+        int[] pos = new int[vertexIds];
+        for (int r = 0; r < vertexIds; r++) {
+            if (nodes[r] == null || vis[r]) {
+                continue;
+            }
+            Set<Node> curr = new LinkedHashSet<>();
+            int top = 0;
+            stack[0] = r;
+            pos[0] = start[r];
+            vis[r] = true;
+            curr.add(nodes[r]);
+            while (top >= 0) {
+                int v = stack[top];
+                if (pos[top] == start[v] + size[v]) {
+                    top--;
+                    continue;
+                }
+                int u = opposite(v, adj[pos[top]++]);
+                if (!vis[u]) {
+                    vis[u] = true;
+                    curr.add(nodes[u]);
+                    stack[++top] = u;
+                    pos[top] = start[u];
+                }
+            }
+            res.add(curr);
+        }
+        return res;
+    }
+
+    @Override
+    public int degreeOf(Node v) {
+        return size[vid(v)];
+    }
+
+    private abstract static class UnitSetView<T extends Unit> extends AbstractSet<T> {
+        abstract T at(int i);
+
+        abstract int bound();
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int i = advance(0);
+
+                private int advance(int from) {
+                    int b = bound();
+                    while (from < b && at(from) == null) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return i < bound();
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    T res = at(i);
+                    i = advance(i + 1);
+                    return res;
+                }
+            };
+        }
+    }
+
+    /**
+     * Stamps of vertex ids seen by a traversal of neighbors with parallel edges.
+     * Kept per thread, since the graph may be read concurrently, and a traversal
+     * started from inside another one gets its own nested marks.
+     */
+    private static class Marks {
+        private int[] mark = new int[0];
+        private int stamp;
+        private boolean used;
+        private Marks nested;
+
+        Marks acquire(int n) {
+            if (used) {
+                if (nested == null) {
+                    nested = new Marks();
+                }
+                return nested.acquire(n);
+            }
+            used = true;
+            if (mark.length < n) {
+                mark = new int[Math.max(n, 2 * mark.length)];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+            return this;
+        }
+
+        boolean add(int v) {
+            if (mark[v] == stamp) {
+                return false;
+            }
+            mark[v] = stamp;
+            return true;
+        }
+
+        void release() {
+            used = false;
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package ru.itmo.ctlab.sgmwcs.graph;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class Graph {
+    /**
+     * Tombstoned links are dropped from all lists once their number
+     * exceeds the number of live links and this minimum.
+     */
+    private static final int MIN_COMPACTION = 256;
+
     private Map<Edge, Link> links;
     private Map<Node, Map<Node, LinksList>> connected;
     private Map<Node, LinksList> adj;
     private Map<Node, Integer> degree;
+    private int dead;
 
     public Graph() {
         links = new LinkedHashMap<>();
@@ -91,18 +101,23 @@ public class Graph {
     public void removeVertex(Node v) {
         List<Node> neighbors = neighborListOf(v);
         for (Edge e : edgesOf(v)) {
-            removeEdge(e);
+            unlink(e);
         }
         for (Node u : neighbors) {
             connected.get(u).remove(v);
         }
         adj.remove(v);
         connected.remove(v);
+        compactIfNeeded();
     }
 
     public List<Edge> getAllEdges(Node v, Node u) {
         List<Edge> res = new ArrayList<>();
-        for (Link l : connected.get(v).get(u)) {
+        LinksList edges = connected.get(v).get(u);
+        if (edges == null) {
+            return res;
+        }
+        for (Link l : edges) {
             res.add(l.e);
         }
         return res;
@@ -129,14 +144,132 @@ public class Graph {
         return new ArrayList<>(res);
     }
 
+    /**
+     * Calls <code>action</code> for every distinct neighbor of <code>v</code>
+     * in the order of {@link #neighborListOf(Node)} without building a list.
+     */
+    public void forEachNeighbor(Node v, Consumer<Node> action) {
+        LinksList links = adj.get(v);
+        boolean loopSeen = false;
+        for (int i = 0; i < links.size; i++) {
+            Link l = links.items[i];
+            if (l.removed) {
+                continue;
+            }
+            Node u = getOppositeVertex(v, l);
+            if (u.equals(v)) {
+                if (loopSeen) {
+                    continue;
+                }
+                loopSeen = true;
+            }
+            if (connected.get(v).get(u).first() == l) {
+                action.accept(u);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #forEachNeighbor(Node, Consumer)}, but passes numbers of neighbors.
+     */
+    public void forEachNeighborNum(Node v, IntConsumer action) {
+        LinksList links = adj.get(v);
+        boolean loopSeen = false;
+        for (int i = 0; i < links.size; i++) {
+            Link l = links.items[i];
+            if (l.removed) {
+                continue;
+            }
+            Node u = getOppositeVertex(v, l);
+            if (u.equals(v)) {
+                if (loopSeen) {
+                    continue;
+                }
+                loopSeen = true;
+            }
+            if (connected.get(v).get(u).first() == l) {
+                action.accept(u.getNum());
+            }
+        }
+    }
+
+    /**
+     * Calls <code>action</code> with every edge incident to <code>v</code> and
+     * its opposite vertex in the order of {@link #edgesOf(Node)} without building a set.
+     */
+    public void forEachIncidentEdge(Node v, BiConsumer<Edge, Node> action) {
+        LinksList links = adj.get(v);
+        for (int i = 0; i < links.size; i++) {
+            Link l = links.items[i];
+            if (l.removed || l.u.equals(l.v) && links.indexOf(l) < i) {
+                continue;
+            }
+            action.accept(l.e, getOppositeVertex(v, l));
+        }
+    }
+
     public void removeEdge(Edge e) {
+        unlink(e);
+        compactIfNeeded();
+    }
+
+    private void unlink(Edge e) {
         Link l = links.get(e);
         links.remove(e);
         l.removed = true;
+        dead++;
+        connected.get(l.v).get(l.u).skipRemoved();
+        connected.get(l.u).get(l.v).skipRemoved();
         degree.put(l.v, degree.get(l.v) - 1);
         degree.put(l.u, degree.get(l.u) - 1);
     }
 
+    private void compactIfNeeded() {
+        if (dead > MIN_COMPACTION && dead > links.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Drops links of removed edges from adjacency lists of all vertices.
+     * Traversals skip such links without mutating the graph, so this only
+     * makes later traversals shorter.
+     */
+    public void compact() {
+        if (dead == 0) {
+            return;
+        }
+        for (LinksList l : adj.values()) {
+            l.purge();
+        }
+        for (Map<Node, LinksList> m : connected.values()) {
+            Iterator<LinksList> it = m.values().iterator();
+            while (it.hasNext()) {
+                LinksList l = it.next();
+                l.purge();
+                if (l.size == 0) {
+                    it.remove();
+                }
+            }
+        }
+        dead = 0;
+    }
+
+    /**
+     * @return number of edges present in the graph.
+     */
+    public int liveLinks() {
+        return links.size();
+    }
+
+    /**
+     * @return number of removed edges which links may still be kept in
+     * adjacency lists until the next {@link #compact()}.
+     */
+    public int deadLinks() {
+        return dead;
+    }
+
     public Set<Node> vertexSet() {
         return Collections.unmodifiableSet(adj.keySet());
     }
@@ -257,61 +390,89 @@ public class Graph {
     }
 
     private static class LinksList implements Iterable<Link> {
-        private List<Link> l;
+        private Link[] items;
+        private int size;
+        /**
+         * Index of the first live link, <code>size</code> if there are none.
+         * Kept up to date on removals, so traversals don't search for it.
+         */
+        private int head;
 
         public LinksList() {
-            l = new LinkedList<>();
+            items = new Link[2];
         }
 
         public void add(Link link) {
-            l.add(link);
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = link;
         }
 
-        @Override
-        public Iterator<Link> iterator() {
-            return new RemovingIterator(l.iterator());
+        /**
+         * Drops links of removed edges.
+         */
+        void purge() {
+            int j = 0;
+            while (j < size && !items[j].removed) {
+                j++;
+            }
+            if (j == size) {
+                return;
+            }
+            for (int i = j; i < size; i++) {
+                if (!items[i].removed) {
+                    items[j++] = items[i];
+                }
+            }
+            Arrays.fill(items, j, size, null);
+            size = j;
+            head = 0;
         }
-    }
 
-    private static class RemovingIterator implements Iterator<Link> {
-        private Iterator<Link> it;
-        private Link next;
+        void skipRemoved() {
+            while (head < size && items[head].removed) {
+                head++;
+            }
+        }
 
-        public RemovingIterator(Iterator<Link> it) {
-            this.it = it;
-            step();
+        Link first() {
+            return head < size ? items[head] : null;
         }
 
-        private void step() {
-            next = null;
-            while (it.hasNext()) {
-                Link l = it.next();
-                if (l.removed) {
-                    it.remove();
-                } else {
-                    next = l;
-                    return;
+        int indexOf(Link link) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == link) {
+                    return i;
                 }
             }
+            return -1;
         }
 
         @Override
-        public boolean hasNext() {
-            return next != null;
-        }
+        public Iterator<Link> iterator() {
+            return new Iterator<Link>() {
+                private int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (i < size && items[i].removed) {
+                        i++;
+                    }
+                    return i < size;
+                }
 
-        @Override
-        public Link next() {
-            if (next == null) {
-                throw new NoSuchElementException();
-            }
-            Link res = next;
-            step();
-            return res;
+                @Override
+                public Link next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return items[i++];
+                }
+            };
         }
     }
 
-
     private static class Link {
         public Edge e;
         public Node v;
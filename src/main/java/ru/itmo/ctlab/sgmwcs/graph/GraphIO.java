@@ -3,8 +3,10 @@ package ru.itmo.ctlab.sgmwcs.graph;
 import ru.itmo.ctlab.sgmwcs.Signals;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class GraphIO {
     private File nodeIn;
@@ -17,6 +19,16 @@ public class GraphIO {
 
     private String inf = "inf"; // Representation of infinite-weight signal
 
+    private boolean memoryMapped;
+    private int threads = 1;
+    private ForkJoinPool pool;
+    private File binaryIn;
+    private NameDictionary nodeDict;
+    private NameDictionary signalDict;
+    private List<Node> nodesById;
+    private int[] edgeEnds;
+    private int edgeCount;
+
     public GraphIO(File nodeIn, File edgeIn, File signalIn) {
         this.nodeIn = nodeIn;
         this.edgeIn = edgeIn;
@@ -27,7 +39,49 @@ public class GraphIO {
         signalNames = new HashMap<>();
     }
 
+    /**
+     * Enables reading of input files through memory mapping. Tokens are taken
+     * right from the mapped buffers and names are interned by a byte dictionary
+     * instead of creating strings for every token.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Sets number of threads used to tokenize memory mapped input files.
+     * Files are split into chunks at line boundaries, chunks are tokenized
+     * concurrently and merged in file order, so the result doesn't depend on
+     * the number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Tokenizes input files in the shared <code>pool</code> instead of a pool started
+     * for every read when more than one thread is used. The pool is not shut down.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Makes {@link #read()} load the instance from a binary file written by
+     * {@link #writeBinary(Graph, File)} instead of parsing the text files.
+     * Node and edge files are still used to name output files.
+     */
+    public void setBinary(File binaryIn) {
+        this.binaryIn = binaryIn;
+    }
+
     public Graph read() throws IOException, ParseException {
+        if (binaryIn != null) {
+            return readBinary();
+        }
+        if (memoryMapped) {
+            return readMapped();
+        }
         try (LineNumberReader nodes = new LineNumberReader(new FileReader(nodeIn));
              LineNumberReader edges = new LineNumberReader(new FileReader(edgeIn));
              LineNumberReader signalsReader = new LineNumberReader(new FileReader(signalIn))) {
@@ -147,6 +201,236 @@ public class GraphIO {
         }
     }
 
+    private Graph readMapped() throws IOException, ParseException {
+        nodeDict = new NameDictionary();
+        signalDict = new NameDictionary();
+        nodesById = new ArrayList<>();
+        edgeEnds = new int[16];
+        edgeCount = 0;
+        if (threads <= 1) {
+            try (TokenSource nodes = new MappedReader(nodeIn);
+                 TokenSource edges = new MappedReader(edgeIn);
+                 TokenSource signalsReader = new MappedReader(signalIn)) {
+                return readMapped(nodes, edges, signalsReader);
+            }
+        }
+        ForkJoinPool pool = this.pool != null ? this.pool : new ForkJoinPool(threads);
+        try (TokenSource nodes = new ChunkedReader(nodeIn, pool);
+             TokenSource edges = new ChunkedReader(edgeIn, pool);
+             TokenSource signalsReader = new ChunkedReader(signalIn, pool)) {
+            return readMapped(nodes, edges, signalsReader);
+        } finally {
+            if (pool != this.pool) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private Graph readMapped(TokenSource nodes, TokenSource edges, TokenSource signalsReader)
+            throws IOException, ParseException {
+        Graph graph = new Graph();
+        parseNodes(nodes, graph);
+        parseEdges(edges, graph);
+        parseSignals(signalsReader);
+        return graph;
+    }
+
+    private void parseNodes(TokenSource reader, Graph graph) throws ParseException, IOException {
+        while (reader.nextLine()) {
+            if (reader.isComment() || !reader.nextToken()) {
+                continue;
+            }
+            try {
+                if (nodeDict.get(reader.token(), reader.tokenLength(), reader.tokenHash()) != -1) {
+                    throw new ParseException("Duplicate node " + reader.tokenString(), 0);
+                }
+                nodeDict.add(reader.token(), reader.tokenLength(), reader.tokenHash());
+                Node vertex = new Node(nodesById.size() + 1);
+                nodesById.add(vertex);
+                graph.addVertex(vertex);
+                processSignals(vertex, reader);
+            } catch (ParseException e) {
+                throw new ParseException(e.getMessage() + "node file, line", reader.getLineNumber());
+            }
+        }
+    }
+
+    private void parseEdges(TokenSource reader, Graph graph) throws ParseException, IOException {
+        while (reader.nextLine()) {
+            if (reader.isComment() || !reader.nextToken()) {
+                continue;
+            }
+            int first = nodeDict.get(reader.token(), reader.tokenLength(), reader.tokenHash());
+            if (!reader.nextToken()) {
+                throw new ParseException("Wrong edge format at line", reader.getLineNumber());
+            }
+            int second = nodeDict.get(reader.token(), reader.tokenLength(), reader.tokenHash());
+            try {
+                if (first == -1 || second == -1) {
+                    throw new ParseException("There's no such vertex in edge list at line", reader.getLineNumber());
+                }
+                Edge edge = new Edge(edgeCount + 1);
+                graph.addEdge(nodesById.get(first), nodesById.get(second), edge);
+                if (2 * edgeCount + 2 > edgeEnds.length) {
+                    edgeEnds = Arrays.copyOf(edgeEnds, edgeEnds.length * 2);
+                }
+                edgeEnds[2 * edgeCount] = first;
+                edgeEnds[2 * edgeCount + 1] = second;
+                edgeCount++;
+                processSignals(edge, reader);
+            } catch (ParseException e) {
+                throw new ParseException(e.getMessage() + "edge file, line", reader.getLineNumber());
+            }
+        }
+    }
+
+    private void processSignals(Unit unit, TokenSource reader) throws ParseException, IOException {
+        if (!reader.nextToken()) {
+            throw new ParseException("Expected signal name: ", 0);
+        }
+        do {
+            int signal = signalDict.get(reader.token(), reader.tokenLength(), reader.tokenHash());
+            if (signal != -1) {
+                signals.add(unit, signal);
+            } else {
+                signalDict.add(reader.token(), reader.tokenLength(), reader.tokenHash());
+                signals.addAndSetWeight(unit, 0.0);
+            }
+        } while (reader.nextToken());
+    }
+
+    private void parseSignals(TokenSource reader) throws IOException, ParseException {
+        try {
+            while (reader.nextLine()) {
+                if (reader.isComment() || !reader.nextToken()) {
+                    continue;
+                }
+                int set = signalDict.get(reader.token(), reader.tokenLength(), reader.tokenHash());
+                String signal = set == -1 ? reader.tokenString() : null;
+                if (!reader.nextToken()) {
+                    throw new ParseException("Expected weight of signal at line", reader.getLineNumber());
+                }
+                String w = reader.tokenString();
+                double weight = w.equals(inf) ? Double.POSITIVE_INFINITY : Double.parseDouble(w);
+                if (set == -1) {
+                    throw new ParseException("Signal " + signal +
+                            "doesn't appear in node/edge files", reader.getLineNumber());
+                }
+                signals.setWeight(set, weight);
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException("Wrong format of weight of signal at line", reader.getLineNumber());
+        }
+    }
+
+    private Graph readBinary() throws IOException, ParseException {
+        BinaryInstance instance = BinaryInstance.read(binaryIn);
+        nodeDict = instance.nodeNames;
+        signalDict = instance.signalNames;
+        edgeEnds = instance.ends;
+        edgeCount = instance.edges;
+        nodesById = new ArrayList<>(instance.nodes);
+        Graph graph = new Graph();
+        for (int i = 0; i < instance.nodes; i++) {
+            Node node = new Node(i + 1);
+            nodesById.add(node);
+            graph.addVertex(node);
+        }
+        Edge[] edges = new Edge[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            edges[i] = new Edge(i + 1);
+            graph.addEdge(nodesById.get(edgeEnds[2 * i]), nodesById.get(edgeEnds[2 * i + 1]), edges[i]);
+        }
+        for (double weight : instance.weights) {
+            signals.addSignal(weight);
+        }
+        int[] offsets = instance.unitOffsets;
+        for (int u = 0; u < instance.nodes + edgeCount; u++) {
+            Unit unit = u < instance.nodes ? nodesById.get(u) : edges[u - instance.nodes];
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                signals.add(unit, instance.unitSignals[i]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the instance returned by {@link #read()} to a binary file which
+     * can be loaded later through {@link #setBinary(File)}.
+     */
+    public void writeBinary(Graph graph, File out) throws IOException {
+        BinaryInstance instance = new BinaryInstance();
+        instance.nodes = graph.vertexSet().size();
+        instance.edges = graph.edgeSet().size();
+        Unit[] units = new Unit[instance.nodes + instance.edges];
+        for (Node node : graph.vertexSet()) {
+            units[index(node, instance.nodes)] = node;
+        }
+        instance.ends = new int[2 * instance.edges];
+        for (Edge edge : graph.edgeSet()) {
+            int i = index(edge, instance.edges);
+            units[instance.nodes + i] = edge;
+            instance.ends[2 * i] = index(graph.getEdgeSource(edge), instance.nodes);
+            instance.ends[2 * i + 1] = index(graph.getEdgeTarget(edge), instance.nodes);
+        }
+        instance.weights = new double[signals.size()];
+        for (int i = 0; i < signals.size(); i++) {
+            instance.weights[i] = signals.weight(i);
+        }
+        instance.unitOffsets = new int[units.length + 1];
+        int links = 0;
+        for (int u = 0; u < units.length; u++) {
+            links += signals.unitSets(units[u]).size();
+            instance.unitOffsets[u + 1] = links;
+        }
+        instance.unitSignals = new int[links];
+        for (int u = 0; u < units.length; u++) {
+            int i = instance.unitOffsets[u];
+            for (int signal : signals.unitSets(units[u])) {
+                instance.unitSignals[i++] = signal;
+            }
+        }
+        instance.nodeNames = nodeDict;
+        instance.signalNames = signalDict;
+        if (nodeDict == null) {
+            instance.nodeNames = new NameDictionary();
+            for (int i = 0; i < instance.nodes; i++) {
+                byte[] name = unitMap.get(units[i]).getBytes(StandardCharsets.UTF_8);
+                instance.nodeNames.add(name, name.length);
+            }
+            String[] names = new String[signals.size()];
+            signalNames.forEach((name, id) -> names[id] = name);
+            instance.signalNames = new NameDictionary();
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                instance.signalNames.add(bytes, bytes.length);
+            }
+        }
+        instance.write(out);
+    }
+
+    private static int index(Unit unit, int size) {
+        int i = unit.getNum() - 1;
+        if (i < 0 || i >= size) {
+            throw new IllegalStateException("Units of the graph aren't numbered as read");
+        }
+        return i;
+    }
+
+    private String nameOf(Unit unit) {
+        if (nodeDict == null) {
+            return unitMap.get(unit);
+        }
+        int id = unit.getNum() - 1;
+        if (unit instanceof Node) {
+            return id >= 0 && id < nodeDict.size() ? nodeDict.name(id) : null;
+        }
+        if (id < 0 || id >= edgeCount) {
+            return null;
+        }
+        return nodeDict.name(edgeEnds[2 * id]) + "\t" + nodeDict.name(edgeEnds[2 * id + 1]);
+    }
+
     public void write(List<Unit> units) throws IOException {
         if (units == null) {
             units = new ArrayList<>();
@@ -154,13 +438,14 @@ public class GraphIO {
         try (PrintWriter nodeWriter = new PrintWriter(nodeIn + ".out");
              PrintWriter edgeWriter = new PrintWriter(edgeIn + ".out")) {
             for (Unit unit : units) {
-                if (!unitMap.containsKey(unit)) {
+                String name = nameOf(unit);
+                if (name == null) {
                     throw new IllegalStateException();
                 }
                 if (unit instanceof Node) {
-                    nodeWriter.println(unitMap.get(unit));
+                    nodeWriter.println(name);
                 } else {
-                    edgeWriter.println(unitMap.get(unit));
+                    edgeWriter.println(name);
                 }
             }
         }
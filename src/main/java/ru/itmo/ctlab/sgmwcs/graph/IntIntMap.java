@@ -0,0 +1,114 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to non-negative int values
+ * with linear probing. Used to map unit numbers to dense ids without boxing.
+ */
+public class IntIntMap {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        Arrays.fill(keys, FREE);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * @return value mapped to <code>key</code> or -1 if there is no such key.
+     */
+    public int get(int key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException();
+        }
+        int i = slot(key);
+        return keys[i] == FREE ? -1 : values[i];
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != -1;
+    }
+
+    public void put(int key, int value) {
+        if (key == FREE || value < 0) {
+            throw new IllegalArgumentException();
+        }
+        int i = slot(key);
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                values[i] = value;
+                rehash(keys.length * 2);
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    public void remove(int key) {
+        int i = slot(key);
+        if (keys[i] == FREE) {
+            return;
+        }
+        int mask = keys.length - 1;
+        keys[i] = FREE;
+        size--;
+        // Backward shift deletion keeps probe sequences unbroken
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == FREE) {
+                return;
+            }
+            int home = hash(keys[j]) & mask;
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = FREE;
+                i = j;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int cap) {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[cap];
+        values = new int[cap];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a memory mapped text file into lines and whitespace separated tokens
+ * the same way as {@link java.io.LineNumberReader} and {@link java.util.StringTokenizer} do.
+ * The current token is copied into a reused byte buffer, so no objects are allocated per token.
+ * Files larger than 2GB are mapped by several regions.
+ */
+class MappedReader implements TokenSource {
+    private static final long REGION = 1 << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+    private MappedByteBuffer buffer;
+    private long offset;
+    private int lineNumber;
+    private boolean lineEnd;
+    private byte[] token;
+    private int tokenLength;
+
+    MappedReader(File in) throws IOException {
+        file = new RandomAccessFile(in, "r");
+        channel = file.getChannel();
+        length = channel.size();
+        token = new byte[64];
+        lineEnd = true;
+        map(0);
+    }
+
+    private void map(long from) throws IOException {
+        offset = from;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(REGION, length - from));
+    }
+
+    private boolean hasMore() throws IOException {
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+        long next = offset + buffer.limit();
+        if (next >= length) {
+            return false;
+        }
+        map(next);
+        return true;
+    }
+
+    private byte peek() {
+        return buffer.get(buffer.position());
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f';
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    @Override
+    public boolean nextLine() throws IOException {
+        while (!lineEnd) {
+            if (!hasMore()) {
+                return false;
+            }
+            byte b = buffer.get();
+            if (isLineEnd(b)) {
+                skipLineEnd(b);
+                lineEnd = true;
+            }
+        }
+        if (!hasMore()) {
+            return false;
+        }
+        lineEnd = false;
+        lineNumber++;
+        return true;
+    }
+
+    private void skipLineEnd(byte b) throws IOException {
+        if (b == '\r' && hasMore() && peek() == '\n') {
+            buffer.get();
+        }
+    }
+
+    @Override
+    public boolean isComment() throws IOException {
+        return !lineEnd && hasMore() && peek() == '#';
+    }
+
+    @Override
+    public boolean nextToken() throws IOException {
+        tokenLength = 0;
+        while (!lineEnd && hasMore()) {
+            byte b = buffer.get();
+            if (isLineEnd(b)) {
+                skipLineEnd(b);
+                lineEnd = true;
+            } else if (!isSpace(b)) {
+                append(b);
+                break;
+            }
+        }
+        if (tokenLength == 0) {
+            return false;
+        }
+        while (hasMore()) {
+            byte b = peek();
+            if (isSpace(b) || isLineEnd(b)) {
+                break;
+            }
+            append(buffer.get());
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[tokenLength++] = b;
+    }
+
+    @Override
+    public byte[] token() {
+        return token;
+    }
+
+    @Override
+    public int tokenLength() {
+        return tokenLength;
+    }
+
+    @Override
+    public int tokenHash() {
+        return NameDictionary.hash(token, 0, tokenLength);
+    }
+
+    @Override
+    public String tokenString() {
+        return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
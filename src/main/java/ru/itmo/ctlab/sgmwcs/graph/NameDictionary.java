@@ -0,0 +1,167 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns byte strings into dense int ids. Bytes of all names are kept in one
+ * array and looked up by open addressing, so looking up a name that is already
+ * known allocates nothing.
+ */
+class NameDictionary {
+    private byte[] bytes;
+    private int used;
+    private int[] offsets;
+    private int size;
+    private int[] table;
+
+    NameDictionary() {
+        bytes = new byte[1024];
+        offsets = new int[17];
+        table = new int[32];
+        Arrays.fill(table, -1);
+    }
+
+    /**
+     * Wraps names stored one after another in <code>bytes</code>, name <code>i</code>
+     * occupies range from <code>offsets[i]</code> to <code>offsets[i + 1]</code>.
+     * Hash table is built on the first lookup, so names which are only read by id are never hashed.
+     */
+    NameDictionary(byte[] bytes, int[] offsets, int size) {
+        this.bytes = bytes;
+        this.offsets = offsets.length >= size + 2 ? offsets : Arrays.copyOf(offsets, size + 2);
+        this.size = size;
+        this.used = offsets[size];
+    }
+
+    /**
+     * Hash of a name computed incrementally: starting from {@link #HASH_SEED},
+     * {@link #step(int, byte)} is applied to every byte and the result is passed to {@link #finish(int)}.
+     */
+    static final int HASH_SEED = 0x811C9DC5;
+
+    static int step(int h, byte b) {
+        return (h ^ b) * 0x01000193;
+    }
+
+    static int finish(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    static int hash(byte[] name, int from, int len) {
+        int h = HASH_SEED;
+        for (int i = from; i < from + len; i++) {
+            h = step(h, name[i]);
+        }
+        return finish(h);
+    }
+
+    private boolean matches(int id, byte[] name, int len) {
+        int from = offsets[id];
+        if (offsets[id + 1] - from != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (bytes[from + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(byte[] name, int len, int hash) {
+        if (table == null) {
+            rehash(Integer.highestOneBit(Math.max(size, 8)) * 4);
+        }
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != -1 && !matches(table[i], name, len)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * @return id of the name or -1 if it is unknown.
+     */
+    int get(byte[] name, int len) {
+        return get(name, len, hash(name, 0, len));
+    }
+
+    /**
+     * Same as {@link #get(byte[], int)} with a precomputed {@link #hash(byte[], int, int)}.
+     */
+    int get(byte[] name, int len, int hash) {
+        return table[slot(name, len, hash)];
+    }
+
+    /**
+     * Adds a new name. The name must be absent.
+     *
+     * @return id of the added name.
+     */
+    int add(byte[] name, int len) {
+        return add(name, len, hash(name, 0, len));
+    }
+
+    int add(byte[] name, int len, int hash) {
+        int i = slot(name, len, hash);
+        if (table[i] != -1) {
+            throw new IllegalArgumentException();
+        }
+        if (used + len > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + len));
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(name, 0, bytes, used, len);
+        offsets[size] = used;
+        used += len;
+        offsets[size + 1] = used;
+        table[i] = size;
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(bytes, offsets[id], offsets[id + 1] - offsets[id]) & mask;
+            while (table[i] != -1) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of all names, only the first {@link #bytesUsed()} of them are meaningful.
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int bytesUsed() {
+        return used;
+    }
+
+    /**
+     * @return start offset of the name in {@link #bytes()}, <code>offset(size())</code> is the end of the last name.
+     */
+    int offset(int id) {
+        return offsets[id];
+    }
+
+    String name(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,261 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Read-only subgraph of another graph induced by a set of its vertices.
+ * Membership of vertices and edges is kept in bitsets indexed by unit numbers,
+ * all other queries are answered by the parent graph, so nothing is copied.
+ * The parent must not be modified while the view is in use.
+ * Use {@link #materialize()} to get a modifiable copy.
+ */
+public class SubgraphView extends Graph {
+    private final Graph parent;
+    private final Set<Node> nodes;
+    private final BitSet nodeMask;
+    private final BitSet edgeMask;
+    private final List<Edge> edges;
+    private final IntIntMap degree;
+
+    public SubgraphView(Graph parent, Set<Node> nodes) {
+        this.parent = parent;
+        this.nodes = Collections.unmodifiableSet(nodes);
+        nodeMask = new BitSet();
+        for (Node v : nodes) {
+            if (!parent.containsVertex(v)) {
+                throw new IllegalArgumentException();
+            }
+            nodeMask.set(v.getNum());
+        }
+        edgeMask = new BitSet();
+        edges = new ArrayList<>();
+        degree = new IntIntMap(nodes.size());
+        for (Node v : nodes) {
+            int[] d = {0};
+            parent.forEachIncidentEdge(v, (e, u) -> {
+                if (nodeMask.get(u.getNum())) {
+                    d[0] += u.equals(v) ? 2 : 1;
+                    if (!edgeMask.get(e.getNum())) {
+                        edgeMask.set(e.getNum());
+                        edges.add(e);
+                    }
+                }
+            });
+            degree.put(v.getNum(), d[0]);
+        }
+    }
+
+    public Graph getParent() {
+        return parent;
+    }
+
+    /**
+     * @return modifiable subgraph of the parent graph with the same units.
+     */
+    public Graph materialize() {
+        return parent.subgraph(nodes, edgeSet());
+    }
+
+    private void check(Node v) {
+        if (!containsVertex(v)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    @Override
+    public void addVertex(Node v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addEdge(Node v, Node u, Edge e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeVertex(Node v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeEdge(Edge e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public int liveLinks() {
+        return edges.size();
+    }
+
+    @Override
+    public int deadLinks() {
+        return 0;
+    }
+
+    @Override
+    public boolean containsVertex(Node v) {
+        return nodeMask.get(v.getNum());
+    }
+
+    @Override
+    public boolean containsEdge(Edge e) {
+        return edgeMask.get(e.getNum());
+    }
+
+    @Override
+    public Set<Node> vertexSet() {
+        return nodes;
+    }
+
+    @Override
+    public Set<Edge> edgeSet() {
+        return new AbstractSet<Edge>() {
+            @Override
+            public Iterator<Edge> iterator() {
+                return Collections.unmodifiableList(edges).iterator();
+            }
+
+            @Override
+            public int size() {
+                return edges.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Edge && containsEdge((Edge) o);
+            }
+        };
+    }
+
+    @Override
+    public Set<Edge> edgesOf(Node v) {
+        Set<Edge> res = new LinkedHashSet<>();
+        forEachIncidentEdge(v, (e, u) -> res.add(e));
+        return res;
+    }
+
+    @Override
+    public int degreeOf(Node v) {
+        check(v);
+        return degree.get(v.getNum());
+    }
+
+    @Override
+    public Node getOppositeVertex(Node v, Edge e) {
+        if (!containsEdge(e)) {
+            throw new IllegalArgumentException();
+        }
+        return parent.getOppositeVertex(v, e);
+    }
+
+    @Override
+    public Node getEdgeSource(Edge e) {
+        return parent.getEdgeSource(e);
+    }
+
+    @Override
+    public Node getEdgeTarget(Edge e) {
+        return parent.getEdgeTarget(e);
+    }
+
+    @Override
+    public List<Node> disjointVertices(Edge e) {
+        return parent.disjointVertices(e);
+    }
+
+    @Override
+    public List<Edge> getAllEdges(Node v, Node u) {
+        check(v);
+        return containsVertex(u) ? parent.getAllEdges(v, u) : new ArrayList<>();
+    }
+
+    @Override
+    public Edge getEdge(Node v, Node u) {
+        check(v);
+        return containsVertex(u) ? parent.getEdge(v, u) : null;
+    }
+
+    @Override
+    public List<Node> neighborListOf(Node v) {
+        List<Node> res = new ArrayList<>();
+        forEachNeighbor(v, res::add);
+        return res;
+    }
+
+    @Override
+    public void forEachNeighbor(Node v, Consumer<Node> action) {
+        check(v);
+        parent.forEachNeighbor(v, u -> {
+            if (nodeMask.get(u.getNum())) {
+                action.accept(u);
+            }
+        });
+    }
+
+    @Override
+    public void forEachNeighborNum(Node v, IntConsumer action) {
+        check(v);
+        parent.forEachNeighborNum(v, u -> {
+            if (nodeMask.get(u)) {
+                action.accept(u);
+            }
+        });
+    }
+
+    @Override
+    public void forEachIncidentEdge(Node v, BiConsumer<Edge, Node> action) {
+        check(v);
+        parent.forEachIncidentEdge(v, (e, u) -> {
+            if (edgeMask.get(e.getNum())) {
+                action.accept(e, u);
+            }
+        });
+    }
+
+    @Override
+    public Graph subgraph(Set<Node> nodes, Set<Edge> edges) {
+        Set<Edge> own = new LinkedHashSet<>();
+        for (Edge e : edges) {
+            if (containsEdge(e)) {
+                own.add(e);
+            }
+        }
+        return parent.subgraph(nodes, own);
+    }
+
+    @Override
+    public List<Set<Node>> connectedSets() {
+        List<Set<Node>> res = new ArrayList<>();
+        Set<Node> vis = new HashSet<>();
+        Deque<Iterator<Node>> stack = new ArrayDeque<>();
+        for (Node v : nodes) {
+            if (!vis.add(v)) {
+                continue;
+            }
+            Set<Node> curr = new LinkedHashSet<>();
+            curr.add(v);
+            stack.push(neighborListOf(v).iterator());
+            while (!stack.isEmpty()) {
+                Iterator<Node> it = stack.peek();
+                if (!it.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Node u = it.next();
+                if (vis.add(u)) {
+                    curr.add(u);
+                    stack.push(neighborListOf(u).iterator());
+                }
+            }
+            res.add(curr);
+        }
+        return res;
+    }
+}
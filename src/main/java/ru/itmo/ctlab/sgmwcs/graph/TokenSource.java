@@ -0,0 +1,45 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Line by line source of whitespace separated tokens of an input file.
+ * The current token is exposed as a prefix of a reused byte array.
+ */
+interface TokenSource extends Closeable {
+    /**
+     * Moves to the beginning of the next line skipping the rest of the current one.
+     *
+     * @return <code>false</code> if there are no more lines.
+     */
+    boolean nextLine() throws IOException;
+
+    /**
+     * @return <code>true</code> if the current line starts with '#'.
+     */
+    boolean isComment() throws IOException;
+
+    /**
+     * Reads the next token of the current line.
+     *
+     * @return <code>false</code> if the line has no more tokens.
+     */
+    boolean nextToken() throws IOException;
+
+    byte[] token();
+
+    int tokenLength();
+
+    /**
+     * @return {@link NameDictionary} hash of the current token.
+     */
+    int tokenHash();
+
+    String tokenString();
+
+    /**
+     * @return number of the current line counting from 1.
+     */
+    int getLineNumber();
+}
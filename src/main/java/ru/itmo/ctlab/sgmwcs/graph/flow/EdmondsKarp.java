@@ -10,6 +10,7 @@ public class EdmondsKarp implements MaxFlow {
     private List<List<Integer>> backIndex;
     private List<List<Double>> capacity;
     private List<Map<Integer, Integer>> indices;
+    private List<List<Double>> lastFlow;
 
     public EdmondsKarp(int n) {
         this.n = n;
@@ -94,15 +95,49 @@ public class EdmondsKarp implements MaxFlow {
                                 push(p, pi, f, flow);
                                 k = p;
                             }
+                            maxFlow += f;
                             break PATH;
                         }
                     }
                 }
             }
         }
+        lastFlow = flow;
         return getResult(s, flow);
     }
 
+    public List<Pair<Integer, Integer>> backCut(int t) {
+        List<Boolean> vis = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            vis.add(false);
+        }
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(t);
+        vis.set(t, true);
+        while (!stack.isEmpty()) {
+            int u = stack.pop();
+            for (int j = 0; j < adj.get(u).size(); j++) {
+                int v = adj.get(u).get(j);
+                if (!vis.get(v) && rcap(lastFlow, v, backIndex.get(u).get(j)) > 0) {
+                    vis.set(v, true);
+                    stack.push(v);
+                }
+            }
+        }
+        List<Pair<Integer, Integer>> res = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (vis.get(v)) {
+                continue;
+            }
+            for (int u : adj.get(v)) {
+                if (vis.get(u)) {
+                    res.add(new Pair<>(v, u));
+                }
+            }
+        }
+        return res;
+    }
+
     private List<Pair<Integer, Integer>> getResult(int s, List<List<Double>> flow) {
         List<Boolean> vis = new ArrayList<>(n);
         for (int i = 0; i < n; i++) {
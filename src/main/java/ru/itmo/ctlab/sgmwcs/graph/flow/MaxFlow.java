@@ -10,4 +10,11 @@ public interface MaxFlow {
     void setCapacity(int i, int j, double c);
 
     List<Pair<Integer, Integer>> computeMinCut(int s, int t, double threshold);
+
+    /**
+     * Returns the minimum cut closest to the sink <code>t</code> of the flow found by the last
+     * {@link #computeMinCut(int, int, double)} call, which must have returned a cut for this sink.
+     * Its sink side consists of nodes which can reach the sink in the residual network.
+     */
+    List<Pair<Integer, Integer>> backCut(int t);
 }
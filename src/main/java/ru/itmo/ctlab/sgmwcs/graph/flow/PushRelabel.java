@@ -0,0 +1,405 @@
+package ru.itmo.ctlab.sgmwcs.graph.flow;
+
+import ru.itmo.ctlab.sgmwcs.Pair;
+
+import java.util.*;
+
+/**
+ * Highest-label push-relabel max-flow with gap and global relabeling heuristics.
+ * Arcs are kept in flat arrays, arcs <code>2k</code> and <code>2k + 1</code> are reverse
+ * to each other, and are grouped by tails in CSR order when a cut is computed first.
+ * Buffers are reused between computations, so repeated cuts in the same network
+ * don't allocate. Callers updating capacities often resolve ids of arcs once by
+ * {@link #arc(int, int)}.
+ * <p>
+ * Computations are warm-started: the flow found last time is kept while the source stays
+ * the same. When a capacity drops below the flow of the arc, the excess is cancelled on the
+ * arc, and the deficit it leaves is pushed along the flow towards sinks before the next
+ * computation, which then only augments the repaired preflow. If the repair takes too long,
+ * the flow is computed from scratch.
+ * <p>
+ * As in {@link EdmondsKarp}, the source side of found cuts consists of nodes reachable
+ * from the source in the residual network of a maximum flow.
+ */
+public class PushRelabel implements MaxFlow {
+    private final int n;
+    private int arcs;
+    private int[] tail = new int[16];
+    private int[] head = new int[16];
+    private double[] capacity = new double[16];
+    private final Map<Long, Integer> index = new HashMap<>();
+
+    private boolean built;
+    private int[] first;
+    private int[] order;
+    private double[] residual;
+    private double[] excess;
+    private int[] label;
+    private int[] current;
+    private int[] count;
+    private int[] bucket;
+    private int[] next;
+    private boolean[] active;
+    private int[] queue;
+    private int maxActive;
+    private int relabels;
+    private int source = -1;
+
+    public PushRelabel(int n) {
+        this.n = n;
+    }
+
+    @Override
+    public void addEdge(int i, int j) {
+        if (index.containsKey(key(i, j))) {
+            return;
+        }
+        if (arcs + 2 > head.length) {
+            int size = 2 * head.length;
+            tail = Arrays.copyOf(tail, size);
+            head = Arrays.copyOf(head, size);
+            capacity = Arrays.copyOf(capacity, size);
+        }
+        addArc(i, j);
+        addArc(j, i);
+        built = false;
+        source = -1;
+    }
+
+    private void addArc(int i, int j) {
+        tail[arcs] = i;
+        head[arcs] = j;
+        capacity[arcs] = 0;
+        index.put(key(i, j), arcs++);
+    }
+
+    private long key(int i, int j) {
+        return (long) i * n + j;
+    }
+
+    /**
+     * @return id of the arc from <code>i</code> to <code>j</code>, ids don't change
+     * when more edges are added.
+     */
+    public int arc(int i, int j) {
+        Integer a = index.get(key(i, j));
+        if (a == null) {
+            throw new IllegalArgumentException();
+        }
+        return a;
+    }
+
+    @Override
+    public void setCapacity(int i, int j, double c) {
+        setCapacity(arc(i, j), c);
+    }
+
+    /**
+     * Same as {@link #setCapacity(int, int, double)} for an arc id from {@link #arc(int, int)}.
+     */
+    public void setCapacity(int a, double c) {
+        if (built && source >= 0) {
+            residual[a] += c - capacity[a];
+            if (residual[a] < 0) {
+                double delta = -residual[a];
+                residual[a] = 0;
+                residual[a ^ 1] -= delta;
+                excess[tail[a]] += delta;
+                excess[head[a]] -= delta;
+            }
+        }
+        capacity[a] = c;
+    }
+
+    private void build() {
+        first = new int[n + 1];
+        order = new int[arcs];
+        for (int a = 0; a < arcs; a++) {
+            first[tail[a] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            first[v + 1] += first[v];
+        }
+        int[] pos = Arrays.copyOf(first, n);
+        for (int a = 0; a < arcs; a++) {
+            order[pos[tail[a]]++] = a;
+        }
+        residual = new double[arcs];
+        excess = new double[n];
+        label = new int[n];
+        current = new int[n];
+        count = new int[2 * n + 1];
+        bucket = new int[2 * n + 1];
+        next = new int[n];
+        active = new boolean[n];
+        queue = new int[n];
+        built = true;
+    }
+
+    @Override
+    public List<Pair<Integer, Integer>> computeMinCut(int s, int t, double threshold) {
+        if (!built) {
+            build();
+        }
+        if (threshold <= 0) {
+            return null;
+        }
+        if (source != s || !repair(s)) {
+            System.arraycopy(capacity, 0, residual, 0, arcs);
+            Arrays.fill(excess, 0);
+            source = s;
+        }
+        label[s] = n;
+        for (int k = first[s]; k < first[s + 1]; k++) {
+            int a = order[k];
+            double delta = residual[a];
+            if (delta > 0) {
+                residual[a] = 0;
+                residual[a ^ 1] += delta;
+                excess[head[a]] += delta;
+                excess[s] -= delta;
+            }
+        }
+        if (excess[t] >= threshold) {
+            return null;
+        }
+        globalRelabel(s, t);
+        while (maxActive >= 0) {
+            int v = bucket[maxActive];
+            if (v < 0) {
+                maxActive--;
+                continue;
+            }
+            bucket[maxActive] = next[v];
+            active[v] = false;
+            discharge(v, s, t);
+            if (excess[t] >= threshold) {
+                return null;
+            }
+            if (relabels >= n) {
+                globalRelabel(s, t);
+            }
+        }
+        return cut(s);
+    }
+
+    /**
+     * Restores the preflow after capacities decreased: deficits of nodes are pushed further
+     * along arcs carrying flow until they reach nodes with enough excess or the source.
+     *
+     * @return <code>false</code> if deficits circulate along cycles of the flow for too long,
+     * then the flow has to be computed from scratch.
+     */
+    private boolean repair(int s) {
+        Arrays.fill(active, false);
+        int begin = 0, size = 0;
+        for (int v = 0; v < n; v++) {
+            if (v != s && excess[v] < 0) {
+                queue[size++] = v;
+                active[v] = true;
+            }
+        }
+        int work = 0;
+        while (size > 0) {
+            if (work++ > arcs) {
+                return false;
+            }
+            int v = queue[begin];
+            begin = (begin + 1) % n;
+            size--;
+            active[v] = false;
+            for (int k = first[v]; k < first[v + 1] && excess[v] < 0; k++) {
+                int a = order[k];
+                double flow = capacity[a] - residual[a];
+                if (flow <= 0) {
+                    continue;
+                }
+                double delta = Math.min(-excess[v], flow);
+                residual[a] += delta;
+                residual[a ^ 1] -= delta;
+                excess[v] += delta;
+                int w = head[a];
+                excess[w] -= delta;
+                if (w != s && excess[w] < 0 && !active[w]) {
+                    queue[(begin + size++) % n] = w;
+                    active[w] = true;
+                }
+            }
+            if (excess[v] < 0) {
+                // Rounding errors only
+                excess[v] = 0;
+            }
+        }
+        return true;
+    }
+
+    private void activate(int v) {
+        active[v] = true;
+        next[v] = bucket[label[v]];
+        bucket[label[v]] = v;
+        maxActive = Math.max(maxActive, label[v]);
+    }
+
+    private void discharge(int v, int s, int t) {
+        while (excess[v] > 0) {
+            if (current[v] == first[v + 1]) {
+                relabel(v);
+                if (label[v] >= 2 * n) {
+                    return;
+                }
+                continue;
+            }
+            int a = order[current[v]];
+            int w = head[a];
+            if (residual[a] > 0 && label[v] == label[w] + 1) {
+                double delta = Math.min(excess[v], residual[a]);
+                residual[a] -= delta;
+                residual[a ^ 1] += delta;
+                excess[v] -= delta;
+                excess[w] += delta;
+                if (w != s && w != t && !active[w]) {
+                    activate(w);
+                }
+            } else {
+                current[v]++;
+            }
+        }
+    }
+
+    private void relabel(int v) {
+        relabels++;
+        int old = label[v];
+        int min = 2 * n;
+        for (int k = first[v]; k < first[v + 1]; k++) {
+            int a = order[k];
+            if (residual[a] > 0) {
+                min = Math.min(min, label[head[a]] + 1);
+            }
+        }
+        count[old]--;
+        current[v] = first[v];
+        if (old < n && count[old] == 0) {
+            // Gap: nodes above it can't reach the sink anymore
+            for (int u = 0; u < n; u++) {
+                if (u != v && label[u] > old && label[u] < n) {
+                    count[label[u]]--;
+                    label[u] = n;
+                    count[n]++;
+                    current[u] = first[u];
+                }
+            }
+            min = Math.max(min, n);
+        }
+        label[v] = min;
+        if (label[v] < 2 * n) {
+            count[label[v]]++;
+        }
+    }
+
+    /**
+     * Sets labels to distances to the sink in the residual network. Nodes which can't reach
+     * the sink return their excess to the source, their labels are <code>n</code> plus distances
+     * to the source.
+     */
+    private void globalRelabel(int s, int t) {
+        relabels = 0;
+        Arrays.fill(label, 2 * n);
+        Arrays.fill(count, 0);
+        label[t] = 0;
+        label[s] = n;
+        distances(t);
+        distances(s);
+        Arrays.fill(bucket, -1);
+        maxActive = -1;
+        for (int v = 0; v < n; v++) {
+            count[label[v]]++;
+            current[v] = first[v];
+            active[v] = false;
+        }
+        for (int v = 0; v < n; v++) {
+            if (v != s && v != t && excess[v] > 0) {
+                activate(v);
+            }
+        }
+    }
+
+    @Override
+    public List<Pair<Integer, Integer>> backCut(int t) {
+        boolean[] visited = new boolean[n];
+        int begin = 0, end = 0;
+        queue[end++] = t;
+        visited[t] = true;
+        while (begin < end) {
+            int u = queue[begin++];
+            for (int k = first[u]; k < first[u + 1]; k++) {
+                int a = order[k];
+                if (!visited[head[a]] && residual[a ^ 1] > 0) {
+                    visited[head[a]] = true;
+                    queue[end++] = head[a];
+                }
+            }
+        }
+        List<Pair<Integer, Integer>> res = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (visited[v]) {
+                continue;
+            }
+            for (int k = first[v]; k < first[v + 1]; k++) {
+                int u = head[order[k]];
+                if (visited[u]) {
+                    res.add(new Pair<>(v, u));
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Labels nodes not labeled yet by distances to <code>root</code> in the residual network.
+     */
+    private void distances(int root) {
+        int begin = 0, end = 0;
+        queue[end++] = root;
+        while (begin < end) {
+            int w = queue[begin++];
+            for (int k = first[w]; k < first[w + 1]; k++) {
+                int a = order[k];
+                int v = head[a];
+                if (label[v] == 2 * n && residual[a ^ 1] > 0) {
+                    label[v] = label[w] + 1;
+                    queue[end++] = v;
+                }
+            }
+        }
+    }
+
+    private List<Pair<Integer, Integer>> cut(int s) {
+        boolean[] visited = new boolean[n];
+        int begin = 0, end = 0;
+        queue[end++] = s;
+        visited[s] = true;
+        while (begin < end) {
+            int v = queue[begin++];
+            for (int k = first[v]; k < first[v + 1]; k++) {
+                int a = order[k];
+                if (!visited[head[a]] && residual[a] > 0) {
+                    visited[head[a]] = true;
+                    queue[end++] = head[a];
+                }
+            }
+        }
+        List<Pair<Integer, Integer>> res = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (!visited[v]) {
+                continue;
+            }
+            for (int k = first[v]; k < first[v + 1]; k++) {
+                int u = head[order[k]];
+                if (!visited[u]) {
+                    res.add(new Pair<>(v, u));
+                }
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import ru.itmo.ctlab.sgmwcs.solver.mip.BranchAndBound;
+
+/**
+ * Exact solver which doesn't need CPLEX: the formulation of {@link RLTSolver} solved by
+ * {@link BranchAndBound}. Relaxations of unrooted instances are strengthened by cuts of
+ * {@link RootSeparator}, of rooted ones by cuts of {@link Separator}.
+ * Intended for small components, large ones are better solved by CPLEX.
+ */
+public class BranchAndCutSolver extends RLTSolver {
+    public BranchAndCutSolver() {
+        super(BranchAndBound::new);
+        setRootCuts(true);
+    }
+}
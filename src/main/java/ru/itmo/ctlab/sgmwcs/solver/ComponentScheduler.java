@@ -0,0 +1,116 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link Worker}s of components in the order of decreasing upper bound,
+ * larger components first among equal bounds.
+ * Threads of the pool take the most promising queued component when they are free,
+ * so a long solve doesn't hold the components queued behind it.
+ * A component is skipped when its upper bound doesn't exceed the shared lower bound
+ * at the moment it is taken, its worker keeps the heuristic solution.
+ * <p>
+ * Solves share the budget of cores equal to the number of threads of the pool.
+ * A started component gets the share of free cores proportional to its size among
+ * it and the components still queued, at least one core. Cores of finished solves
+ * are given to the solves started after them. Cores which no solve holds may be
+ * borrowed by solves for short parallel stages, see {@link #cores()}.
+ */
+class ComponentScheduler {
+    private final SolverPool pool;
+    private final CoreBudget cores;
+    private final AtomicDouble lb;
+    private final List<Job> jobs = new ArrayList<>();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private static class Job {
+        final Worker worker;
+        final double ub;
+        final int size;
+
+        Job(Worker worker, double ub, int size) {
+            this.worker = worker;
+            this.ub = ub;
+            this.size = size;
+        }
+    }
+
+    ComponentScheduler(SolverPool pool, AtomicDouble lb) {
+        this.pool = pool;
+        this.lb = lb;
+        cores = new CoreBudget(pool);
+    }
+
+    /**
+     * @return budget of cores of the solves.
+     */
+    CoreBudget cores() {
+        return cores;
+    }
+
+    /**
+     * @param ub   upper bound of the weight of solutions in the component.
+     * @param size difficulty of the component, e.g. number of its units.
+     */
+    void add(Worker worker, double ub, int size) {
+        jobs.add(new Job(worker, ub, size));
+    }
+
+    /**
+     * Runs all added workers and waits for them.
+     */
+    void run() {
+        PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>(Math.max(jobs.size(), 1),
+                Comparator.<Job>comparingDouble(j -> -j.ub).thenComparingInt(j -> -j.size));
+        queue.addAll(jobs);
+        int total = cores.cores();
+        AtomicLong queuedSize = new AtomicLong(jobs.stream().mapToLong(j -> j.size).sum());
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < Math.min(total, jobs.size()); i++) {
+            tasks.add(pool.submit(() -> {
+                while (true) {
+                    cores.acquire();
+                    Job job = queue.poll();
+                    if (job == null) {
+                        cores.release(1);
+                        return;
+                    }
+                    long rest = queuedSize.addAndGet(-job.size);
+                    int extra = 0;
+                    if (job.ub > lb.get()) {
+                        int share = (int) Math.round((double) total * job.size / Math.max(job.size + rest, 1));
+                        extra = cores.tryAcquire(share - 1);
+                    }
+                    try {
+                        run(job, 1 + extra);
+                    } finally {
+                        cores.release(1 + extra);
+                    }
+                }
+            }));
+        }
+        SolverPool.joinAll(tasks);
+    }
+
+    private void run(Job job, int threads) {
+        if (job.ub <= lb.get()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        job.worker.setThreadsNum(threads);
+        job.worker.run();
+    }
+
+    /**
+     * @return number of components which weren't solved since they couldn't improve the lower bound.
+     */
+    int skipped() {
+        return skipped.get();
+    }
+}
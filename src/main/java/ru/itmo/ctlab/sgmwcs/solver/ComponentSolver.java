@@ -5,7 +5,6 @@ import ru.itmo.ctlab.sgmwcs.TimeLimit;
 import ru.itmo.ctlab.sgmwcs.graph.*;
 
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class ComponentSolver implements Solver {
@@ -16,6 +15,17 @@ public class ComponentSolver implements Solver {
     private int logLevel;
     private int threads;
     private boolean cplexOff;
+    private boolean compactGraph;
+    private PreprocessingCache cache;
+    private SolverPool pool;
+    private PreprocessingStats stats;
+    private double preprocessingShare = 1.0;
+    private boolean adaptivePreprocessing;
+    private int javaSolverSize;
+    private int separationThreads;
+    private boolean backCuts;
+    private int nestedCuts;
+    private double creepFlow = Separator.ADDITION_CAPACITY;
 
     private boolean minimize;
     private int preprocessLevel;
@@ -38,6 +48,7 @@ public class ComponentSolver implements Solver {
         externLB = Double.NEGATIVE_INFINITY;
         tl = new TimeLimit(Double.POSITIVE_INFINITY);
         threads = 1;
+        separationThreads = 1;
     }
 
     @Override
@@ -45,7 +56,7 @@ public class ComponentSolver implements Solver {
         this.g = graph;
         this.s = signals;
         isSolvedToOptimality = true;
-        Graph g = new Graph();
+        Graph g = compactGraph ? new CompactGraph() : new Graph();
         Signals s = new Signals();
         int vertexBefore = graph.vertexSet().size(), edgesBefore = graph.edgeSet().size();
         Utils.copy(graph, signals, g, s);
@@ -55,7 +66,31 @@ public class ComponentSolver implements Solver {
             new GraphPrinter(g, s).printGraph("beforePrep.dot", true);
         }
         long before = System.currentTimeMillis();
-        new Preprocessor(g, s, threads, logLevel).preprocess(preprocessLevel);
+        String key = cache == null || preprocessLevel == 0 ? null : cache.key(g, s, preprocessLevel, null);
+        Graph cached = compactGraph ? new CompactGraph() : new Graph();
+        Signals cachedSignals = new Signals();
+        if (key != null && cache.load(key, cached, cachedSignals)) {
+            if (logLevel > 0) {
+                System.out.println("Preprocessed instance is loaded from cache.");
+            }
+            g = cached;
+            s = cachedSignals;
+        } else {
+            Preprocessor preprocessor = new Preprocessor(g, s, pool(), logLevel);
+            preprocessor.setStats(stats);
+            preprocessor.setTimeLimit(tl.subLimit(preprocessingShare));
+            preprocessor.setAdaptive(adaptivePreprocessing);
+            preprocessor.preprocess(preprocessLevel);
+            if (logLevel > 0 && preprocessor.isInterrupted()) {
+                System.out.println("Preprocessing is stopped by time limit.");
+            }
+            // Only the fixpoint of all rules in the fixed order is reproducible
+            if (key != null && !preprocessor.isInterrupted() && !adaptivePreprocessing) {
+                cache.store(key, g, new Signals(s, units));
+            }
+        }
+        // Time of preprocessing is carved from the time limit of the solve
+        tl.spend((System.currentTimeMillis() - before) / 1000.0);
         preprocessedSize[0] = g.vertexSet().size();
         preprocessedSize[1] = g.edgeSet().size();
         if (logLevel > 0) {
@@ -78,15 +113,17 @@ public class ComponentSolver implements Solver {
             }
         }*/
         AtomicDouble lb = new AtomicDouble(externLB);
+        // Components are views of the graph traversed many times by workers,
+        // so links of removed edges are dropped once here
+        graph.compact();
         PriorityQueue<Set<Node>> components = getComponents(graph);
         List<Worker> memorized = new ArrayList<>();
-        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-        ExecutorService executor = new ThreadPoolExecutor(threads, threads, Long.MAX_VALUE, TimeUnit.NANOSECONDS, queue);
+        ComponentScheduler scheduler = new ComponentScheduler(pool(), lb);
         List<Unit> bestTree = new ArrayList<>();
 
         while (!components.isEmpty()) {
             Set<Node> component = components.poll();
-            Graph subgraph = graph.subgraph(component);
+            Graph subgraph = new SubgraphView(graph, component);
             Node root = null;
             /*Set<Integer> us = subgraph.vertexSet().stream()
                     .flatMap(n -> signals.unitSets(n).stream())
@@ -122,7 +159,7 @@ public class ComponentSolver implements Solver {
                 Graph subtree = subgraph.subgraph(vertexSet, ms.getEdges());
                 TreeSolver ts = new TreeSolver(subtree, subSignals);
                 mstSol = ts.solveRooted(treeRoot);
-                double tlb = subSignals.weightSum(mstSol.sets());
+                double tlb = mstSol.weight();
                 double plb = lb.get();
                 if (tlb >= plb) {
                     System.out.println("heuristic found lb " + tlb);
@@ -131,23 +168,43 @@ public class ComponentSolver implements Solver {
                 }
             }
             if (!this.cplexOff) {
-                RLTSolver solver = new RLTSolver();
-                solver.setSharedLB(lb);
+                RootedSolver solver;
+                if (vertexSet.size() <= javaSolverSize) {
+                    BranchAndCutSolver bc = new BranchAndCutSolver();
+                    bc.setSeparationThreads(separationThreads);
+                    bc.setCores(scheduler.cores());
+                    bc.setCutFamilies(backCuts, nestedCuts, creepFlow);
+                    bc.setSharedLB(lb);
+                    if (mstSol != null) {
+                        bc.setInitialSolution(mstSol.units);
+                    }
+                    solver = bc;
+                } else {
+                    RLTSolver rlt = new RLTSolver();
+                    rlt.setCompactGraph(compactGraph);
+                    rlt.setSeparationThreads(separationThreads);
+                    rlt.setCores(scheduler.cores());
+                    rlt.setCutFamilies(backCuts, nestedCuts, creepFlow);
+                    rlt.setSharedLB(lb);
+                    if (mstSol != null) {
+                        rlt.setInitialSolution(mstSol.units);
+                    }
+                    solver = rlt;
+                }
                 solver.setTimeLimit(tl);
                 solver.setLogLevel(logLevel);
-                if (mstSol != null)
-                    solver.setInitialSolution(mstSol.units);
                 Worker worker = new Worker(subgraph, root,
                         subSignals, solver, timeBefore);
-                executor.execute(worker);
+                if (mstSol != null) {
+                    worker.setInitialSolution(mstSol.units);
+                }
+                scheduler.add(worker, worker.upperBound(), subset.size());
                 memorized.add(worker);
-
             }
         }
-        executor.shutdown();
-        try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException ignored) {
+        scheduler.run();
+        if (logLevel > 0 && scheduler.skipped() > 0) {
+            System.out.println(scheduler.skipped() + " components can't improve lower bound and are skipped.");
         }
         if (!this.cplexOff)
             return getResult(memorized, graph, signals);
@@ -257,8 +314,9 @@ public class ComponentSolver implements Solver {
                                Signals signals) throws SolverException {
         // signals = new Signals(signals, graph.units());
         // Graph origin = graph;
-        graph = graph.subgraph(graph.vertexSet());
-        graph.removeVertex(root);
+        Set<Node> rest = new LinkedHashSet<>(graph.vertexSet());
+        rest.remove(root);
+        graph = new SubgraphView(graph, rest);
         /* List<Set<Node>> sets = graph.connectedSets().stream()
                 .sorted(new SetComparator()).collect(Collectors.toList());
 
@@ -345,9 +403,33 @@ public class ComponentSolver implements Solver {
         if (n < 1) {
             throw new IllegalArgumentException();
         }
+        if (n != threads) {
+            pool = null;
+        }
         threads = n;
     }
 
+    /**
+     * Shares the pool of threads between solves and other solvers,
+     * the number of threads is set to the size of the pool.
+     * The pool is not closed by the solver.
+     */
+    public void setPool(SolverPool pool) {
+        this.pool = pool;
+        threads = pool.threads();
+    }
+
+    /**
+     * Returns the shared pool or the pool of this solver started on the first solve
+     * and reused by following ones.
+     */
+    private SolverPool pool() {
+        if (pool == null) {
+            pool = new SolverPool(threads);
+        }
+        return pool;
+    }
+
     @Override
     public void setLB(double lb) {
         externLB = lb;
@@ -366,6 +448,77 @@ public class ComponentSolver implements Solver {
         this.cplexOff = cplexOff;
     }
 
+    public void setCompactGraph(boolean compactGraph) {
+        this.compactGraph = compactGraph;
+    }
+
+    /**
+     * Enables on-disk cache of preprocessed instances, <code>null</code> disables it.
+     */
+    public void setPreprocessingCache(PreprocessingCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the share of the time limit available for preprocessing,
+     * rules which don't fit into it are not applied.
+     */
+    public void setPreprocessingShare(double share) {
+        if (share < 0.0 || share > 1.0) {
+            throw new IllegalArgumentException();
+        }
+        preprocessingShare = share;
+    }
+
+    /**
+     * Lets preprocessing skip rules which reduce few units per second,
+     * see {@link Preprocessor#setAdaptive(boolean)}.
+     */
+    public void setAdaptivePreprocessing(boolean adaptive) {
+        adaptivePreprocessing = adaptive;
+    }
+
+    /**
+     * Components of at most <code>size</code> nodes are solved by {@link BranchAndCutSolver}
+     * instead of CPLEX, 0 disables it.
+     */
+    public void setJavaSolverSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException();
+        }
+        javaSolverSize = size;
+    }
+
+    /**
+     * Sets the number of threads separating connectivity cuts of each component,
+     * extra threads are borrowed from free cores of the pool of the solver.
+     */
+    public void setSeparationThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        separationThreads = threads;
+    }
+
+    /**
+     * See {@link RLTSolver#setCutFamilies(boolean, int, double)}.
+     */
+    public void setCutFamilies(boolean backCuts, int nestedCuts, double creepFlow) {
+        if (nestedCuts < 0 || creepFlow < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.backCuts = backCuts;
+        this.nestedCuts = nestedCuts;
+        this.creepFlow = creepFlow;
+    }
+
+    /**
+     * Collects metrics of reduction rules, nothing is recorded for instances loaded from cache.
+     */
+    public void setPreprocessingStats(PreprocessingStats stats) {
+        this.stats = stats;
+    }
+
     public static class SetComparator implements Comparator<Set<Node>> {
         @Override
         public int compare(Set<Node> o1, Set<Node> o2) {
@@ -0,0 +1,49 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Cores of a {@link SolverPool} shared by solves of components, see {@link ComponentScheduler}.
+ * A solve holds its cores until it finishes. Short parallel stages of a solve, e.g. rounds of
+ * cut separation, borrow cores which are free at the moment without waiting and run their
+ * helper tasks in the pool, so the number of busy threads doesn't exceed the budget.
+ */
+class CoreBudget {
+    private final SolverPool pool;
+    private final Semaphore free;
+
+    CoreBudget(SolverPool pool) {
+        this.pool = pool;
+        free = new Semaphore(pool.threads());
+    }
+
+    int cores() {
+        return pool.threads();
+    }
+
+    void acquire() {
+        free.acquireUninterruptibly();
+    }
+
+    /**
+     * Takes at most <code>max</code> free cores without waiting.
+     *
+     * @return number of taken cores.
+     */
+    int tryAcquire(int max) {
+        int res = 0;
+        while (res < max && free.tryAcquire()) {
+            res++;
+        }
+        return res;
+    }
+
+    void release(int cores) {
+        free.release(cores);
+    }
+
+    ForkJoinTask<?> submit(Runnable task) {
+        return pool.submit(task);
+    }
+}
@@ -4,56 +4,180 @@ import ru.itmo.ctlab.sgmwcs.Pair;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
 import ru.itmo.ctlab.sgmwcs.graph.Node;
-import ru.itmo.ctlab.sgmwcs.graph.flow.EdmondsKarp;
-import ru.itmo.ctlab.sgmwcs.graph.flow.MaxFlow;
+import ru.itmo.ctlab.sgmwcs.graph.flow.PushRelabel;
 
 import java.util.*;
 
 public class CutGenerator {
-    private MaxFlow maxFlow;
+    /**
+     * Added to capacities of edges of found cuts while nested cuts are searched, cuts crossing
+     * them can't be violated since values of variables are at most 1.
+     */
+    private static final double SATURATED = 1;
+    private PushRelabel maxFlow;
     private Map<Node, Integer> nodes;
     private Node root;
-    private Map<Edge, Pair<Integer, Integer>> edges;
+    private Map<Edge, Integer> links;
+    private int[] arcs;
+    private double[] capacities;
     private List<Node> backLink;
-    private Map<Node, Double> weights;
+    private double[] weights;
     private Graph graph;
+    private boolean backCuts;
+    private int nestedCuts;
 
     public CutGenerator(Graph graph, Node root) {
         int i = 0;
-        weights = new HashMap<>();
         backLink = new ArrayList<>();
         nodes = new HashMap<>();
-        edges = new HashMap<>();
+        links = new HashMap<>();
         for (Node node : graph.vertexSet()) {
             nodes.put(node, i++);
             backLink.add(node);
         }
-        maxFlow = new EdmondsKarp(graph.vertexSet().size());
+        weights = new double[i];
+        maxFlow = new PushRelabel(i);
+        Map<Pair<Integer, Integer>, Integer> pairs = new HashMap<>();
+        List<Integer> arcs = new ArrayList<>();
         for (Edge e : graph.edgeSet()) {
-            Node v = graph.getEdgeSource(e);
-            Node u = graph.getEdgeTarget(e);
-            maxFlow.addEdge(nodes.get(v), nodes.get(u));
-            edges.put(e, new Pair<>(nodes.get(v), nodes.get(u)));
+            int v = nodes.get(graph.getEdgeSource(e));
+            int u = nodes.get(graph.getEdgeTarget(e));
+            Pair<Integer, Integer> pair = new Pair<>(Math.min(v, u), Math.max(v, u));
+            Integer link = pairs.get(pair);
+            if (link == null) {
+                link = pairs.size();
+                pairs.put(pair, link);
+                maxFlow.addEdge(v, u);
+                arcs.add(maxFlow.arc(v, u));
+                arcs.add(maxFlow.arc(u, v));
+            }
+            links.put(e, link);
         }
+        this.arcs = arcs.stream().mapToInt(a -> a).toArray();
+        capacities = new double[pairs.size()];
         this.root = root;
         this.graph = graph;
     }
 
+    /**
+     * @return a generator of the same component with its own max-flow.
+     */
+    public CutGenerator copy() {
+        CutGenerator res = new CutGenerator(graph, root);
+        res.setBackCuts(backCuts);
+        res.setNestedCuts(nestedCuts);
+        return res;
+    }
+
+    /**
+     * Makes {@link #findCuts(Node)} also return cuts closest to sinks.
+     */
+    public void setBackCuts(boolean backCuts) {
+        this.backCuts = backCuts;
+    }
+
+    /**
+     * Sets the number of nested cuts {@link #findCuts(Node)} looks for after the first one:
+     * edges of found cuts are saturated and the flow is computed again.
+     */
+    public void setNestedCuts(int nestedCuts) {
+        if (nestedCuts < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.nestedCuts = nestedCuts;
+    }
+
     public void setCapacity(Edge e, double capacity) {
-        Pair<Integer, Integer> edge = edges.get(e);
-        maxFlow.setCapacity(edge.first, edge.second, capacity);
-        maxFlow.setCapacity(edge.second, edge.first, capacity);
+        setCapacity(link(e), capacity);
+    }
+
+    /**
+     * Same as {@link #setCapacity(Edge, double)} for a link id from {@link #link(Edge)}.
+     */
+    public void setCapacity(int link, double capacity) {
+        capacities[link] = capacity;
+        setFlowCapacity(link, capacity);
+    }
+
+    private void setFlowCapacity(int link, double capacity) {
+        maxFlow.setCapacity(arcs[2 * link], capacity);
+        maxFlow.setCapacity(arcs[2 * link + 1], capacity);
+    }
+
+    /**
+     * @return id of the link of the edge in the max-flow network, the same for parallel edges
+     * and for copies of the generator.
+     */
+    public int link(Edge e) {
+        return links.get(e);
+    }
+
+    /**
+     * @return id of the node in the max-flow network, the same for copies of the generator.
+     */
+    public int index(Node v) {
+        return nodes.get(v);
     }
 
     public void setVertexCapacity(Node v, double capacity) {
-        weights.put(v, capacity);
+        setVertexCapacity(index(v), capacity);
+    }
+
+    public void setVertexCapacity(int v, double capacity) {
+        weights[v] = capacity;
     }
 
     public List<Edge> findCut(Node v) {
-        List<Pair<Integer, Integer>> cut = maxFlow.computeMinCut(nodes.get(root), nodes.get(v), weights.get(v));
+        int t = index(v);
+        List<Pair<Integer, Integer>> cut = maxFlow.computeMinCut(index(root), t, weights[t]);
         if (cut == null) {
             return null;
         }
+        return edges(cut);
+    }
+
+    /**
+     * Finds violated cuts separating <code>v</code> from the root: the cut closest to the root,
+     * the cut closest to <code>v</code> if back cuts are enabled, and the same for nested cuts.
+     *
+     * @return distinct cuts, empty if there are no violated ones.
+     */
+    public List<List<Edge>> findCuts(Node v) {
+        int s = index(root), t = index(v);
+        List<List<Edge>> result = new ArrayList<>();
+        Set<Integer> saturated = new HashSet<>();
+        for (int i = 0; i <= nestedCuts; i++) {
+            List<Pair<Integer, Integer>> cut = maxFlow.computeMinCut(s, t, weights[t]);
+            if (cut == null) {
+                break;
+            }
+            List<Edge> front = edges(cut);
+            result.add(front);
+            Set<Edge> found = new HashSet<>(front);
+            if (backCuts) {
+                List<Edge> back = edges(maxFlow.backCut(t));
+                if (!found.equals(new HashSet<>(back))) {
+                    result.add(back);
+                    found.addAll(back);
+                }
+            }
+            if (i == nestedCuts) {
+                break;
+            }
+            for (Edge e : found) {
+                int link = link(e);
+                if (saturated.add(link)) {
+                    setFlowCapacity(link, capacities[link] + SATURATED);
+                }
+            }
+        }
+        for (int link : saturated) {
+            setFlowCapacity(link, capacities[link]);
+        }
+        return result;
+    }
+
+    private List<Edge> edges(List<Pair<Integer, Integer>> cut) {
         List<Edge> result = new ArrayList<>();
         for (Pair<Integer, Integer> p : cut) {
             result.addAll(graph.getAllEdges(backLink.get(p.first), backLink.get(p.second)));
@@ -66,7 +190,7 @@ public class CutGenerator {
     }
 
     public Set<Edge> getEdges() {
-        return edges.keySet();
+        return links.keySet();
     }
 
     public Node getRoot() {
@@ -0,0 +1,110 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.util.*;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Pool of cuts <code>y_v &lt;= w(cut)</code> given by variables of edges followed by the variable
+ * of the node. Cuts are identified by their sets of variables, so a cut found again is stored once.
+ * Each round the most efficacious violated cuts are selected: violation divided by the norm of
+ * the cut, which prefers sparse cuts among equally violated ones. Cuts which haven't been
+ * violated for more than <code>maxAge</code> rounds are dropped.
+ */
+public class CutPool {
+    private final int maxAge;
+    private final double eps;
+    private final Map<Key, Cut> cuts;
+
+    public CutPool(int maxAge, double eps) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxAge = maxAge;
+        this.eps = eps;
+        cuts = new HashMap<>();
+    }
+
+    /**
+     * @return whether the cut is new.
+     */
+    public boolean add(int[] vars) {
+        Key key = new Key(vars);
+        if (cuts.containsKey(key)) {
+            cuts.get(key).age = 0;
+            return false;
+        }
+        cuts.put(key, new Cut(vars));
+        return true;
+    }
+
+    /**
+     * Ages cuts not violated by <code>values</code> and selects at most <code>k</code> violated ones.
+     *
+     * @return cuts in order of decreasing efficacy.
+     */
+    public List<int[]> select(IntToDoubleFunction values, int k) {
+        List<Cut> violated = new ArrayList<>();
+        Iterator<Cut> it = cuts.values().iterator();
+        while (it.hasNext()) {
+            Cut cut = it.next();
+            double violation = cut.violation(values);
+            if (violation > eps) {
+                cut.age = 0;
+                cut.efficacy = violation / Math.sqrt(cut.vars.length);
+                violated.add(cut);
+            } else if (++cut.age > maxAge) {
+                it.remove();
+            }
+        }
+        violated.sort(Comparator.comparingDouble((Cut c) -> -c.efficacy));
+        List<int[]> res = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, violated.size()); i++) {
+            res.add(violated.get(i).vars);
+        }
+        return res;
+    }
+
+    public int size() {
+        return cuts.size();
+    }
+
+    private static class Cut {
+        private final int[] vars;
+        private int age;
+        private double efficacy;
+
+        Cut(int[] vars) {
+            this.vars = vars;
+        }
+
+        double violation(IntToDoubleFunction values) {
+            double res = values.applyAsDouble(vars[vars.length - 1]);
+            for (int i = 0; i < vars.length - 1; i++) {
+                res -= values.applyAsDouble(vars[i]);
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Variable of the node and sorted variables of edges.
+     */
+    private static class Key {
+        private final int[] vars;
+
+        Key(int[] vars) {
+            this.vars = vars.clone();
+            Arrays.sort(this.vars, 0, vars.length - 1);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(vars);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(vars, ((Key) obj).vars);
+        }
+    }
+}
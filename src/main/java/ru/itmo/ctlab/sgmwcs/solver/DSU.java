@@ -15,9 +15,13 @@ public class DSU {
     private int[] min;
 
     public DSU(Signals s) {
-        parent = IntStream.rangeClosed(0, s.size()).toArray();
-        min = IntStream.rangeClosed(0, s.size()).toArray();
-        size = new int[s.size()];
+        this(s.size());
+    }
+
+    public DSU(int n) {
+        parent = IntStream.rangeClosed(0, n).toArray();
+        min = IntStream.rangeClosed(0, n).toArray();
+        size = new int[n];
         Arrays.fill(size, 1);
     }
 
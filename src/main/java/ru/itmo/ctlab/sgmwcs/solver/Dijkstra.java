@@ -1,34 +1,63 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
 import ru.itmo.ctlab.sgmwcs.Signals;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.IntIntMap;
 import ru.itmo.ctlab.sgmwcs.graph.Node;
-import ru.itmo.ctlab.sgmwcs.graph.Unit;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.IntConsumer;
 
+/**
+ * Shortest paths w.r.t. sums of distinct negative signals. Labels of reached nodes are
+ * kept in primitive arrays indexed by ids local to a search, the queue is an indexed
+ * {@value #ARITY}-ary heap with decrease-key. A label stores only signals which are new
+ * relative to its predecessor, so signals of a path are shared with all its prefixes
+ * and are collected only when a node is settled or a path is requested.
+ * Searches for reductions stop at the radius of the unit being tested.
+ */
 class Dijkstra {
+    private static final int ARITY = 4;
+    private static final int SETTLED = -1;
+    private static final int UNQUEUED = -2;
+
     private Graph graph;
-    private Signals signals;
-    private Map<Node, Double> d;
-    private Map<Unit, Set<Integer>> p;
-    private Map<Set<Integer>, Double> cache;
-    private Set<Node> dests;
+    private CompactSignals signals;
 
-    private Set<Integer> currentSignals;
+    private final IntIntMap index = new IntIntMap();
+    private Node[] nodes = new Node[16];
+    private double[] dist = new double[16];
+    private int[] parent = new int[16];
+    private int[] labelFrom = new int[16];
+    private int[] labelTo = new int[16];
+    private int[] heapPos = new int[16];
+    private int count;
 
-    private double currentWeight() {
-        Set<Integer> negSets = signals.filter(currentSignals, s -> signals.weight(s) < 0).collect(Collectors.toSet());
-        return cache.computeIfAbsent(negSets,
-                s -> -signals.weightSum(negSets));
-    }
+    private int[] heap = new int[16];
+    private int heapSize;
 
-    private double weight(Node n) {
-        return d.getOrDefault(n, Double.MAX_VALUE);
-    }
+    private int[] labelSignals = new int[64];
+    private int labelSize;
+
+    private final BitSet currentSignals = new BitSet();
+    private int current;
+    private double radius;
+    private boolean bounded = true;
+    private int[] added = new int[16];
+    private int addedSize;
+    private double relaxed;
+    private final IntConsumer addSignal = i -> {
+        if (!currentSignals.get(i)) {
+            currentSignals.set(i);
+            if (addedSize == added.length) {
+                added = Arrays.copyOf(added, 2 * addedSize);
+            }
+            added[addedSize++] = i;
+            relaxed -= Math.min(signals.weight(i), 0);
+        }
+    };
 
     /**
      * Constructs Dijkstra algorithm instance provided {@link Graph} and
@@ -37,9 +66,23 @@ class Dijkstra {
      * u -> v.
      */
     Dijkstra(Graph graph, Signals signals) {
+        this(graph, new CompactSignals(signals));
+    }
+
+    /**
+     * Same as {@link #Dijkstra(Graph, Signals)}, but reuses a snapshot of signals
+     * which may be shared between several instances.
+     */
+    Dijkstra(Graph graph, CompactSignals signals) {
         this.graph = graph;
         this.signals = signals;
-        this.dests = new HashSet<>();
+    }
+
+    /**
+     * Enables radius cutoffs of searches for reductions, they are enabled by default.
+     */
+    void setBounded(boolean bounded) {
+        this.bounded = bounded;
     }
 
     /**
@@ -49,61 +92,190 @@ class Dijkstra {
      * @param u The start node. Distance of u -> u is considered as 0.
      */
     public void solve(Node u) {
-        d = new HashMap<>();
-        p = new HashMap<>();
-        PriorityQueue<Node> q = new PriorityQueue<>(Comparator.comparingDouble(this::weight));
-        cache = new HashMap<>();
-        currentSignals = new HashSet<>();
-        q.add(u);
-        d.put(u, 0.0);
-        p.put(u, new HashSet<>(signals.positiveUnitSets(u)));
-        Node cur;
-        List<Integer> negE, negN;
-        List<Integer> addedE = new ArrayList<>(), addedN = new ArrayList<>();
-        Set<Node> visitedDests = new HashSet<>();
-        while ((cur = q.poll()) != null) {
-            if (dests.contains(cur)
-                    && visitedDests.add(cur)
-                    && visitedDests.containsAll(dests)) {
-                    break;
+        solve(u, Collections.emptyList(), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Same as {@link #solve(Node)} but stops when all <code>dests</code> are settled
+     * and doesn't label nodes farther than <code>radius</code>.
+     */
+    private void solve(Node u, Collection<Node> dests, double radius) {
+        clear();
+        this.radius = radius;
+        int source = label(u);
+        dist[source] = 0.0;
+        parent[source] = -1;
+        labelFrom[source] = labelSize;
+        signals.forEachSignal(u, i -> {
+            if (signals.weight(i) > 0) {
+                addLabelSignal(i);
             }
-            currentSignals = p.getOrDefault(cur, new HashSet<>());
-            double cw = currentWeight();
-            for (Node node : graph.neighborListOf(cur)) {
-                negN = signals.unitSets(node);
-                double sumN = 0;
-                for (int i : negN) {
-                    if (currentSignals.add(i)) {
-                        addedN.add(i);
-                        sumN -= Math.min(signals.weight(i), 0);
-                    }
-                }
-                cw += sumN;
-                for (Edge edge : graph.getAllEdges(node, cur)) {
-                    negE = signals.unitSets(edge);
-                    double sumE = 0;
-                    for (int i : negE) {
-                        if (currentSignals.add(i)) {
-                            addedE.add(i);
-                            sumE -= Math.min(signals.weight(i), 0);
-                        }
-                    }
-                    cw += sumE;
-                    if (cw < weight(node)) {
-                        q.remove(node);
-                        d.put(node, cw);
-                        p.put(node, new HashSet<>(currentSignals));
-                        q.add(node);
-                    }
-                    currentSignals.removeAll(addedE);
-                    addedE.clear();
-                    cw -= sumE;
+        });
+        labelTo[source] = labelSize;
+        push(source);
+        Set<Node> remaining = new HashSet<>(dests);
+        while (heapSize > 0) {
+            current = pop();
+            Node cur = nodes[current];
+            if (remaining.remove(cur) && remaining.isEmpty()) {
+                break;
+            }
+            collect(current, true);
+            graph.forEachIncidentEdge(cur, this::relax);
+            collect(current, false);
+        }
+    }
+
+    private void relax(Edge edge, Node node) {
+        relaxed = dist[current];
+        addedSize = 0;
+        signals.forEachSignal(node, addSignal);
+        signals.forEachSignal(edge, addSignal);
+        for (int i = 0; i < addedSize; i++) {
+            currentSignals.clear(added[i]);
+        }
+        if (relaxed > radius) {
+            return;
+        }
+        int v = index.get(node.getNum());
+        if (v == -1) {
+            v = label(node);
+        } else if (heapPos[v] == SETTLED || relaxed >= dist[v]) {
+            return;
+        }
+        dist[v] = relaxed;
+        parent[v] = current;
+        labelFrom[v] = labelSize;
+        for (int i = 0; i < addedSize; i++) {
+            addLabelSignal(added[i]);
+        }
+        labelTo[v] = labelSize;
+        if (heapPos[v] == UNQUEUED) {
+            push(v);
+        } else {
+            siftUp(heapPos[v]);
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < count; i++) {
+            index.remove(nodes[i].getNum());
+            nodes[i] = null;
+        }
+        count = 0;
+        heapSize = 0;
+        labelSize = 0;
+    }
+
+    private int label(Node node) {
+        if (count == nodes.length) {
+            int size = 2 * count;
+            nodes = Arrays.copyOf(nodes, size);
+            dist = Arrays.copyOf(dist, size);
+            parent = Arrays.copyOf(parent, size);
+            labelFrom = Arrays.copyOf(labelFrom, size);
+            labelTo = Arrays.copyOf(labelTo, size);
+            heapPos = Arrays.copyOf(heapPos, size);
+            heap = Arrays.copyOf(heap, size);
+        }
+        int v = count++;
+        nodes[v] = node;
+        index.put(node.getNum(), v);
+        heapPos[v] = UNQUEUED;
+        return v;
+    }
+
+    private void addLabelSignal(int sig) {
+        if (labelSize == labelSignals.length) {
+            labelSignals = Arrays.copyOf(labelSignals, 2 * labelSize);
+        }
+        labelSignals[labelSize++] = sig;
+    }
+
+    /**
+     * Sets or clears signals of the path to <code>v</code> in {@link #currentSignals}.
+     */
+    private void collect(int v, boolean value) {
+        for (; v != -1; v = parent[v]) {
+            for (int i = labelFrom[v]; i < labelTo[v]; i++) {
+                currentSignals.set(labelSignals[i], value);
+            }
+        }
+    }
+
+    /**
+     * @return signals of the shortest path to <code>n</code> found by the last search
+     * or <code>null</code> if <code>n</code> is not reached.
+     */
+    private BitSet path(Node n) {
+        int v = index.get(n.getNum());
+        if (v == -1) {
+            return null;
+        }
+        BitSet res = new BitSet(signals.size());
+        for (; v != -1; v = parent[v]) {
+            for (int i = labelFrom[v]; i < labelTo[v]; i++) {
+                res.set(labelSignals[i]);
+            }
+        }
+        return res;
+    }
+
+    private void push(int v) {
+        heap[heapSize] = v;
+        heapPos[v] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int top = heap[0];
+        heapPos[top] = SETTLED;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapPos[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int pos) {
+        int v = heap[pos];
+        while (pos > 0) {
+            int p = (pos - 1) / ARITY;
+            if (dist[heap[p]] <= dist[v]) {
+                break;
+            }
+            heap[pos] = heap[p];
+            heapPos[heap[pos]] = pos;
+            pos = p;
+        }
+        heap[pos] = v;
+        heapPos[v] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int v = heap[pos];
+        while (true) {
+            int first = ARITY * pos + 1;
+            if (first >= heapSize) {
+                break;
+            }
+            int best = first;
+            for (int c = first + 1; c < Math.min(first + ARITY, heapSize); c++) {
+                if (dist[heap[c]] < dist[heap[best]]) {
+                    best = c;
                 }
-                currentSignals.removeAll(addedN);
-                addedN.clear();
-                cw -= sumN;
             }
+            if (dist[v] <= dist[heap[best]]) {
+                break;
+            }
+            heap[pos] = heap[best];
+            heapPos[heap[pos]] = pos;
+            pos = best;
         }
+        heap[pos] = v;
+        heapPos[v] = pos;
     }
 
     /**
@@ -118,15 +290,23 @@ class Dijkstra {
         List<Node> nbors = graph.neighborListOf(u);
         if (nbors.size() != 2) return false;
         Node v_1 = nbors.get(0), v_2 = nbors.get(1);
-        this.dests.add(v_2);
-        solve(v_1);
-        Set<Integer> neg = new HashSet<>(signals.negativeUnitSets(u));
-        neg.addAll(signals.negativeUnitSets(graph.edgesOf(u)));
-        if (p.get(v_2).containsAll(neg)) return false;
-        Set<Integer> pos = new HashSet<>(signals.positiveUnitSets(u));
-        pos.addAll(signals.positiveUnitSets(graph.edgesOf(u)));
-        pos.removeAll(signals.positiveUnitSets(v_1, v_2));
-        return p.get(v_2).containsAll(pos);
+        // The path through u bounds the distance to v_2
+        BitSet through = signals.unitSets(graph.edgesOf(u));
+        through.or(signals.unitSets(u, v_2));
+        List<Node> dests = Collections.singletonList(v_2);
+        solve(v_1, dests, bounded ? -signals.negativeSum(through) : Double.POSITIVE_INFINITY);
+        BitSet path = path(v_2);
+        if (path == null) {
+            solve(v_1, dests, Double.POSITIVE_INFINITY);
+            path = path(v_2);
+        }
+        BitSet neg = signals.negativeUnitSets(u);
+        neg.or(signals.negativeUnitSets(graph.edgesOf(u)));
+        if (CompactSignals.containsAll(path, neg)) return false;
+        BitSet pos = signals.positiveUnitSets(u);
+        pos.or(signals.positiveUnitSets(graph.edgesOf(u)));
+        pos.andNot(signals.positiveUnitSets(v_1, v_2));
+        return CompactSignals.containsAll(path, pos);
 //                && signals.weightSum(signals.filter(p.get(v_2), s -> signals.set(s).size() == 1))
  //               >= signals.minSum(u) + signals.minSum(graph.edgesOf(u));
 
@@ -143,14 +323,27 @@ class Dijkstra {
      */
 
     Set<Edge> solveNE(Node u, List<Node> neighbors) {
-        this.dests = new HashSet<>(neighbors);
-        solve(u);
+        // Edges themselves bound distances to the neighbors
+        double radius = 0;
+        for (Node n : neighbors) {
+            double direct = Double.POSITIVE_INFINITY;
+            for (Edge e : graph.getAllEdges(n, u)) {
+                direct = Math.min(direct, -signals.negativeSum(signals.unitSets(e, n)));
+            }
+            radius = Math.max(radius, direct);
+        }
+        solve(u, neighbors, bounded ? radius : Double.POSITIVE_INFINITY);
+        if (neighbors.stream().anyMatch(n -> index.get(n.getNum()) == -1)) {
+            // Rounding of sums made a neighbor look farther than the radius
+            solve(u, neighbors, Double.POSITIVE_INFINITY);
+        }
         Set<Edge> res = new HashSet<>();
         neighbors.forEach(n -> {
             List<Edge> edges = graph.getAllEdges(n, u);
-            p.get(n).removeAll(signals.unitSets(u, n));
+            BitSet path = path(n);
+            path.andNot(signals.unitSets(u, n));
             for (Edge e : edges) {
-                if (!p.get(n).containsAll(signals.negativeUnitSets(e)))
+                if (!CompactSignals.containsAll(path, signals.negativeUnitSets(e)))
                     res.add(e);
             }
         });
@@ -174,16 +367,16 @@ class Dijkstra {
             Map<Node, Double> cd = distances.get(v);
             for (Node n : k) {
                 if (n == v) continue;
-                Set<Integer> path = this.p.get(n);
+                BitSet path = path(n);
                 if (path == null) return false;
-                path.addAll(signals.negativeUnitSets(v));
-                cd.put(n, -signals.weightSum(signals.filter(path, s -> signals.weight(s) < 0)));
+                path.or(signals.negativeUnitSets(v));
+                cd.put(n, -signals.negativeSum(path));
             }
         }
         Set<Set<Node>> subsets = Utils.subsets(k);
         for (Set<Node> subset : subsets) {
             if (subset.size() < 2) continue;
-            if (    !signals.positiveUnitSets(subset).containsAll(signals.positiveUnitSets(u))
+            if (    !CompactSignals.containsAll(signals.positiveUnitSets(subset), signals.positiveUnitSets(u))
                     || new NaiveMST(subset, distances).result() + signals.minSum(u) > 0)
                 return false;
         }
@@ -195,6 +388,10 @@ class Dijkstra {
      * @return distances calculated by {@link #solve(Node)}.
      */
     Map<Node, Double> distances() {
-        return d;
+        Map<Node, Double> res = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            res.put(nodes[i], dist[i]);
+        }
+        return res;
     }
 }
@@ -39,12 +39,11 @@ public class MSTSolver {
         PriorityQueue<Edge> q =
                 new PriorityQueue<>(Comparator.comparingDouble(ws::get));
         for (int i = 0; i < g.vertexSet().size() - 1; ++i) {
-            for (Edge e : g.edgesOf(cur)) {
-                Node nbor = g.getOppositeVertex(cur, e);
+            g.forEachIncidentEdge(cur, (e, nbor) -> {
                 if (unvisited.contains(nbor)) {
                     q.add(e);
                 }
-            }
+            });
             final Edge e = q.remove();
             final Node et = g.getEdgeTarget(e);
             final Node es = g.getEdgeSource(e);
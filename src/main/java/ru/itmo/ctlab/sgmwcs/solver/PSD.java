@@ -1,5 +1,6 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
 import ru.itmo.ctlab.sgmwcs.Signals;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
@@ -7,12 +8,10 @@ import ru.itmo.ctlab.sgmwcs.graph.Node;
 import ru.itmo.ctlab.sgmwcs.graph.Unit;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class PSD {
     private Graph g;
-    private Signals s;
+    private CompactSignals s;
 
     private DSU dsu;
 
@@ -69,21 +68,22 @@ public class PSD {
         Node n;
         Path parent;
         Center c;
-        Set<Integer> sigs;
+        BitSet sigs;
 
         Path(Center c, Node n) {
             this.c = c;
             this.n = n;
             this.parent = this;
-            this.sigs = new HashSet<>(s.negativeUnitSets(c.units));
+            this.sigs = s.negativeUnitSets(c.units);
         }
 
         Path(Path p, Node n, Edge e) {
             this.c = p.c;
             this.parent = p;
             this.n = n;
-            this.sigs = new HashSet<>(p.sigs);
-            this.sigs.addAll(s.unitSets(n, e));
+            this.sigs = (BitSet) p.sigs.clone();
+            s.addTo(this.sigs, n);
+            s.addTo(this.sigs, e);
         }
     }
 
@@ -113,7 +113,7 @@ public class PSD {
 
         public Center(Set<Unit> units) {
             this.units.addAll(units);
-            this.sigs.addAll(s.positiveUnitSets(units));
+            s.positiveUnitSets(units).stream().forEach(this.sigs::add);
             centerSet.add(this);
             for (Unit u : units) {
                 if (u instanceof Node) {
@@ -126,6 +126,10 @@ public class PSD {
     }
 
     public PSD(Graph g, Signals s, Set<Node> forced) {
+        this(g, new CompactSignals(s), forced);
+    }
+
+    public PSD(Graph g, CompactSignals s, Set<Node> forced) {
         int sz = g.vertexSet().stream().mapToInt(Unit::getNum).max().orElse(0) + 1;
         d = new double[sz];
         Arrays.fill(d, Double.POSITIVE_INFINITY);
@@ -143,7 +147,7 @@ public class PSD {
         boolean posCycle = false;
         for (Node n : g.vertexSet()) {
             if (colors[n.getNum()] == 0) {
-                posCycle |= posCycles(n, null, colors, new HashSet<>());
+                posCycle |= posCycles(n, null, colors, new BitSet());
             }
         }
         solutionIsTree = !posCycle;
@@ -153,27 +157,28 @@ public class PSD {
         this(g, s, Collections.emptySet());
     }
 
+    public PSD(Graph g, CompactSignals s) {
+        this(g, s, Collections.emptySet());
+    }
 
-    private boolean posCycles(Node r, Node par, int[] colors, Set<Integer> sigs) {
+
+    private boolean posCycles(Node r, Node par, int[] colors, BitSet sigs) {
         colors[r.getNum()] = 1;
         boolean pos = false;
-        sigs.addAll(s.positiveUnitSets(r));
+        sigs.or(s.positiveUnitSets(r));
         for (Node n : g.neighborListOf(r)) {
             if (colors[n.getNum()] == 2 || n == par) continue;
             for (Edge e : g.getAllEdges(r, n)) {
-                Set<Integer> ens = s.positiveUnitSets(e, n);
-                if (s.weight(e) >= 0 && !sigs.containsAll(ens)) {
+                BitSet ens = s.positiveUnitSets(e, n);
+                if (s.weight(e) >= 0 && !CompactSignals.containsAll(sigs, ens)) {
                     if (colors[n.getNum()] == 1)
                         pos = true;
                     else {
-                        Set<Integer> added = new HashSet<>();
-                        for (int sig : ens) {
-                            if (sigs.add(sig)) {
-                                added.add(sig);
-                            }
-                        }
+                        BitSet added = (BitSet) ens.clone();
+                        added.andNot(sigs);
+                        sigs.or(added);
                         pos |= posCycles(n, r, colors, sigs);
-                        sigs.removeAll(added);
+                        sigs.andNot(added);
                     }
                 }
             }
@@ -183,10 +188,10 @@ public class PSD {
     }
 
     private double ub(Set<Center> cs) {
-        Set<Integer> sigs = new HashSet<>();
+        BitSet sigs = new BitSet();
         for (Center c : cs) {
-            sigs.addAll(c.sigs);
-            sigs.addAll(bestPaths.get(c).sigs);
+            c.sigs.forEach(sigs::set);
+            sigs.or(bestPaths.get(c).sigs);
         }
         return s.weightSum(sigs);
     }
@@ -200,11 +205,12 @@ public class PSD {
         }
         return ub;*/
         double ub1 = centerSet.stream().mapToDouble(c -> s.sum(c.units)).max().orElse(0);
-        double ub2 = dsuPaths.values().stream()
-                .flatMap(p -> Stream.concat(
-                        p.c.sigs.stream(),
-                        p.sigs.stream())).distinct()
-                .mapToDouble(set -> s.weight(set)).sum();
+        BitSet sigs = new BitSet();
+        for (Path p : dsuPaths.values()) {
+            p.c.sigs.forEach(sigs::set);
+            sigs.or(p.sigs);
+        }
+        double ub2 = s.weightSum(sigs);
         return Math.max(ub1, ub2);
     }
 
@@ -238,27 +244,25 @@ public class PSD {
         return res;
     }
 
-    private double boundaryWeight(Edge e, List<Integer> csigs) {
-        List<Integer> sigs = new ArrayList<>(csigs);
-        sigs.addAll(s.unitSets(e));
+    private double boundaryWeight(Edge e, BitSet csigs) {
+        BitSet sigs = (BitSet) csigs.clone();
+        s.addTo(sigs, e);
         return s.weightSum(sigs);
     }
 
     private void findBoundaries() {
-        List<Integer> sigSum = centerSet.stream()
-                .flatMap(c -> c.sigs.stream())
-                .distinct().collect(Collectors.toList());
+        BitSet sigSum = new BitSet();
+        centerSet.forEach(c -> c.sigs.forEach(sigSum::set));
         for (Path p : paths.values()) {
-            List<Integer> sigs = new ArrayList<>(p.c.sigs);
-            sigs.addAll(p.sigs);
+            BitSet sigs = (BitSet) p.sigs.clone();
+            p.c.sigs.forEach(sigs::set);
             Edge bd = g.edgesOf(p.n).stream()
                     .filter(e -> !p.c.units.contains(e) && isBoundary(p, e))
                     .max(Comparator.comparingDouble(e -> boundaryWeight(e, sigSum)))
                     .orElse(null);
             if (bd != null) {
-                List<Integer> us = s.unitSets(bd);
-                sigs.addAll(us);
-                p.sigs.addAll(us);
+                s.addTo(sigs, bd);
+                s.addTo(p.sigs, bd);
             }
             double r = s.weightSum(sigs);
             if (r > 0) {
@@ -270,7 +274,7 @@ public class PSD {
     }
 
     private void filterBoundaries() {
-        dsu = new DSU(s);
+        dsu = new DSU(s.size());
         for (int sig = 0; sig < s.size(); sig++) {
             if (s.weight(sig) > 0) {
                 double add = 0;
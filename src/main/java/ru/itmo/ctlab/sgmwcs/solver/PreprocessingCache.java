@@ -0,0 +1,236 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of preprocessed instances. Key is a SHA-256 hash of the graph,
+ * the signals, the preprocessing level and the root, value is the reduced graph,
+ * the reduced signals and units absorbed by every remaining unit.
+ * Least recently used entries are evicted when the directory exceeds its size limit.
+ * {@link #FORMAT} must be increased whenever reduction rules change their results.
+ */
+public class PreprocessingCache {
+    private static final int MAGIC = 0x53475043;
+    static final int FORMAT = 1;
+    private static final String SUFFIX = ".prep";
+
+    private final File dir;
+    private final long maxBytes;
+
+    public PreprocessingCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    public String key(Graph graph, Signals signals, int preprocessLevel, Node root) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(sink, digest)))) {
+            os.writeInt(FORMAT);
+            os.writeInt(preprocessLevel);
+            os.writeInt(root == null ? -1 : root.getNum());
+            List<Node> nodes = new ArrayList<>(graph.vertexSet());
+            nodes.sort(Comparator.comparingInt(Unit::getNum));
+            os.writeInt(nodes.size());
+            for (Node node : nodes) {
+                os.writeInt(node.getNum());
+            }
+            List<Edge> edges = new ArrayList<>(graph.edgeSet());
+            edges.sort(Comparator.comparingInt(Unit::getNum));
+            os.writeInt(edges.size());
+            for (Edge edge : edges) {
+                os.writeInt(edge.getNum());
+                os.writeInt(graph.getEdgeSource(edge).getNum());
+                os.writeInt(graph.getEdgeTarget(edge).getNum());
+            }
+            writeSignals(os, signals);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Fills empty <code>graph</code> and <code>signals</code> with the cached instance.
+     * Unreadable entries are removed and reported as misses, contents of
+     * <code>graph</code> and <code>signals</code> are undefined after a miss.
+     *
+     * @return <code>false</code> if there is no entry for the key.
+     */
+    public boolean load(String key, Graph graph, Signals signals) {
+        File file = new File(dir, key + SUFFIX);
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (is.readInt() != MAGIC || is.readInt() != FORMAT) {
+                throw new IOException("Wrong format of cache entry " + file);
+            }
+            Map<Unit, Unit> units = new HashMap<>();
+            int nodes = is.readInt();
+            for (int i = 0; i < nodes; i++) {
+                Node node = new Node(is.readInt());
+                graph.addVertex(node);
+                units.put(node, node);
+            }
+            int edges = is.readInt();
+            for (int i = 0; i < edges; i++) {
+                Edge edge = new Edge(is.readInt());
+                Node from = (Node) units.get(new Node(is.readInt()));
+                Node to = (Node) units.get(new Node(is.readInt()));
+                if (from == null || to == null) {
+                    throw new IOException("Wrong edge in cache entry " + file);
+                }
+                graph.addEdge(from, to, edge);
+                units.put(edge, edge);
+            }
+            int size = is.readInt();
+            for (int i = 0; i < size; i++) {
+                signals.addSignal(is.readDouble());
+                int n = is.readInt();
+                for (int j = 0; j < n; j++) {
+                    signals.add(readUnit(is, units), i);
+                }
+            }
+            int absorbing = is.readInt();
+            for (int i = 0; i < absorbing; i++) {
+                Unit unit = readUnit(is, units);
+                int n = is.readInt();
+                for (int j = 0; j < n; j++) {
+                    Unit absorbed = readUnit(is, null);
+                    unit.absorb(absorbed);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            return false;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores preprocessed instance and evicts least recently used entries if needed.
+     * Failures to write are ignored, the cache is only an optimization.
+     */
+    public void store(String key, Graph graph, Signals signals) {
+        File tmp = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmp = File.createTempFile(key, ".tmp", dir);
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                os.writeInt(MAGIC);
+                os.writeInt(FORMAT);
+                os.writeInt(graph.vertexSet().size());
+                for (Node node : graph.vertexSet()) {
+                    os.writeInt(node.getNum());
+                }
+                os.writeInt(graph.edgeSet().size());
+                for (Edge edge : graph.edgeSet()) {
+                    os.writeInt(edge.getNum());
+                    os.writeInt(graph.getEdgeSource(edge).getNum());
+                    os.writeInt(graph.getEdgeTarget(edge).getNum());
+                }
+                writeSignals(os, signals);
+                List<Unit> absorbing = new ArrayList<>();
+                graph.vertexSet().stream().filter(u -> !u.getAbsorbed().isEmpty()).forEach(absorbing::add);
+                graph.edgeSet().stream().filter(u -> !u.getAbsorbed().isEmpty()).forEach(absorbing::add);
+                os.writeInt(absorbing.size());
+                for (Unit unit : absorbing) {
+                    writeUnit(os, unit);
+                    List<Unit> absorbed = unit.getAbsorbed();
+                    os.writeInt(absorbed.size());
+                    for (Unit u : absorbed) {
+                        writeUnit(os, u);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), new File(dir, key + SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            evict();
+        } catch (IOException ignored) {
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private void evict() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > maxBytes; i++) {
+            long len = files[i].length();
+            if (files[i].delete()) {
+                total -= len;
+            }
+        }
+    }
+
+    private static void writeSignals(DataOutputStream os, Signals signals) throws IOException {
+        os.writeInt(signals.size());
+        for (int i = 0; i < signals.size(); i++) {
+            os.writeDouble(signals.weight(i));
+            List<Unit> set = signals.set(i);
+            set.sort(Comparator.comparing((Unit u) -> u instanceof Edge).thenComparingInt(Unit::getNum));
+            os.writeInt(set.size());
+            for (Unit unit : set) {
+                writeUnit(os, unit);
+            }
+        }
+    }
+
+    private static void writeUnit(DataOutputStream os, Unit unit) throws IOException {
+        os.writeBoolean(unit instanceof Edge);
+        os.writeInt(unit.getNum());
+    }
+
+    /**
+     * @param units units of the cached graph, other units are created anew.
+     */
+    private static Unit readUnit(DataInputStream is, Map<Unit, Unit> units) throws IOException {
+        boolean edge = is.readBoolean();
+        Unit unit = edge ? new Edge(is.readInt()) : new Node(is.readInt());
+        if (units == null) {
+            return unit;
+        }
+        return units.computeIfAbsent(unit, u -> u);
+    }
+}
@@ -0,0 +1,158 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of reduction rules collected by {@link Preprocessor}: for every run of a rule
+ * its wall time, CPU time and allocated bytes of the calling thread and of pool tasks
+ * started by the rule, number of tested and removed units.
+ * CPU time and allocations are -1 if the JVM doesn't measure them.
+ */
+public class PreprocessingStats {
+    private static final String[] COLUMNS = {"iteration", "rule", "wallNanos", "cpuNanos",
+            "allocatedBytes", "tested", "removed"};
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<Record> records = new ArrayList<>();
+
+    public static class Record {
+        public final int iteration;
+        public final String rule;
+        public final long wallNanos;
+        public final long cpuNanos;
+        public final long allocatedBytes;
+        public final long tested;
+        public final long removed;
+
+        Record(int iteration, String rule, long wallNanos, long cpuNanos,
+               long allocatedBytes, long tested, long removed) {
+            this.iteration = iteration;
+            this.rule = rule;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.tested = tested;
+            this.removed = removed;
+        }
+
+        private Object[] values() {
+            return new Object[]{iteration, rule, wallNanos, cpuNanos, allocatedBytes, tested, removed};
+        }
+    }
+
+    /**
+     * Measurement of a single run of a rule.
+     */
+    class Probe {
+        private final long wall;
+        private final long cpu;
+        private final long allocated;
+        private final LongAdder taskCpu = new LongAdder();
+        private final LongAdder taskAllocated = new LongAdder();
+
+        private Probe() {
+            wall = System.nanoTime();
+            cpu = cpuTime();
+            allocated = allocatedBytes();
+        }
+
+        /**
+         * Wraps a task executed by another thread on behalf of the rule.
+         */
+        Runnable measured(Runnable task) {
+            return () -> {
+                long cpu = cpuTime();
+                long allocated = allocatedBytes();
+                try {
+                    task.run();
+                } finally {
+                    taskCpu.add(cpuTime() - cpu);
+                    taskAllocated.add(allocatedBytes() - allocated);
+                }
+            };
+        }
+    }
+
+    Probe start() {
+        return new Probe();
+    }
+
+    synchronized void finish(Probe probe, int iteration, String rule, long tested, long removed) {
+        long wall = System.nanoTime() - probe.wall;
+        long cpu = probe.cpu < 0 ? -1 : cpuTime() - probe.cpu + probe.taskCpu.sum();
+        long allocated = probe.allocated < 0 ? -1 : allocatedBytes() - probe.allocated + probe.taskAllocated.sum();
+        records.add(new Record(iteration, rule, wall, cpu, allocated, tested, removed));
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+            if (mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled()) {
+                return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public synchronized List<Record> records() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Writes records as CSV if the name of the file ends with <code>.csv</code> and as JSON otherwise.
+     */
+    public void write(File file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(pw);
+            } else {
+                writeJson(pw);
+            }
+        }
+    }
+
+    public synchronized void writeCsv(PrintWriter pw) {
+        pw.println(String.join(",", COLUMNS));
+        for (Record record : records) {
+            Object[] values = record.values();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(values[i]);
+            }
+            pw.println(sb);
+        }
+    }
+
+    public synchronized void writeJson(PrintWriter pw) {
+        pw.println("[");
+        for (int r = 0; r < records.size(); r++) {
+            Object[] values = records.get(r).values();
+            StringBuilder sb = new StringBuilder("  {");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append('"').append(COLUMNS[i]).append("\": ");
+                if (values[i] instanceof String) {
+                    sb.append('"').append(values[i]).append('"');
+                } else {
+                    sb.append(values[i]);
+                }
+            }
+            sb.append(r + 1 < records.size() ? "}," : "}");
+            pw.println(sb);
+        }
+        pw.println("]");
+    }
+}
@@ -1,6 +1,8 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
 import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.TimeLimit;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
 import ru.itmo.ctlab.sgmwcs.graph.Node;
@@ -8,12 +10,11 @@ import ru.itmo.ctlab.sgmwcs.graph.Unit;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 public class Preprocessor {
 
@@ -35,6 +36,10 @@ public class Preprocessor {
         }
 
         int apply(Set<T> toRemove) {
+            return measure(name, () -> remove(toRemove));
+        }
+
+        private int remove(Set<T> toRemove) {
             toRemove.clear();
             test.accept(toRemove);
             int res = toRemove.size();
@@ -44,9 +49,11 @@ public class Preprocessor {
             }
             for (Unit t : toRemove) {
                 if (t instanceof Node) {
+                    graph.forEachNeighbor((Node) t, Preprocessor.this::touch);
                     graph.removeVertex((Node) t);
                 }
                 if (t instanceof Edge) {
+                    touchUnit(t);
                     graph.removeEdge((Edge) t);
                 }
             }
@@ -54,13 +61,39 @@ public class Preprocessor {
         }
     }
 
+    private static final int BATCH = 32;
+
     private int numThreads;
+    private SolverPool pool;
+
+    private PreprocessingStats stats;
+    private PreprocessingStats.Probe probe;
+    private TimeLimit timeLimit;
+    private boolean adaptive;
+    private boolean interrupted;
+    private RuleScheduler scheduler = new RuleScheduler(Double.POSITIVE_INFINITY, false);
+    private int iterationNum;
+    private long tested;
 
     private Graph graph;
     private Signals signals;
 
     private Node primaryNode;
 
+    private boolean incremental = true;
+    private final List<Worklist> worklists = new ArrayList<>();
+    private final Map<Unit, Integer> order = new HashMap<>();
+    private int position;
+    private final Worklist leavesList;
+    private final Worklist cnsList;
+    private final Worklist negCList;
+    private final Worklist posCList;
+    private final Worklist npeList;
+    private final Worklist nnpList;
+    private final Worklist npv2List;
+    private double leavesPrimaryWeight = Double.NaN;
+    private Node npv2PrimaryNode;
+
     public Preprocessor(Graph graph,
                         Signals signals,
                         int numThreads,
@@ -70,11 +103,197 @@ public class Preprocessor {
         this.logLevel = logLevel;
     }
 
+    /**
+     * Runs parallel reductions in the shared <code>pool</code> instead of a pool
+     * of its own started for every call of {@link #preprocess(int)}.
+     */
+    public Preprocessor(Graph graph,
+                        Signals signals,
+                        SolverPool pool,
+                        int logLevel) {
+        this(graph, signals, pool.threads(), logLevel);
+        this.pool = pool;
+    }
+
     public Preprocessor(Graph graph, Signals signals) {
         this.graph = graph;
         this.signals = signals;
         this.numThreads = 0;
         this.logLevel = 0;
+        graph.vertexSet().forEach(v -> order.put(v, position++));
+        graph.edgeSet().forEach(e -> order.put(e, position++));
+        leavesList = worklist(2);
+        cnsList = worklist(4);
+        negCList = worklist(1);
+        posCList = worklist(1);
+        npeList = worklist(Worklist.COMPONENT);
+        nnpList = worklist(1);
+        npv2List = worklist(Worklist.COMPONENT);
+    }
+
+    private Worklist worklist(int radius) {
+        Worklist worklist = new Worklist(graph, radius, order);
+        worklists.add(worklist);
+        return worklist;
+    }
+
+    /**
+     * Applies <code>test</code> to every candidate, concurrently if there is a pool.
+     * Tests only read the graph and the signals, so rules evaluate them against the
+     * unchanged instance and then commit reductions sequentially in the order of
+     * candidates. Parts of tests which depend on reductions committed before are
+     * checked at commit, so the result doesn't depend on the number of threads.
+     * Candidates aren't tested after the time budget is over, their results are <code>null</code>.
+     */
+    private <T, R> List<R> evaluate(List<T> candidates, Function<T, R> test) {
+        return evaluate(candidates, () -> null, (state, candidate) -> test.apply(candidate));
+    }
+
+    /**
+     * Same as {@link #evaluate(List, Function)}, but candidates of a batch are tested
+     * with one state made by <code>state</code>, so search buffers are reused.
+     */
+    private <S, T, R> List<R> evaluate(List<T> candidates, Supplier<S> state, BiFunction<S, T, R> test) {
+        int n = candidates.size();
+        tested += n;
+        if (pool == null || n < 2 * BATCH) {
+            S s = state.get();
+            List<R> res = new ArrayList<>(n);
+            for (T candidate : candidates) {
+                res.add(scheduler.expired() ? null : test.apply(s, candidate));
+            }
+            return res;
+        }
+        Object[] res = new Object[n];
+        int batch = Math.max(BATCH, n / (4 * pool.threads()) + 1);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += batch) {
+            int start = from, end = Math.min(n, from + batch);
+            tasks.add(() -> {
+                S s = state.get();
+                for (int i = start; i < end && !scheduler.expired(); i++) {
+                    res[i] = test.apply(s, candidates.get(i));
+                }
+            });
+        }
+        invokeAll(tasks);
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(res);
+        return list;
+    }
+
+    /**
+     * Enables incremental preprocessing: after the first sweep every rule examines only
+     * units near the ones changed since its previous run. Otherwise every iteration
+     * sweeps the whole graph. Both modes apply reductions until the same fixpoint.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Limits the time of {@link #preprocess(int)}, rules aren't started after the limit
+     * is reached and running ones stop testing candidates.
+     */
+    public void setTimeLimit(TimeLimit timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Enables skipping of rules which have reduced few units per second recently.
+     * Skipped rules are run again when other rules stop reducing the instance,
+     * but the order of reductions and so the reduced instance may differ.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return <code>true</code> if the last {@link #preprocess(int)} was stopped by the time limit
+     * before reaching the fixpoint of rules.
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * Records metrics of every run of every reduction rule to <code>stats</code>.
+     */
+    public void setStats(PreprocessingStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Runs a reduction and records its metrics if they are collected.
+     * Removed units are counted as the decrease of the number of nodes and edges.
+     *
+     * @return result of the reduction.
+     */
+    private int measure(String name, IntSupplier reduction) {
+        if (!scheduler.shouldRun(name)) {
+            return 0;
+        }
+        tested = 0;
+        int before = graph.vertexSet().size() + graph.edgeSet().size();
+        long start = System.nanoTime();
+        probe = stats == null ? null : stats.start();
+        try {
+            int res = reduction.getAsInt();
+            int removed = before - graph.vertexSet().size() - graph.edgeSet().size();
+            scheduler.record(name, System.nanoTime() - start, removed);
+            if (stats != null) {
+                stats.finish(probe, iterationNum, name, tested, removed);
+            }
+            return res;
+        } finally {
+            probe = null;
+        }
+    }
+
+    private void invokeAll(List<Runnable> tasks) {
+        if (probe != null) {
+            tasks.replaceAll(probe::measured);
+        }
+        pool.invokeAll(tasks);
+    }
+
+    /**
+     * Adds an edge keeping track of its position in {@link Graph#edgeSet()}.
+     */
+    private void addEdge(Node v, Node u, Edge e) {
+        graph.addEdge(v, u, e);
+        order.put(e, position++);
+    }
+
+    private void touch(Node v) {
+        for (Worklist worklist : worklists) {
+            worklist.touch(v);
+        }
+    }
+
+    private void touchUnit(Unit unit) {
+        if (unit instanceof Node) {
+            touch((Node) unit);
+        } else if (graph.containsEdge((Edge) unit)) {
+            touch(graph.getEdgeSource((Edge) unit));
+            touch(graph.getEdgeTarget((Edge) unit));
+        }
+    }
+
+    /**
+     * Touches the unit and all units sharing signals with it, weights of these units
+     * may change when signals are joined.
+     */
+    private void touchSharing(Unit unit) {
+        if (worklists.stream().allMatch(Worklist::isAll)) {
+            return;
+        }
+        touchUnit(unit);
+        for (int signal : signals.unitSets(unit)) {
+            for (Unit u : signals.set(signal)) {
+                touchUnit(u);
+            }
+        }
     }
 
     public void setRoot(Node r) {
@@ -106,8 +325,9 @@ public class Preprocessor {
     //private final Step<Node> npv3 = new Step<>(this::npv3, "npv3");
 
     public void preprocessBasic() {
-        posC();
-        negC();
+        iterationNum++;
+        measure("posC", this::posC);
+        measure("negC", this::negC);
         primaryNode = root;
         Set<Node> toRemove = new HashSet<>();
         if (root != null)
@@ -127,17 +347,31 @@ public class Preprocessor {
         if (preprocessLevel == 0) {
             return;
         }
+        scheduler = new RuleScheduler(timeLimit == null ? Double.POSITIVE_INFINITY
+                : timeLimit.getRemainingTime(), adaptive);
         if (preprocessLevel == 1) {
             preprocessBasic();
             return;
         }
-        int removed;
-        do {
-            removed = iteration();
-            if (logLevel > 1) {
-                System.out.println("Removed " + removed + " units");
+        boolean ownPool = pool == null && numThreads > 1;
+        if (ownPool) {
+            pool = new SolverPool(numThreads);
+        }
+        try {
+            int removed;
+            do {
+                removed = iteration();
+                if (logLevel > 1) {
+                    System.out.println("Removed " + removed + " units");
+                }
+            } while (removed > 0 || scheduler.wake());
+            interrupted = scheduler.expired();
+        } finally {
+            if (ownPool) {
+                pool.close();
+                pool = null;
             }
-        } while (removed > 0);
+        }
     }
 
     private void mergeEdges() {
@@ -161,6 +395,11 @@ public class Preprocessor {
 
     private int iteration() {
         int res = 0;
+        iterationNum++;
+        scheduler.nextIteration();
+        if (!incremental) {
+            worklists.forEach(Worklist::touchAll);
+        }
         Set<Node> toRemove = new HashSet<>();
         primaryNode = root;
         if (primaryNode == null)
@@ -170,11 +409,15 @@ public class Preprocessor {
                 }
             }
         if (primaryNode != null) {
+            if (weight(primaryNode) != leavesPrimaryWeight) {
+                leavesPrimaryWeight = weight(primaryNode);
+                leavesList.touchAll();
+            }
            res += leaves.apply(toRemove);
         }
         res += cns.apply(toRemove);
-        negC();
-        posC();
+        measure("negC", this::negC);
+        measure("posC", this::posC);
         primaryNode = root;
         Node posNode = null;
         if (primaryNode == null)
@@ -195,10 +438,13 @@ public class Preprocessor {
                     , "negR").apply(toRemove);
         }
         Set<Edge> edgesToRemove = numThreads == 1 ? new HashSet<>() : new ConcurrentSkipListSet<>();
-        res += npe.apply(edgesToRemove);
-        res += nnp.apply(edgesToRemove);
-
-        res += npv2.apply(toRemove);
+        Map<String, IntSupplier> paths = new LinkedHashMap<>();
+        paths.put("npe", () -> npe.apply(edgesToRemove));
+        paths.put("nnp", () -> nnp.apply(edgesToRemove));
+        paths.put("npv2", () -> npv2.apply(toRemove));
+        for (String rule : scheduler.order(paths.keySet())) {
+            res += paths.get(rule).getAsInt();
+        }
         // res += npv3.apply(toRemove);
         return res;
     }
@@ -216,6 +462,7 @@ public class Preprocessor {
     private boolean negR(Node v, Node r, Set<Node> vis, Set<Node> toRemove) {
         boolean safe = false;
         vis.add(v);
+        tested++;
         List<Unit> units = new ArrayList<>(vis);
         for (Edge e : graph.edgesOf(v)) {
             double minSum = signals.minSum(units);
@@ -251,35 +498,59 @@ public class Preprocessor {
 
 
     private void nnp(Set<Edge> toRemove) {
-        for (Edge e : graph.edgeSet()) {
-            if (signals.minSum(e) > 0) continue;
-            Node u = graph.getEdgeTarget(e), v = graph.getEdgeSource(e);
-            for (Node n : graph.neighborListOf(v)) {
-                Edge eu = graph.getEdge(n, v);
-                if (eu == e || signals.minSum(eu, n) < signals.minSum(e)) continue;
-                if (graph.neighborListOf(n).contains(u)) {
-                    Edge ev = graph.getEdge(n, u);
-                    if (toRemove.contains(eu) || toRemove.contains(ev))
-                        continue;
-                    Set<Integer> pos = signals.positiveUnitSets(e);
-                    double lowest = Math.min(
-                            signals.minSum(eu, ev), signals.minSum(eu, ev, n));
-                    double lowest2 = Math.min(signals.minSum(eu), signals.minSum(ev));
-                    lowest = Math.min(lowest, lowest2);
-                    if (lowest >= signals.minSum(e)
-                            && signals.positiveUnitSets(eu, n, u, v)
-                            .containsAll(pos)
-                            && signals.positiveUnitSets(ev, n, u, v)
-                            .containsAll(pos))
-                        toRemove.add(e);
+        List<Edge> edges = nnpList.edges();
+        List<List<Edge>> triangles = evaluate(edges, this::nnpTriangles);
+        for (int i = 0; i < edges.size(); i++) {
+            List<Edge> t = triangles.get(i);
+            if (t == null) continue;
+            for (int j = 0; j < t.size(); j += 2) {
+                if (!toRemove.contains(t.get(j)) && !toRemove.contains(t.get(j + 1))) {
+                    toRemove.add(edges.get(i));
+                    break;
                 }
             }
         }
+    }
 
+    /**
+     * @return pairs of edges of triangles dominating <code>e</code>,
+     * <code>e</code> is removed if both edges of some pair remain.
+     */
+    private List<Edge> nnpTriangles(Edge e) {
+        List<Edge> res = new ArrayList<>();
+        if (signals.minSum(e) > 0) return res;
+        Node u = graph.getEdgeTarget(e), v = graph.getEdgeSource(e);
+        for (Node n : graph.neighborListOf(v)) {
+            Edge eu = graph.getEdge(n, v);
+            if (eu == e || signals.minSum(eu, n) < signals.minSum(e)) continue;
+            if (graph.neighborListOf(n).contains(u)) {
+                Edge ev = graph.getEdge(n, u);
+                Set<Integer> pos = signals.positiveUnitSets(e);
+                double lowest = Math.min(
+                        signals.minSum(eu, ev), signals.minSum(eu, ev, n));
+                double lowest2 = Math.min(signals.minSum(eu), signals.minSum(ev));
+                lowest = Math.min(lowest, lowest2);
+                if (lowest >= signals.minSum(e)
+                        && signals.positiveUnitSets(eu, n, u, v)
+                        .containsAll(pos)
+                        && signals.positiveUnitSets(ev, n, u, v)
+                        .containsAll(pos)) {
+                    res.add(eu);
+                    res.add(ev);
+                }
+            }
+        }
+        return res;
     }
 
-    private void negC() {
-        for (Node v : new ArrayList<>(graph.vertexSet())) {
+    /**
+     * @return number of contracted nodes.
+     */
+    private int negC() {
+        int res = 0;
+        List<Node> nodes = negCList.nodes();
+        tested += nodes.size();
+        for (Node v : nodes) {
             if (signals.maxSum(v) <= 0 && graph.degreeOf(v) == 2) {
                 Edge[] edges = graph.edgesOf(v).toArray(new Edge[0]);
                 if (signals.maxSum(edges[1]) > 0 || signals.maxSum(edges[0]) > 0) {
@@ -287,20 +558,30 @@ public class Preprocessor {
                 }
                 Node left = graph.getOppositeVertex(v, edges[0]);
                 Node right = graph.getOppositeVertex(v, edges[1]);
+                touch(left);
+                touch(right);
                 if (left == right) {
                     graph.removeVertex(v);
                 } else {
                     graph.removeVertex(v);
                     absorb(edges[0], v);
                     absorb(edges[0], edges[1]);
-                    graph.addEdge(left, right, edges[0]);
+                    addEdge(left, right, edges[0]);
                 }
+                res++;
             }
         }
+        return res;
     }
 
-    private void posC() {
-        for (Edge edge : new ArrayList<>(graph.edgeSet())) {
+    /**
+     * @return number of contracted edges.
+     */
+    private int posC() {
+        int res = 0;
+        List<Edge> edges = posCList.edges();
+        tested += edges.size();
+        for (Edge edge : edges) {
             if (!graph.containsEdge(edge)) {
                 continue;
             }
@@ -308,8 +589,10 @@ public class Preprocessor {
             Node to = graph.getEdgeTarget(edge);
             if (positive(edge) && positive(from) && positive(to)) {
                 merge(edge, from, to);
+                res++;
             }
         }
+        return res;
     }
 
     private void merge(Unit... units) {
@@ -337,8 +620,10 @@ public class Preprocessor {
         Node aux = graph.getEdgeTarget(e);
         Set<Edge> auxEdges = new HashSet<>(graph.edgesOf(aux));
         auxEdges.remove(e);
+        touch(main);
         for (Edge a : auxEdges) {
             Node opposite = graph.getOppositeVertex(aux, a);
+            touch(opposite);
             Edge m = graph.getEdge(main, opposite);
             graph.removeEdge(a);
             if (m == null) {
@@ -348,12 +633,12 @@ public class Preprocessor {
                     }
                     continue;
                 }
-                graph.addEdge(main, opposite, a);
+                addEdge(main, opposite, a);
             } else {
                 if (positive(a) && positive(m)) {
                     absorb(m, a);
                 } else {
-                    graph.addEdge(main, opposite, a);
+                    addEdge(main, opposite, a);
                 }
             }
         }
@@ -364,32 +649,22 @@ public class Preprocessor {
 
     private void leaves(Set<Node> toRemove) {
         Map<Node, List<Unit>> toAbsorb = new HashMap<>();
-        for (Node leaf : graph.vertexSet()) {
-            Set<Edge> edges = graph.edgesOf(leaf);
-            if (edges.size() != 1
-                    || weight(leaf) == weight(primaryNode)) continue;
-            Edge edge = edges.stream().findAny().orElse(null);
-            Node opposite = graph.getOppositeVertex(leaf, edge);
-            double minSum = signals.minSum(edge, leaf, opposite);
-            if (minSum >= signals.minSum(opposite)
-                    && graph.degreeOf(opposite) > 1) {
+        List<Node> leaves = leavesList.nodes();
+        double primaryWeight = weight(primaryNode);
+        List<LeafVerdict> verdicts = evaluate(leaves, leaf -> testLeaf(leaf, primaryWeight));
+        for (int i = 0; i < leaves.size(); i++) {
+            LeafVerdict verdict = verdicts.get(i);
+            if (verdict == null) continue;
+            Node leaf = leaves.get(i);
+            if (verdict.absorb) {
+                Edge edge = graph.edgesOf(leaf).iterator().next();
+                Node opposite = graph.getOppositeVertex(leaf, edge);
                 toAbsorb.putIfAbsent(opposite, new ArrayList<>());
                 toAbsorb.get(opposite).addAll(Arrays.asList(leaf, edge));
                 toRemove.add(leaf);
-            } else if (
-                    signals.sum(edge, leaf, opposite) <= signals.sum(opposite)) {
+            } else if (verdict.dominating == null
+                    || verdict.dominating.stream().anyMatch(other -> !toRemove.contains(other))) {
                 toRemove.add(leaf);
-            } else {
-                for (Node other : graph.neighborListOf(opposite)) {
-                    if (toRemove.contains(other) || other == leaf)
-                        continue;
-                    Edge otherEdge = graph.getEdge(other, opposite);
-                    if (signals.positiveUnitSets(otherEdge, other)
-                            .containsAll(signals.positiveUnitSets(leaf, edge)) &&
-                            signals.minSum(otherEdge, other) >= signals.minSum(leaf, edge)) {
-                        toRemove.add(leaf);
-                    }
-                }
             }
         }
         for (Map.Entry<Node, List<Unit>> kvp : toAbsorb.entrySet()) {
@@ -398,103 +673,152 @@ public class Preprocessor {
         }
     }
 
+    /**
+     * Leaf is removed and absorbed by its neighbor, removed unconditionally
+     * or removed if some of <code>dominating</code> neighbors of its neighbor remains.
+     */
+    private static class LeafVerdict {
+        private static final LeafVerdict ABSORB = new LeafVerdict(true, null);
+        private static final LeafVerdict REMOVE = new LeafVerdict(false, null);
+
+        private final boolean absorb;
+        private final List<Node> dominating;
+
+        private LeafVerdict(boolean absorb, List<Node> dominating) {
+            this.absorb = absorb;
+            this.dominating = dominating;
+        }
+    }
+
+    private LeafVerdict testLeaf(Node leaf, double primaryWeight) {
+        if (graph.degreeOf(leaf) != 1
+                || weight(leaf) == primaryWeight) return null;
+        Edge edge = graph.edgesOf(leaf).iterator().next();
+        Node opposite = graph.getOppositeVertex(leaf, edge);
+        double minSum = signals.minSum(edge, leaf, opposite);
+        if (minSum >= signals.minSum(opposite)
+                && graph.degreeOf(opposite) > 1) {
+            return LeafVerdict.ABSORB;
+        } else if (
+                signals.sum(edge, leaf, opposite) <= signals.sum(opposite)) {
+            return LeafVerdict.REMOVE;
+        }
+        List<Node> dominating = new ArrayList<>();
+        graph.forEachNeighbor(opposite, other -> {
+            if (other == leaf)
+                return;
+            Edge otherEdge = graph.getEdge(other, opposite);
+            if (signals.positiveUnitSets(otherEdge, other)
+                    .containsAll(signals.positiveUnitSets(leaf, edge)) &&
+                    signals.minSum(otherEdge, other) >= signals.minSum(leaf, edge)) {
+                dominating.add(other);
+            }
+        });
+        return dominating.isEmpty() ? null : new LeafVerdict(false, dominating);
+    }
+
     private boolean positiveEdge(Node u, Node v) {
         return graph.getAllEdges(u, v).stream().anyMatch(this::positive);
     }
 
-    private Stream<Node> positiveNeighbors(Node v) {
-        return graph.neighborListOf(v).stream()
-                .filter(n -> positive(n) && positiveEdge(n, v));
+    private Set<Node> positiveNeighbors(Node v) {
+        Set<Node> res = new HashSet<>();
+        graph.forEachNeighbor(v, n -> {
+            if (positive(n) && positiveEdge(n, v)) {
+                res.add(n);
+            }
+        });
+        return res;
 //                .filter(n -> signals.minSum(n, graph.getEdge(n, v)) >= 0);
     }
 
-    private void cns(Set<Node> toRemove) {
-        Set<Node> vertexSet = graph.vertexSet();
-        Set<Node> w;
-        Set<Edge> we;
-        for (Node v : vertexSet) {
-            if (toRemove.contains(v)) continue;
-            w = positiveNeighbors(v)
-                    .collect(Collectors.toSet());
-            // we = w.stream().map(n -> graph.getEdge(n, v)).collect(Collectors.toSet());
-            w.add(v);
-            // ws.addAll(signals.unitSets(w));
-            final Set<Integer> ws = signals.unitSets(w);
-            Set<Node> wnbs = w.stream()
-                    .flatMap(n -> graph.neighborListOf(n).stream())
-                    .collect(Collectors.toSet());
-            for (Node n : wnbs) {
-                List<Node> neighbors = graph.neighborListOf(n);
-                for (Node r : neighbors) {
-                    if (w.contains(r) || r == root) continue;
-                    double vWorst = signals.minSum(v);
-                    Set<Edge> edges = graph.edgesOf(r);
-                    Set<Integer> rs = signals.positiveUnitSets(edges);
-                    rs.addAll(signals.positiveUnitSets(r));
-                    // double rWeight = signals.weightSum(signals.positiveUnitSets(edges));
-                    double bestSum = signals.minSum(r);
-                    if (vWorst >= bestSum && ws.containsAll(rs)
-                            && w.containsAll(graph.neighborListOf(r)))
-                        toRemove.add(r);
-                }
-            }
-        }
+    private boolean allNeighborsIn(Node v, Set<Node> set) {
+        boolean[] res = {true};
+        graph.forEachNeighbor(v, n -> res[0] &= set.contains(n));
+        return res[0];
     }
 
-    private void uselessEdges(Set<Edge> toRemove) {
-        ExecutorService executor;
-        if (numThreads > 1) {
-            executor = Executors.newFixedThreadPool(numThreads);
-            synchronized (this) {
-                // Remove nodes marked as deleted
-                // in internal graph representation
-                graph.subgraph(graph.vertexSet());
-            }
-        } else executor = Executors.newSingleThreadExecutor();
-        parallelUselessEdges(toRemove, executor);
+    private void cns(Set<Node> toRemove) {
+        List<Node> nodes = cnsList.nodes();
+        List<List<Node>> dominated = evaluate(nodes, this::cnsDominated);
+        for (int i = 0; i < nodes.size(); i++) {
+            if (toRemove.contains(nodes.get(i)) || dominated.get(i) == null) continue;
+            toRemove.addAll(dominated.get(i));
+        }
     }
 
-    private void parallelUselessEdges(Set<Edge> toRemove, ExecutorService executor) {
-        for (Node u : graph.vertexSet()) {
-            executor.execute(
-                    () -> {
-                        Dijkstra dijkstra = new Dijkstra(graph, signals);
-                        npeIteration(dijkstra, u, toRemove);
-                    }
-            );
+    /**
+     * @return nodes dominated by <code>v</code> and its positive neighbors.
+     */
+    private List<Node> cnsDominated(Node v) {
+        List<Node> res = new ArrayList<>();
+        Set<Node> w = positiveNeighbors(v);
+        // we = w.stream().map(n -> graph.getEdge(n, v)).collect(Collectors.toSet());
+        w.add(v);
+        // ws.addAll(signals.unitSets(w));
+        final Set<Integer> ws = signals.unitSets(w);
+        Set<Node> wnbs = new HashSet<>();
+        for (Node n : w) {
+            graph.forEachNeighbor(n, wnbs::add);
         }
-        executor.shutdown();
-        try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException ignored) {
+        double vWorst = signals.minSum(v);
+        for (Node n : wnbs) {
+            graph.forEachNeighbor(n, r -> {
+                if (w.contains(r) || r == root) return;
+                double bestSum = signals.minSum(r);
+                if (vWorst < bestSum || !allNeighborsIn(r, w)) return;
+                Set<Edge> edges = graph.edgesOf(r);
+                Set<Integer> rs = signals.positiveUnitSets(edges);
+                rs.addAll(signals.positiveUnitSets(r));
+                // double rWeight = signals.weightSum(signals.positiveUnitSets(edges));
+                if (ws.containsAll(rs))
+                    res.add(r);
+            });
         }
+        return res;
     }
 
-    private void npeIteration(Dijkstra dijkstra, Node u, Set<Edge> toRemove) {
-        List<Node> neighbors = graph.neighborListOf(u).stream()
-                .filter(n -> graph.getAllEdges(n, u)
-                        .stream().anyMatch(this::nonPositive))
-                .collect(Collectors.toList());
-        if (neighbors.isEmpty()) return;
-        Set<Edge> res = dijkstra.solveNE(u, neighbors);
-        for (Edge edge : res) {
-            // if (nonPositive(edge)) {
-            toRemove.add(edge);
-            // }
+    private void uselessEdges(Set<Edge> toRemove) {
+        CompactSignals snapshot = new CompactSignals(signals);
+        List<Set<Edge>> removable = evaluate(npeList.nodes(), () -> new Dijkstra(graph, snapshot), this::npeIteration);
+        for (Set<Edge> edges : removable) {
+            if (edges != null) {
+                toRemove.addAll(edges);
+            }
         }
     }
 
+    private Set<Edge> npeIteration(Dijkstra dijkstra, Node u) {
+        List<Node> neighbors = new ArrayList<>();
+        graph.forEachNeighbor(u, n -> {
+            if (graph.getAllEdges(n, u).stream().anyMatch(this::nonPositive)) {
+                neighbors.add(n);
+            }
+        });
+        if (neighbors.isEmpty()) return Collections.emptySet();
+        return dijkstra.solveNE(u, neighbors);
+    }
+
     private void npv2(Set<Node> toRemove) {
-        Dijkstra dijkstra = new Dijkstra(graph, signals);
-        for (Node n : graph.vertexSet()) {
-            if (n == primaryNode) continue;
-            if (!checkNeg(n)) continue;
+        if (primaryNode != npv2PrimaryNode) {
+            if (npv2PrimaryNode != null) {
+                npv2List.touch(npv2PrimaryNode);
+            }
+            if (primaryNode != null) {
+                npv2List.touch(primaryNode);
+            }
+            npv2PrimaryNode = primaryNode;
+        }
+        CompactSignals snapshot = new CompactSignals(signals);
+        List<Node> nodes = npv2List.nodes();
+        List<Boolean> verdicts = evaluate(nodes, () -> new Dijkstra(graph, snapshot),
+                (dijkstra, n) -> n != primaryNode && checkNeg(n) && dijkstra.solveNP(n));
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (!Boolean.TRUE.equals(verdicts.get(i))) continue;
             if (graph.neighborListOf(n).stream().anyMatch(toRemove::contains)) continue;
-            if (dijkstra.solveNP(n))
-                toRemove.add(n);
-
+            toRemove.add(n);
         }
-
     }
 
     private void npv3(Set<Node> toRemove) {
@@ -507,13 +831,14 @@ public class Preprocessor {
 
     private void npvClique(int maxK, Set<Node> toRemove) {
         Set<Node> nodes = new HashSet<>(graph.vertexSet());
+        CompactSignals snapshot = new CompactSignals(signals);
         for (Node v : graph.vertexSet()) {
             // if (!negWithEdges(v)) continue;
             List<Node> delta = graph.neighborListOf(v);
             if (delta.size() <= maxK && delta.size() >= 2) {
                 nodes.remove(v);
                 boolean res = new Dijkstra(
-                        graph.subgraph(nodes), signals
+                        graph.subgraph(nodes), snapshot
                 ).solveClique(v, new HashSet<>(delta)
                 );
                 if (res) {
@@ -538,6 +863,8 @@ public class Preprocessor {
     }
 
     private void absorb(Unit who, Unit whom) {
+        touchSharing(who);
+        touchSharing(whom);
         who.absorb(whom);
         signals.join(whom, who);
     }
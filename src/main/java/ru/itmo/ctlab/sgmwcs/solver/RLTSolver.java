@@ -1,29 +1,34 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
-import ilog.concert.*;
-import ilog.cplex.IloCplex;
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
 import ru.itmo.ctlab.sgmwcs.Pair;
 import ru.itmo.ctlab.sgmwcs.Signals;
 import ru.itmo.ctlab.sgmwcs.TimeLimit;
 import ru.itmo.ctlab.sgmwcs.graph.*;
+import ru.itmo.ctlab.sgmwcs.solver.mip.Backend;
+import ru.itmo.ctlab.sgmwcs.solver.mip.CplexBackend;
+import ru.itmo.ctlab.sgmwcs.solver.mip.MipCallback;
+import ru.itmo.ctlab.sgmwcs.solver.mip.Model;
 
 import java.lang.Exception;
 import java.util.*;
-import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import static ilog.cplex.IloCplex.*;
-
 public class RLTSolver implements RootedSolver {
     private static final double EPS = 1e-9;
-    private IloCplex cplex;
+    private final Supplier<Backend> backends;
+    private Model model;
+    private Backend backend;
+    private List<MipCallback> callbacks;
     private boolean isEdgePenalty;
-    private Map<Node, IloNumVar> y;
-    private Map<Edge, IloNumVar> w;
-    private Map<Edge, Pair<IloNumVar, IloNumVar>> x;
-    private Map<Node, IloNumVar> d;
-    private Map<Node, IloNumVar> x0;
-    private Map<Integer, IloNumVar> s;
+    private Map<Node, Integer> y;
+    private Map<Edge, Integer> w;
+    private Map<Edge, Pair<Integer, Integer>> x;
+    private Map<Node, Integer> d;
+    private Map<Node, Integer> x0;
+    private Map<Integer, Integer> s;
+    private Map<Node, Integer> priority;
     private Set<Unit> initialSolution;
     private TimeLimit tl;
     private int threads;
@@ -37,21 +42,37 @@ public class RLTSolver implements RootedSolver {
     private AtomicDouble lb;
     private double externLB;
     private boolean isLBShared;
-    private IloNumVar sum;
+    private int sum;
     private boolean solutionIsTree;
-    private IloNumVar prSum;
+    private int prSum;
     private PSD psd;
-    private IloNumVar size;
+    private boolean compactGraph;
+    private boolean rootCuts;
+    private int separationThreads;
+    private boolean backCuts;
+    private int nestedCuts;
+    private double creepFlow;
+    private CoreBudget cores;
 
     public void setSolIsTree(boolean tree) {
         solutionIsTree = tree;
     }
 
     public RLTSolver() {
+        this(CplexBackend::new);
+    }
+
+    /**
+     * @param backends creates the backend for each solve.
+     */
+    public RLTSolver(Supplier<Backend> backends) {
+        this.backends = backends;
         tl = new TimeLimit(Double.POSITIVE_INFINITY);
-        threads = 1;
+        threads = 0;
         externLB = Double.NEGATIVE_INFINITY;
         maxToAddCuts = considerCuts = Integer.MAX_VALUE;
+        separationThreads = 1;
+        creepFlow = Separator.ADDITION_CAPACITY;
     }
 
     public void setMaxToAddCuts(int num) {
@@ -62,6 +83,47 @@ public class RLTSolver implements RootedSolver {
         considerCuts = num;
     }
 
+    public void setCompactGraph(boolean compactGraph) {
+        this.compactGraph = compactGraph;
+    }
+
+    /**
+     * Sets the number of threads separating connectivity cuts, see {@link Separator#setThreads(int)}.
+     */
+    public void setSeparationThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        separationThreads = threads;
+    }
+
+    /**
+     * Sets the budget separation borrows free cores from, see {@link Separator#setCores(CoreBudget)}.
+     */
+    void setCores(CoreBudget cores) {
+        this.cores = cores;
+    }
+
+    /**
+     * Sets families of connectivity cuts separated with ones closest to the root,
+     * see {@link CutGenerator#findCuts(Node)} and {@link Separator#setCreepFlow(double)}.
+     */
+    public void setCutFamilies(boolean backCuts, int nestedCuts, double creepFlow) {
+        if (nestedCuts < 0 || creepFlow < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.backCuts = backCuts;
+        this.nestedCuts = nestedCuts;
+        this.creepFlow = creepFlow;
+    }
+
+    /**
+     * Enables separation of {@link RootSeparator} cuts for unrooted instances.
+     */
+    public void setRootCuts(boolean rootCuts) {
+        this.rootCuts = rootCuts;
+    }
+
     public void setPSD(PSD psd) {
         this.psd = psd;
     }
@@ -79,6 +141,10 @@ public class RLTSolver implements RootedSolver {
         this.tl = tl;
     }
 
+    /**
+     * Limits the number of threads of the backend, by default the backend chooses it itself.
+     */
+    @Override
     public void setThreadsNum(int threads) {
         if (threads < 1) {
             throw new IllegalArgumentException();
@@ -92,7 +158,7 @@ public class RLTSolver implements RootedSolver {
 
     public double ub() {
         try {
-            return cplex.getBestObjValue();
+            return backend.bestObjValue();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -101,7 +167,7 @@ public class RLTSolver implements RootedSolver {
 
     public double lb() {
         try {
-            return cplex.getObjValue();
+            return backend.objValue();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -115,8 +181,10 @@ public class RLTSolver implements RootedSolver {
             if (!isLBShared) {
                 lb = new AtomicDouble(externLB);
             }
-            cplex = new IloCplex();
-            this.graph = graph;
+            model = new Model();
+            backend = null;
+            callbacks = new ArrayList<>();
+            this.graph = compactGraph ? CompactGraph.of(graph) : graph;
             this.signals = signals;
             initVariables();
             addConstraints();
@@ -124,6 +192,9 @@ public class RLTSolver implements RootedSolver {
             maxSizeConstraints(signals);
             if (root == null) {
                 breakRootSymmetry();
+                if (rootCuts) {
+                    callbacks.add(new RootSeparator(this.graph, y, w, x0));
+                }
             } else {
                 tighten();
             }
@@ -134,42 +205,22 @@ public class RLTSolver implements RootedSolver {
 //                psdConstraints(signals, psd);
             //          }
             breakTreeSymmetries();
-            tuning(cplex);
+            backend = backends.get();
+            backend.load(model);
+            for (MipCallback callback : callbacks) {
+                backend.use(callback);
+            }
+            tuning(backend);
             if (graph.edgeSet().size() >= 1)
-                cplex.use(new MSTCallback());
+                backend.use(new MSTCallback());
             if (initialSolution != null) {
-                CplexSolution sol = applyMstSolution(initialSolution);
+                StartSolution sol = applyMstSolution(initialSolution);
                 if (sol != null) {
-                    boolean applied = sol.apply((vars, vals) -> {
-                                try {
-                                    cplex.addMIPStart(vars, vals, MIPStartEffort.Repair);
-                                    return true;
-                                } catch (IloException e) {
-                                    return false;
-                                }
-                            }
-                    );
-                    if (!applied) {
-                        throw new SolverException("MST Heuristic not applied");
-                    }
+                    backend.addStart(sol.variables(), sol.values());
                 }
             }
-            // for model and starts debug
-            List<IloConstraint> constraints = new ArrayList<>();
-            for (Iterator it = cplex.rangeIterator(); it.hasNext(); ) {
-                Object c = it.next();
-                constraints.add((IloRange) c);
-            }
-            /*
-            double[] zeros = new double[constraints.size()];
-            Arrays.fill(zeros, 0);
-            if (cplex.refineMIPStartConflict(0, constraints.toArray(new IloConstraint[0]), zeros)) {
-                System.out.println("Conflict refined");
-                cplex.writeMIPStarts("../starts.mst");
-            } else System.out.println("Conflict not refined");
-            cplex.exportModel("../model.lp");*/
-            boolean solFound = cplex.solve();
-            if (cplex.getCplexStatus() != CplexStatus.AbortTimeLim) {
+            boolean solFound = backend.solve();
+            if (!backend.isTimeLimitReached()) {
                 isSolvedToOptimality = true;
             }
             if (solFound) {
@@ -178,10 +229,12 @@ public class RLTSolver implements RootedSolver {
                 return new ArrayList<>(initialSolution);
             }
             return Collections.emptyList();
-        } catch (IloException e) {
-            throw new SolverException(e.getMessage());
         } finally {
-            cplex.end();
+            if (backend != null) {
+                backend.end();
+            }
+            model = null;
+            callbacks = null;
         }
     }
 
@@ -195,42 +248,49 @@ public class RLTSolver implements RootedSolver {
         return tree.units();
     }
 
-    private void breakTreeSymmetries() throws IloException {
+    private void breakTreeSymmetries() {
         int n = graph.vertexSet().size();
         for (Edge e : graph.edgeSet()) {
             Node from = graph.getEdgeSource(e);
             Node to = graph.getEdgeTarget(e);
-            cplex.addLe(cplex.sum(d.get(from), cplex.prod(n - 1, w.get(e))), cplex.sum(n, d.get(to)), "brt" + n);
-            cplex.addLe(cplex.sum(d.get(to), cplex.prod(n - 1, w.get(e))), cplex.sum(n, d.get(from)), "brt" + n);
+            model.row().add(d.get(from), 1).add(w.get(e), n - 1).add(d.get(to), -1).le(n);
+            model.row().add(d.get(to), 1).add(w.get(e), n - 1).add(d.get(from), -1).le(n);
         }
     }
 
-    private void tighten() throws IloException {
+    private void tighten() {
         Blocks blocks = new Blocks(graph);
         if (!blocks.cutpoints().contains(root)) {
             return;
         }
-        Separator separator = new Separator(y, w, cplex, graph, sum, lb);
+        Separator separator = new Separator(y, w, graph, sum, lb);
         separator.setMaxToAdd(maxToAddCuts);
         separator.setMinToConsider(considerCuts);
+        separator.setThreads(separationThreads);
+        separator.setCores(cores);
+        separator.setBackCuts(backCuts);
+        separator.setNestedCuts(nestedCuts);
+        separator.setCreepFlow(creepFlow);
         for (Set<Node> component : blocks.incidentBlocks(root)) {
             dfs(root, component, true, blocks, separator);
         }
-        cplex.use(separator);
+        callbacks.add(separator);
     }
 
-    private void dfs(Node root, Set<Node> component, boolean fake, Blocks bs, Separator separator) throws IloException {
+    private void dfs(Node root, Set<Node> component, boolean fake, Blocks bs, Separator separator) {
         separator.addComponent(graph.subgraph(component), root);
         if (!fake) {
             for (Node node : component) {
-                cplex.addLe(cplex.diff(y.get(node), y.get(root)), 0, "dfs" + node.getNum());
+                if (node != root) {
+                    model.row().add(y.get(node), 1).add(y.get(root), -1).le(0);
+                }
             }
         }
         for (Edge e : graph.edgesOf(root)) {
             if (!component.contains(graph.getOppositeVertex(root, e))) {
                 continue;
             }
-            cplex.addEq(getX(e, root), 0, "edge_" + e.getNum() + "root_" + root.getNum());
+            model.setBounds(getX(e, root), 0, 0);
         }
         for (Node cp : bs.cutpointsOf(component)) {
             if (root != cp) {
@@ -247,33 +307,35 @@ public class RLTSolver implements RootedSolver {
         return isSolvedToOptimality;
     }
 
-    private List<Unit> getResult() throws IloException {
+    private List<Unit> getResult() throws SolverException {
         List<Unit> result = new ArrayList<>();
         for (Node node : graph.vertexSet()) {
-            if (cplex.getValue(y.get(node)) > EPS) {
+            if (backend.value(y.get(node)) > EPS) {
                 result.add(node);
             }
         }
         for (Edge edge : graph.edgeSet()) {
-            if (cplex.getValue(w.get(edge)) > EPS) {
+            if (backend.value(w.get(edge)) > EPS) {
                 result.add(edge);
             }
         }
         return result;
     }
 
-    private void initVariables() throws IloException {
+    private void initVariables() {
         y = new LinkedHashMap<>();
         w = new LinkedHashMap<>();
         d = new LinkedHashMap<>();
         x = new LinkedHashMap<>();
         x0 = new LinkedHashMap<>();
         s = new LinkedHashMap<>();
+        int n = graph.vertexSet().size();
         for (Node node : graph.vertexSet()) {
             String nodeName = Integer.toString(node.getNum() + 1);
-            d.put(node, cplex.numVar(0, Double.MAX_VALUE, "d" + nodeName));
-            y.put(node, cplex.boolVar("y" + nodeName));
-            x0.put(node, cplex.boolVar("x_0_" + (node.getNum() + 1)));
+            // Distances never exceed n, the bound keeps the model finite for all backends
+            d.put(node, model.addNumeric(0, n, "d" + nodeName));
+            y.put(node, model.addBoolean("y" + nodeName));
+            x0.put(node, model.addBoolean("x_0_" + nodeName));
         }
         Set<String> usedEdges = new HashSet<>();
         for (Edge edge : graph.edgeSet()) {
@@ -286,110 +348,111 @@ public class RLTSolver implements RootedSolver {
                 num++;
             } while (usedEdges.contains(edgeName));
             usedEdges.add(edgeName);
-            w.put(edge, cplex.boolVar("w_" + edgeName));
-            IloNumVar in = cplex.boolVar("x_" + edgeName + "_in");
-            IloNumVar out = cplex.boolVar("x_" + edgeName + "_out");
+            w.put(edge, model.addBoolean("w_" + edgeName));
+            int in = model.addBoolean("x_" + edgeName + "_in");
+            int out = model.addBoolean("x_" + edgeName + "_out");
             x.put(edge, new Pair<>(in, out));
         }
     }
 
-    private void tuning(IloCplex cplex) throws IloException {
-        if (logLevel < 2) {
-            cplex.setOut(null);
-            cplex.setWarning(null);
-        }
+    private void tuning(Backend backend) throws SolverException {
+        backend.setLogging(logLevel >= 2);
         if (isLBShared) {
-            cplex.use(new MIPCallback(logLevel == 0));
+            backend.use(new MIPCallback(logLevel == 0));
         }
-        //cplex.setParam(IntParam.MIPEmphasis, 1);
-        //cplex.setParam(IntParam.Threads, threads);
-        //cplex.setParam(IntParam.ParallelMode, -1);
-        //cplex.setParam(IntParam.MIPOrdType, 3);
-        if (tl.getRemainingTime() <= 0) {
-            cplex.setParam(DoubleParam.TiLim, EPS);
-        } else if (tl.getRemainingTime() != Double.POSITIVE_INFINITY) {
-            cplex.setParam(DoubleParam.TiLim, tl.getRemainingTime());
+        if (threads > 0) {
+            backend.setThreads(threads);
         }
+        backend.setTimeLimit(tl.getRemainingTime());
     }
 
-    private void breakRootSymmetry() throws IloException {
+    private void breakRootSymmetry() {
         int n = graph.vertexSet().size();
         PriorityQueue<Node> nodes = new PriorityQueue<>(graph.vertexSet());
-        int k = n;
-        IloNumExpr[] terms = new IloNumExpr[n];
-        IloNumExpr[] rs = new IloNumExpr[n];
-
-        while (!nodes.isEmpty()) {
+        priority = new HashMap<>();
+        this.prSum = model.addNumeric(0, n, "prSum");
+        Model.Row row = model.row().add(prSum, 1);
+        for (int k = n; !nodes.isEmpty(); k--) {
             Node node = nodes.poll();
-            terms[k - 1] = cplex.prod(k, x0.get(node));
-            rs[k - 1] = cplex.prod(k, y.get(node));
-            k--;
+            priority.put(node, k);
+            row.add(x0.get(node), -k);
         }
-        this.prSum = cplex.numVar(0, n, "prSum");
-        cplex.addEq(prSum, cplex.sum(terms), "prSum");
-        for (int i = 0; i < n; i++) {
-            cplex.addGe(prSum, rs[i], "brs" + k);
+        row.eq(0);
+        for (Map.Entry<Node, Integer> p : priority.entrySet()) {
+            model.row().add(prSum, 1).add(y.get(p.getKey()), -p.getValue()).ge(0);
         }
     }
 
-    private void addObjective(Signals signals) throws IloException {
-        List<Double> ks = new ArrayList<>();
-        List<IloNumVar> vs = new ArrayList<>();
-        double negSum = 0, posSum = 0, min = Double.POSITIVE_INFINITY;
-        for (int i = 0; i < signals.size(); i++) {
-            double weight = signals.weight(i);
-            List<Unit> set = signals.set(i);
-            IloNumVar[] vars = set.stream()
-                    .map(this::getVar).filter(Objects::nonNull)
-                    .toArray(IloNumVar[]::new);
-            IloNumExpr vsum = cplex.sum(vars);
-
-            IloNumVar x = cplex.numVar(0, 1, "s" + i);
-
-
-            if (vars.length == 0 || weight == 0.0) {
+    private void addObjective(Signals signals) {
+        double negSum = 0, posSum = 0;
+        CompactSignals snapshot = new CompactSignals(signals);
+        int[] set = new int[16];
+        int[] size = new int[1];
+        for (int i = 0; i < snapshot.size(); i++) {
+            double weight = snapshot.weight(i);
+            if (weight == 0.0) {
                 continue;
-            } else if (Double.isInfinite(weight)) {
-                // cplex.addEq(x, 1);
-                cplex.addLazyConstraint(cplex.range(1, vsum, vars.length, "sig_root" + i));
+            }
+            if (set.length < snapshot.setSize(i)) {
+                set = new int[snapshot.setSize(i)];
+            }
+            int[] vars = set;
+            size[0] = 0;
+            snapshot.forEachUnit(i, unit -> {
+                Integer var = getVar(unit);
+                if (var != null) {
+                    vars[size[0]++] = var;
+                }
+            });
+            int len = size[0];
+            if (len == 0) {
+                continue;
+            }
+            if (Double.isInfinite(weight)) {
+                Model.Row row = model.row().lazy();
+                for (int k = 0; k < len; k++) {
+                    row.add(vars[k], 1);
+                }
+                row.range(1, len);
                 weight = 0;
                 signals.setWeight(i, 0);
             } else if (weight > 0) {
-                min = Math.min(min, weight);
                 posSum += weight;
             } else {
                 negSum += weight;
             }
-            ks.add(weight);
-            if (vars.length == 1) {
-                vs.add(vars[0]);
+            if (len == 1) {
+                model.setCost(vars[0], model.cost(vars[0]) + weight);
                 continue;
             }
+            // Binary, otherwise a negative signal would be paid only partially
+            int x = model.addBoolean("s" + i);
+            model.setCost(x, weight);
             s.put(i, x);
-            vs.add(x);
+            Model.Row row = model.row().add(x, weight >= 0 ? 1 : len);
+            for (int k = 0; k < len; k++) {
+                row.add(vars[k], -1);
+            }
             if (weight >= 0) {
-                cplex.addLe(x, vsum, "sig_sum_pos" + i);
+                row.le(0);
             } else {
-                cplex.addGe(cplex.prod(vars.length, x), vsum, "sig_sum_neg" + i);
+                row.ge(0);
             }
         }
-        IloObjective sum = cplex.maximize();
-//        IloNumExpr edges = cplex.prod(min / w.size(), cplex.sum(w.values().toArray(new IloNumVar[0])));
-//        if (isEdgePenalty) {
-        //           sum.setExpr(cplex.sum(cplex.scalProd(ks.stream().mapToDouble(d -> d).toArray(),
-        //                  vs.toArray(new IloNumVar[0])), cplex.negative(edges)));
-        //} else {
-        sum.setExpr(cplex.scalProd(ks.stream().mapToDouble(d -> d).toArray(),
-                vs.toArray(new IloNumVar[0])));
-
-        //}
-        this.sum = cplex.numVar(negSum - 1, Double.POSITIVE_INFINITY, "sum");
-        cplex.addGe(this.sum, lb.get(), "lb");
-        cplex.addEq(this.sum, sum.getExpr(), "seq");
-        cplex.add(sum);
+        this.sum = model.addNumeric(negSum - 1, posSum + 1, "sum");
+        if (lb.get() != Double.NEGATIVE_INFINITY) {
+            model.row().add(sum, 1).ge(lb.get());
+        }
+        Model.Row row = model.row().add(sum, 1);
+        for (int j = 0; j < model.variables(); j++) {
+            if (model.cost(j) != 0) {
+                row.add(j, -model.cost(j));
+            }
+        }
+        row.eq(0);
     }
 
-    private IloNumVar getVar(Unit unit) {
+    private Integer getVar(Unit unit) {
         return unit instanceof Node ? y.get(unit) : w.get(unit);
     }
 
@@ -398,16 +461,16 @@ public class RLTSolver implements RootedSolver {
         this.logLevel = logLevel;
     }
 
-    private void addConstraints() throws IloException {
+    private void addConstraints() {
         sumConstraints();
         otherConstraints();
         distanceConstraints();
     }
 
-    private void distanceConstraints() throws IloException {
+    private void distanceConstraints() {
         int n = graph.vertexSet().size();
         for (Node v : graph.vertexSet()) {
-            cplex.addLe(d.get(v), cplex.diff(n, cplex.prod(n, x0.get(v))), "dist" + v.getNum());
+            model.row().add(d.get(v), 1).add(x0.get(v), n).le(n);
         }
         for (Edge e : graph.edgeSet()) {
             Node from = graph.getEdgeSource(e);
@@ -417,16 +480,14 @@ public class RLTSolver implements RootedSolver {
         }
     }
 
-    private void addEdgeConstraints(Edge e, Node from, Node to) throws IloException {
+    private void addEdgeConstraints(Edge e, Node from, Node to) {
         int n = graph.vertexSet().size();
-        IloNumVar z = getX(e, to);
-        cplex.addGe(cplex.sum(n, d.get(to)), cplex.sum(d.get(from), cplex.prod(n + 1, z)),
-                "edge_constraints" + e.getNum() + "_1");
-        cplex.addLe(cplex.sum(d.get(to), cplex.prod(n - 1, z)), cplex.sum(d.get(from), n),
-                "edge_constraints" + e.getNum() + "_2");
+        int z = getX(e, to);
+        model.row().add(d.get(to), 1).add(d.get(from), -1).add(z, -(n + 1)).ge(-n);
+        model.row().add(d.get(to), 1).add(d.get(from), -1).add(z, n - 1).le(n);
     }
 
-    private void maxSizeConstraints(Signals signals) throws IloException {
+    private void maxSizeConstraints(Signals signals) {
         for (Node v : graph.vertexSet()) {
             for (Node u : graph.neighborListOf(v)) {
                 if (signals.minSum(u) >= 0) {
@@ -434,9 +495,7 @@ public class RLTSolver implements RootedSolver {
                             .stream().max(Comparator.comparingDouble(signals::weight)).get();
                     if (signals.minSum(e) >= 0 && signals.maxSum(e) >= 0) {
                         for (int sig : signals.unitSets(e)) {
-                            // IloNumExpr expr = cplex.diff(s.getOrDefault(sig, w.get(e)), y.get(v));
-                            // cplex.addLazyConstraint(cplex.range(0, expr, 1));
-                            cplex.addLe(y.get(v), s.getOrDefault(sig, w.get(e)));
+                            model.row().add(y.get(v), 1).add(s.getOrDefault(sig, w.get(e)), -1).le(0);
                         }
                     }
                 }
@@ -470,46 +529,47 @@ public class RLTSolver implements RootedSolver {
 
         }
     */
-    private void otherConstraints() throws IloException {
+    private void otherConstraints() {
         // (36), (39)
         for (Edge edge : graph.edgeSet()) {
-            Pair<IloNumVar, IloNumVar> arcs = x.get(edge);
+            Pair<Integer, Integer> arcs = x.get(edge);
             Node from = graph.getEdgeSource(edge);
             Node to = graph.getEdgeTarget(edge);
-            cplex.addLe(cplex.sum(arcs.first, arcs.second), w.get(edge), "arcs" + edge.getNum());
-            cplex.addLe(w.get(edge), y.get(from), "edges_from" + edge.getNum());
-            cplex.addLe(w.get(edge), y.get(to), "edges_to" + edge.getNum());
+            model.row().add(arcs.first, 1).add(arcs.second, 1).add(w.get(edge), -1).le(0);
+            model.row().add(w.get(edge), 1).add(y.get(from), -1).le(0);
+            model.row().add(w.get(edge), 1).add(y.get(to), -1).le(0);
         }
     }
 
 
-    private void sumConstraints() throws IloException {
+    private void sumConstraints() {
         // (31)
-        cplex.addLe(cplex.sum(graph.vertexSet().stream().map(x -> x0.get(x)).toArray(IloNumVar[]::new)), 1, "sum31");
+        Model.Row roots = model.row();
+        for (Node node : graph.vertexSet()) {
+            roots.add(x0.get(node), 1);
+        }
+        roots.le(1);
         if (root != null) {
-            cplex.addEq(x0.get(root), 1, "root");
+            model.setBounds(x0.get(root), 1, 1);
         }
         // (32)
         for (Node node : graph.vertexSet()) {
-            Set<Edge> edges = graph.edgesOf(node);
-            IloNumVar xSum[] = new IloNumVar[edges.size() + 1];
-            int i = 0;
-            for (Edge edge : edges) {
-                xSum[i++] = getX(edge, node);
+            Model.Row row = model.row();
+            for (Edge edge : graph.edgesOf(node)) {
+                row.add(getX(edge, node), 1);
             }
-            xSum[xSum.length - 1] = x0.get(node);
-            cplex.addEq(cplex.sum(xSum), y.get(node), "sum" + node.getNum());
+            row.add(x0.get(node), 1).add(y.get(node), -1).eq(0);
         }
     }
 
-    private void treeConstraints() throws IloException {
-        cplex.addEq(cplex.sum(y.values().toArray(new IloNumVar[0])),
-                cplex.sum(1, cplex.sum(w.values().toArray(new IloNumVar[0]))),
-                "tree"
-        );
+    private void treeConstraints() {
+        Model.Row row = model.row();
+        y.values().forEach(v -> row.add(v, 1));
+        w.values().forEach(v -> row.add(v, -1));
+        row.eq(1);
     }
 
-    private IloNumVar getX(Edge e, Node to) {
+    private int getX(Edge e, Node to) {
         if (graph.getEdgeSource(e) == to) {
             return x.get(e).first;
         } else {
@@ -527,13 +587,13 @@ public class RLTSolver implements RootedSolver {
     }
 
     public double getLB() {
-        return lb.get();
+        return lb == null ? externLB : lb.get();
     }
 
-    private CplexSolution tryMstSolution(Graph tree, Node root,
+    private StartSolution tryMstSolution(Graph tree, Node root,
                                          Set<Unit> mstSol) {
         mstSol = new HashSet<>(mstSol);
-        CplexSolution solution = new CplexSolution();
+        StartSolution solution = new StartSolution();
         final Set<Edge> unvisitedEdges = new HashSet<>(this.graph.edgeSet());
         final Set<Node> unvisitedNodes = new HashSet<>(this.graph.vertexSet());
         final Deque<Node> deque = new ArrayDeque<>();
@@ -566,7 +626,7 @@ public class RLTSolver implements RootedSolver {
         unvisitedNodes.removeAll(visitedNodes);
         for (Edge e : new ArrayList<>(unvisitedEdges)) {
             Node u = graph.getEdgeSource(e), v = graph.getEdgeTarget(e);
-            IloNumVar from = getX(e, u), to = getX(e, v);
+            int from = getX(e, u), to = getX(e, v);
             solution.addNullVariables(w.get(e), from, to);
             /*if (visitedNodes.contains(u) && visitedNodes.contains(v) && signals.minSum(e) >= 0) {
                 unvisitedEdges.remove(e);
@@ -601,7 +661,7 @@ public class RLTSolver implements RootedSolver {
         }
         for (Edge e : visitedEdges) {
             Node u = graph.getEdgeSource(e), v = graph.getEdgeTarget(e);
-            IloNumVar from = getX(e, u), to = getX(e, v);
+            int from = getX(e, u), to = getX(e, v);
             solution.addVariable(w, e, 0);
             solution.addNullVariables(from, to);
         }
@@ -619,6 +679,9 @@ public class RLTSolver implements RootedSolver {
                 solution.addVariable(s.get(sig), val ? 1 : 0);
             }
         }
+        if (this.root == null) {
+            solution.addVariable(prSum, priority.get(root));
+        }
         solution.addVariable(this.sum, signals.sum(solutionUnits));
         return solution;
     }
@@ -629,7 +692,7 @@ public class RLTSolver implements RootedSolver {
                         .containsAll(signals.positiveUnitSets(node, edge));
     }
 
-    private CplexSolution applyMstSolution(Set<Unit> units) {
+    private StartSolution applyMstSolution(Set<Unit> units) {
         if (units.isEmpty()) {
             return null;
         }
@@ -642,7 +705,7 @@ public class RLTSolver implements RootedSolver {
         return tryMstSolution(graph.subgraph(nodes, edges), treeRoot, units);
     }
 
-    private CplexSolution MSTHeuristic(Map<Edge, Double> weights) {
+    private StartSolution MSTHeuristic(Map<Edge, Double> weights) {
         Node treeRoot = Optional.ofNullable(root)
                 .orElse(graph.vertexSet().stream().min(Comparator.naturalOrder()).get());
         Set<Unit> units = usePrimalHeuristic(treeRoot, weights);
@@ -658,13 +721,18 @@ public class RLTSolver implements RootedSolver {
         isEdgePenalty = edgePenalty;
     }
 
-    private class MSTCallback extends HeuristicCallback {
+    private class MSTCallback implements MipCallback {
         int i = 0;
 
         @Override
-        protected void main() throws IloException {
-            if (lb.get() >= getBestObjValue()) {
-                abort();
+        public Type type() {
+            return Type.HEURISTIC;
+        }
+
+        @Override
+        public void invoke(Context context) throws SolverException {
+            if (lb.get() >= context.bestObjValue()) {
+                context.abort();
                 return;
             }
             i++;
@@ -672,56 +740,48 @@ public class RLTSolver implements RootedSolver {
             Map<Edge, Double> weights = new HashMap<>();
             for (Edge e : graph.edgeSet()) {
                 Node u = graph.getEdgeSource(e), v = graph.getEdgeTarget(e);
-                double wu = this.getValue(y.get(u)), wv = this.getValue(y.get(v)),
-                        we = this.getValue(w.get(e));
+                double wu = context.value(y.get(u)), wv = context.value(y.get(v)),
+                        we = context.value(w.get(e));
                 weights.put(e, 3 - wu - we - wv);
             }
-            CplexSolution sol = MSTHeuristic(weights);
+            StartSolution sol = MSTHeuristic(weights);
             assert sol != null && sol.values.size() == sol.variables.size();
             double obj = sol.values.get(sol.values.size() - 1);
-            if (obj >= getIncumbentObjValue()) {
+            if (obj >= context.incumbentObjValue()) {
 //                System.err.println("MST heuristic found solution with objective " + obj);
-                setSolution(sol.variables(), sol.values());
+                context.setSolution(sol.variables(), sol.values());
             }
         }
     }
 
 
-    public class CplexSolution {
-        private List<IloNumVar> variables = new LinkedList<>();
-        private List<Double> values = new LinkedList<>();
+    public class StartSolution {
+        private List<Integer> variables = new ArrayList<>();
+        private List<Double> values = new ArrayList<>();
 
-        IloNumVar[] variables() {
-            return variables.toArray(new IloNumVar[0]);
+        int[] variables() {
+            return variables.stream().mapToInt(v -> v).toArray();
         }
 
         double[] values() {
             return values.stream().mapToDouble(d -> d).toArray();
         }
 
-        <U extends Unit> void addVariable(Map<U, IloNumVar> map,
+        <U extends Unit> void addVariable(Map<U, Integer> map,
                                           U unit, double val) {
             addVariable(map.get(unit), val);
         }
 
-        void addVariable(IloNumVar var, double val) {
+        void addVariable(int var, double val) {
             variables.add(var);
             values.add(val);
         }
 
-        void addNullVariables(IloNumVar... vars) {
-            for (IloNumVar var : vars) {
+        void addNullVariables(int... vars) {
+            for (int var : vars) {
                 addVariable(var, 0);
             }
         }
-
-        boolean apply(BiFunction<IloNumVar[], double[], Boolean> set) {
-            double[] vals = new double[values.size()];
-            for (int i = 0; i < values.size(); ++i) {
-                vals[i] = values.get(i);
-            }
-            return set.apply(variables.toArray(new IloNumVar[0]), vals);
-        }
     }
 
 /*    private class SizeCallback extends LazyConstraintCallback {
@@ -738,7 +798,7 @@ public class RLTSolver implements RootedSolver {
         }
     }*/
 
-    private class MIPCallback extends IncumbentCallback {
+    private class MIPCallback implements MipCallback {
         private boolean silence;
 
         public MIPCallback(boolean silence) {
@@ -746,15 +806,21 @@ public class RLTSolver implements RootedSolver {
         }
 
         @Override
-        protected void main() throws IloException {
+        public Type type() {
+            return Type.INCUMBENT;
+        }
+
+        @Override
+        public void invoke(Context context) throws SolverException {
+            double objValue = context.objValue();
             while (true) {
                 double currLB = lb.get();
 
-                if (currLB >= getObjValue()) {
+                if (currLB >= objValue) {
                     break;
                 }
-                if (lb.compareAndSet(currLB, getObjValue()) && !silence) {
-                    System.out.println("Found new solution: " + getObjValue());
+                if (lb.compareAndSet(currLB, objValue) && !silence) {
+                    System.out.println("Found new solution: " + objValue);
 
                 }
             }
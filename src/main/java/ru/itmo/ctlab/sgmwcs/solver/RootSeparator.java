@@ -0,0 +1,112 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import ru.itmo.ctlab.sgmwcs.Pair;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.flow.MaxFlow;
+import ru.itmo.ctlab.sgmwcs.graph.flow.PushRelabel;
+import ru.itmo.ctlab.sgmwcs.solver.mip.MipCallback;
+
+import java.util.*;
+
+/**
+ * Separates cuts <code>y_v &lt;= w(cut(S)) + x0(S)</code> of unrooted instances for sets
+ * <code>S</code> containing <code>v</code>: the root of a solution is either in <code>S</code>
+ * or connected to <code>v</code> through the cut. Sets are found by max-flow from the source
+ * linked to every node with capacity <code>x0</code>. The flow is kept between rounds,
+ * so each thread of a parallel search invokes its own copy, see {@link #copy()}.
+ */
+public class RootSeparator implements MipCallback {
+    private final Graph graph;
+    private final Map<Node, Integer> y;
+    private final Map<Edge, Integer> w;
+    private final Map<Node, Integer> x0;
+    private final List<Node> nodes;
+    private final Map<Node, Integer> index;
+    private final MaxFlow flow;
+    private final int source;
+
+    public RootSeparator(Graph graph, Map<Node, Integer> y, Map<Edge, Integer> w, Map<Node, Integer> x0) {
+        this.graph = graph;
+        this.y = y;
+        this.w = w;
+        this.x0 = x0;
+        nodes = new ArrayList<>(graph.vertexSet());
+        index = new HashMap<>();
+        for (Node v : nodes) {
+            index.put(v, index.size());
+        }
+        source = nodes.size();
+        flow = new PushRelabel(nodes.size() + 1);
+        for (Node v : nodes) {
+            flow.addEdge(source, index.get(v));
+        }
+        for (Edge e : graph.edgeSet()) {
+            flow.addEdge(index.get(graph.getEdgeSource(e)), index.get(graph.getEdgeTarget(e)));
+        }
+    }
+
+    @Override
+    public Type type() {
+        return Type.CUT;
+    }
+
+    /**
+     * @return separator with its own flow.
+     */
+    @Override
+    public RootSeparator copy() {
+        return new RootSeparator(graph, y, w, x0);
+    }
+
+    @Override
+    public void invoke(Context context) throws SolverException {
+        for (Node v : nodes) {
+            flow.setCapacity(source, index.get(v), context.value(x0.get(v)));
+        }
+        Set<Edge> visited = new HashSet<>();
+        for (Edge edge : graph.edgeSet()) {
+            if (visited.contains(edge)) {
+                continue;
+            }
+            Node u = graph.getEdgeSource(edge), v = graph.getEdgeTarget(edge);
+            double weight = 0;
+            for (Edge e : graph.getAllEdges(u, v)) {
+                weight += context.value(w.get(e));
+                visited.add(e);
+            }
+            flow.setCapacity(index.get(u), index.get(v), weight + Separator.ADDITION_CAPACITY);
+            flow.setCapacity(index.get(v), index.get(u), weight + Separator.ADDITION_CAPACITY);
+        }
+        for (Node v : nodes) {
+            double value = context.value(y.get(v));
+            if (value < Separator.EPS) {
+                continue;
+            }
+            List<Pair<Integer, Integer>> cut = flow.computeMinCut(source, index.get(v), value - Separator.EPS);
+            if (cut == null) {
+                continue;
+            }
+            List<Integer> vars = new ArrayList<>();
+            for (Pair<Integer, Integer> p : cut) {
+                if (p.first == source) {
+                    vars.add(x0.get(nodes.get(p.second)));
+                } else {
+                    for (Edge e : graph.getAllEdges(nodes.get(p.first), nodes.get(p.second))) {
+                        vars.add(w.get(e));
+                    }
+                }
+            }
+            int[] indices = new int[vars.size() + 1];
+            double[] coefs = new double[indices.length];
+            for (int i = 0; i < vars.size(); i++) {
+                indices[i] = vars.get(i);
+                coefs[i] = -1;
+            }
+            indices[vars.size()] = y.get(v);
+            coefs[vars.size()] = 1;
+            context.addCut(indices, coefs, Double.NEGATIVE_INFINITY, 0);
+        }
+    }
+}
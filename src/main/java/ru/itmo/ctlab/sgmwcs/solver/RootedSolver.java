@@ -6,4 +6,10 @@ public interface RootedSolver extends Solver {
     void setRoot(Node root);
 
     void setSolIsTree(boolean solutionIsTree);
+
+    /**
+     * Limits the number of threads of the solve, single-threaded solvers ignore it.
+     */
+    default void setThreadsNum(int threads) {
+    }
 }
@@ -0,0 +1,108 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.util.*;
+
+/**
+ * Decides which reduction rules {@link Preprocessor} runs. All rules are stopped when
+ * the time budget is over. In adaptive mode a rule whose recent yield per second is
+ * much lower than the overall yield of preprocessing is skipped, and rules of
+ * interchangeable order are run in the order of decreasing yield.
+ * When no rule reduces anything, skipped rules are woken up for one more iteration,
+ * so preprocessing stops at the fixpoint of all rules unless the budget is over.
+ */
+class RuleScheduler {
+    private static final double SHARE = 0.1;
+    private static final long MIN_NANOS = 1_000_000;
+    private static final double DECAY = 0.5;
+
+    private final long deadline;
+    private final boolean adaptive;
+    private final Map<String, double[]> recent = new HashMap<>();
+    private final Set<String> skipped = new HashSet<>();
+    private double totalRemoved;
+    private double totalNanos;
+    private boolean forceAll;
+    private boolean forceNext;
+
+    /**
+     * @param budget time budget in seconds.
+     */
+    RuleScheduler(double budget, boolean adaptive) {
+        this.adaptive = adaptive;
+        long now = System.nanoTime();
+        deadline = budget >= (Long.MAX_VALUE - now) / 1e9 ? Long.MAX_VALUE : now + (long) (Math.max(budget, 0) * 1e9);
+    }
+
+    boolean expired() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+    }
+
+    void nextIteration() {
+        forceAll = forceNext;
+        forceNext = false;
+    }
+
+    boolean shouldRun(String rule) {
+        if (expired()) {
+            return false;
+        }
+        if (!adaptive || forceAll || !slow(rule)) {
+            return true;
+        }
+        skipped.add(rule);
+        return false;
+    }
+
+    private boolean slow(String rule) {
+        double[] r = recent.get(rule);
+        if (r == null || r[1] < MIN_NANOS || totalNanos == 0) {
+            return false;
+        }
+        return r[0] / r[1] < SHARE * totalRemoved / totalNanos;
+    }
+
+    /**
+     * Updates the yield of the rule after its run.
+     */
+    void record(String rule, long nanos, int removed) {
+        totalRemoved += removed;
+        totalNanos += nanos;
+        double[] r = recent.get(rule);
+        if (r == null) {
+            recent.put(rule, new double[]{removed, nanos});
+        } else {
+            r[0] = DECAY * r[0] + (1 - DECAY) * removed;
+            r[1] = DECAY * r[1] + (1 - DECAY) * nanos;
+        }
+    }
+
+    /**
+     * @return rules in the order of decreasing recent yield per second in adaptive mode.
+     */
+    List<String> order(Collection<String> rules) {
+        List<String> res = new ArrayList<>(rules);
+        if (adaptive) {
+            res.sort(Comparator.comparingDouble(this::rate).reversed());
+        }
+        return res;
+    }
+
+    private double rate(String rule) {
+        double[] r = recent.get(rule);
+        return r == null ? Double.POSITIVE_INFINITY : r[0] / Math.max(r[1], 1);
+    }
+
+    /**
+     * Makes all rules run in the next iteration if some of them were skipped.
+     *
+     * @return <code>false</code> if no rule was skipped or the budget is over.
+     */
+    boolean wake() {
+        if (skipped.isEmpty() || expired()) {
+            return false;
+        }
+        skipped.clear();
+        forceNext = true;
+        return true;
+    }
+}
@@ -1,53 +1,97 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
 import ru.itmo.ctlab.sgmwcs.graph.Node;
 import ru.itmo.ctlab.sgmwcs.graph.Unit;
+import ru.itmo.ctlab.sgmwcs.solver.mip.MipCallback;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class Separator extends IloCplex.UserCutCallback {
+/**
+ * Separates connectivity cuts <code>y_v &lt;= w(cut)</code> of sampled nodes by max-flow
+ * from roots of their components. Each thread of a parallel search invokes its own copy,
+ * see {@link #copy()}, so rounds of different threads run concurrently. A copy makes its own
+ * copies of {@link CutGenerator}s on its callback thread when it's first invoked, so its flows
+ * are warm-started from its previous rounds.
+ * <p>
+ * Nodes of a round may be split between the callback thread and helpers on cores borrowed
+ * from a {@link CoreBudget} if some are free at the moment, see {@link #setCores(CoreBudget)}.
+ * Found cuts are added after the round.
+ * <p>
+ * Besides cuts closest to roots, back cuts and nested cuts may be separated by the same
+ * max-flow computations, see {@link CutGenerator#findCuts(Node)}. Creep flow adds a capacity
+ * to every edge, so cuts of fewer edges are preferred among cuts of nearly the same weight.
+ * <p>
+ * Found cuts are kept in a {@link CutPool} of the copy, each round at most <code>maxToAdd</code>
+ * most efficacious violated cuts of the pool are added, including cuts found in earlier rounds.
+ */
+public class Separator implements MipCallback {
     public static final double ADDITION_CAPACITY = 1e-6;
     public static final double STEP = 0.1;
     public static final double EPS = 1e-5;
-    private final IloCplex cplex;
-    private final IloNumVar sum;
+    /**
+     * Number of rounds pooled cuts are kept without being violated.
+     */
+    public static final int POOL_AGE = 10;
+    private final int sum;
     private final AtomicDouble lb;
-    private Map<Node, CutGenerator> generators;
+    private final Map<Node, Integer> y;
+    private final Map<Edge, Integer> w;
+    private final Graph graph;
+    private final Components components;
+    private final CutPool cutPool;
+    private final boolean original;
     private int maxToAdd;
     private int minToConsider;
-    private List<Node> nodes;
-    private List<CutGenerator> generatorList;
-    private Map<Node, IloNumVar> y;
-    private Map<Edge, IloNumVar> w;
     private int waited;
     private double period;
-    private Graph graph;
     private double last;
-    private boolean inited;
-    private Map<Unit, Integer> indices;
-    private IloNumVar[] vars;
+    private List<Node> nodes;
+    private int threads;
+    private CoreBudget cores;
+    private Workspace[] workspaces;
+    private int round;
+    private boolean backCuts;
+    private int nestedCuts;
+    private double creepFlow;
 
-    public Separator(Map<Node, IloNumVar> y, Map<Edge, IloNumVar> w, IloCplex cplex, Graph graph,
-                     IloNumVar sum, AtomicDouble lb) {
+    public Separator(Map<Node, Integer> y, Map<Edge, Integer> w, Graph graph, int sum, AtomicDouble lb) {
         this.y = y;
         this.w = w;
-        generators = new HashMap<>();
-        generatorList = new ArrayList<>();
-        nodes = new ArrayList<>();
+        components = new Components();
+        original = true;
         maxToAdd = Integer.MAX_VALUE;
         minToConsider = Integer.MAX_VALUE;
-        this.cplex = cplex;
+        threads = 1;
+        creepFlow = ADDITION_CAPACITY;
+        cutPool = new CutPool(POOL_AGE, EPS);
         this.graph = graph;
         this.sum = sum;
         this.lb = lb;
         last = -Double.MAX_VALUE;
     }
 
+    private Separator(Separator that) {
+        y = that.y;
+        w = that.w;
+        components = that.components;
+        original = false;
+        maxToAdd = that.maxToAdd;
+        minToConsider = that.minToConsider;
+        threads = that.threads;
+        cores = that.cores;
+        backCuts = that.backCuts;
+        nestedCuts = that.nestedCuts;
+        creepFlow = that.creepFlow;
+        cutPool = new CutPool(POOL_AGE, EPS);
+        graph = that.graph;
+        sum = that.sum;
+        lb = that.lb;
+        last = -Double.MAX_VALUE;
+    }
+
     public void setMaxToAdd(int n) {
         maxToAdd = n;
     }
@@ -56,7 +100,52 @@ public class Separator extends IloCplex.UserCutCallback {
         minToConsider = n;
     }
 
-    private synchronized boolean isCutsAllowed() {
+    /**
+     * Sets the number of threads separating cuts of a round, the callback thread included.
+     * Others run only on cores borrowed from the budget, see {@link #setCores(CoreBudget)}.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+        workspaces = null;
+    }
+
+    /**
+     * Sets the budget rounds borrow free cores from, without it rounds use only the callback thread.
+     */
+    void setCores(CoreBudget cores) {
+        this.cores = cores;
+        workspaces = null;
+    }
+
+    public void setBackCuts(boolean backCuts) {
+        this.backCuts = backCuts;
+        components.invalidate();
+        workspaces = null;
+    }
+
+    public void setNestedCuts(int nestedCuts) {
+        if (nestedCuts < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.nestedCuts = nestedCuts;
+        components.invalidate();
+        workspaces = null;
+    }
+
+    /**
+     * Sets the capacity added to every edge, {@link #ADDITION_CAPACITY} by default.
+     */
+    public void setCreepFlow(double creepFlow) {
+        if (creepFlow < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.creepFlow = creepFlow;
+    }
+
+    private boolean isCutsAllowed() {
         waited++;
         if (waited > period) {
             waited = 0;
@@ -66,94 +155,309 @@ public class Separator extends IloCplex.UserCutCallback {
         return false;
     }
 
-    public Separator clone() {
-        Separator result = new Separator(y, w, cplex, graph, sum, lb);
-        for (CutGenerator generator : generatorList) {
-            result.addComponent(graph.subgraph(generator.getNodes()), generator.getRoot());
-        }
-        return result;
+    @Override
+    public Type type() {
+        return Type.CUT;
     }
 
+    /**
+     * @return separator with its own pool and generators sharing components of this one.
+     */
     @Override
-    protected void main() throws IloException {
+    public Separator copy() {
+        return new Separator(this);
+    }
+
+    @Override
+    public void invoke(Context context) throws SolverException {
         double currLb = lb.get();
         if (currLb > last) {
             last = currLb;
-            add(cplex.ge(sum, currLb), IloCplex.CutManagement.UseCutPurge);
+            context.addCut(new int[]{sum}, new double[]{1}, currLb, Double.POSITIVE_INFINITY);
         }
         if (!isCutsAllowed()) {
             return;
         }
-        initWeights();
+        for (int[] cut : separate(context)) {
+            double[] coefs = new double[cut.length];
+            Arrays.fill(coefs, -1);
+            coefs[cut.length - 1] = 1;
+            context.addCut(cut, coefs, Double.NEGATIVE_INFINITY, 0);
+        }
+    }
+
+    /**
+     * Finds cuts of sampled nodes and selects cuts of the round from the pool,
+     * variables of edges of a cut are followed by the variable of the node.
+     */
+    private List<int[]> separate(Context context) throws SolverException {
+        if (workspaces == null) {
+            init();
+        }
+        double[] values = context.values(components.vars);
+        round++;
         Collections.shuffle(nodes);
-        List<Node> now = nodes.subList(0, Math.min(nodes.size(), minToConsider));
-        int added = 0;
-        for (Node node : now) {
-            CutGenerator generator = generators.get(node);
-            List<Edge> cut = generator.findCut(node);
-            if (cut != null) {
-                Set<Edge> minCut = new HashSet<>();
-                minCut.addAll(cut);
-                synchronized (cplex) {
-                    IloNumVar[] evars = minCut.stream().map(x -> w.get(x)).toArray(IloNumVar[]::new);
-                    add(cplex.le(cplex.diff(y.get(node), cplex.sum(evars)), 0), IloCplex.CutManagement.UseCutPurge);
-                }
-                added++;
+        Round now = new Round(nodes.subList(0, Math.min(nodes.size(), minToConsider)), values);
+        int helpers = 0;
+        if (workspaces.length > 1 && now.nodes.size() > 1) {
+            helpers = cores.tryAcquire(Math.min(workspaces.length, now.nodes.size()) - 1);
+        }
+        try {
+            for (int i = 1; i <= helpers; i++) {
+                Workspace workspace = workspaces[i];
+                cores.submit(() -> now.help(workspace));
             }
-            if (added == maxToAdd) {
-                break;
+            now.run(workspaces[0]);
+            now.close();
+        } finally {
+            if (helpers > 0) {
+                cores.release(helpers);
             }
         }
+        for (int[] cut : now.cuts) {
+            cutPool.add(cut);
+        }
+        int[] positions = components.positions;
+        return cutPool.select(var -> values[positions[var]], maxToAdd);
     }
 
-    private void initWeights() throws IloException {
-        if (!inited) {
-            init();
+    /**
+     * Prepares components shared by copies if they aren't yet and makes generators of this copy.
+     */
+    private void init() {
+        synchronized (components) {
+            if (components.vars == null) {
+                components.prepare(backCuts, nestedCuts);
+            }
+        }
+        nodes = new ArrayList<>(components.nodes);
+        workspaces = new Workspace[cores == null ? 1 : threads];
+        for (int k = 0; k < workspaces.length; k++) {
+            workspaces[k] = new Workspace(original && k == 0);
+        }
+    }
+
+    public void addComponent(Graph graph, Node root) {
+        components.add(new CutGenerator(graph, root));
+        workspaces = null;
+    }
+
+    /**
+     * Generators of components and positions of LP values their capacities are made of,
+     * shared by copies of the separator and prepared by the first one invoked.
+     */
+    private class Components {
+        private final Map<Node, Integer> generators = new HashMap<>();
+        private final List<CutGenerator> generatorList = new ArrayList<>();
+        private final List<Node> nodes = new ArrayList<>();
+        private int[] vars;
+        private int[] positions;
+        private Capacities[] capacities;
+
+        void add(CutGenerator generator) {
+            for (Node node : generator.getNodes()) {
+                if (node != generator.getRoot()) {
+                    generators.put(node, generatorList.size());
+                    nodes.add(node);
+                }
+            }
+            generatorList.add(generator);
+            invalidate();
+        }
+
+        void invalidate() {
+            vars = null;
         }
-        double[] values = getValues(vars);
-        for (CutGenerator generator : generatorList) {
+
+        void prepare(boolean backCuts, int nestedCuts) {
+            Map<Unit, Integer> indices = new HashMap<>();
+            int i = 0;
+            int[] vars = new int[w.size() + y.size()];
+            for (Edge e : graph.edgeSet()) {
+                vars[i] = w.get(e);
+                indices.put(e, i++);
+            }
+            for (Node v : graph.vertexSet()) {
+                vars[i] = y.get(v);
+                indices.put(v, i++);
+            }
+            positions = new int[Arrays.stream(vars).max().orElse(-1) + 1];
+            for (int k = 0; k < vars.length; k++) {
+                positions[vars[k]] = k;
+            }
+            capacities = new Capacities[generatorList.size()];
+            for (int k = 0; k < capacities.length; k++) {
+                CutGenerator generator = generatorList.get(k);
+                generator.setBackCuts(backCuts);
+                generator.setNestedCuts(nestedCuts);
+                capacities[k] = new Capacities(generator, indices);
+            }
+            this.vars = vars;
+        }
+    }
+
+    /**
+     * Positions of LP values which capacities of a {@link CutGenerator} are made of,
+     * capacities are set by ids of links and nodes of the generator.
+     * Parallel edges share a capacity.
+     */
+    private class Capacities {
+        private final int[] links;
+        private final int[][] parallel;
+        private final int[] nodes;
+        private final int[] nodeValues;
+
+        Capacities(CutGenerator generator, Map<Unit, Integer> indices) {
+            List<Integer> links = new ArrayList<>();
+            List<int[]> parallel = new ArrayList<>();
             Set<Edge> visited = new HashSet<>();
             for (Edge edge : generator.getEdges()) {
                 if (visited.contains(edge)) {
                     continue;
                 }
+                List<Edge> all = graph.getAllEdges(graph.getEdgeSource(edge), graph.getEdgeTarget(edge));
+                int[] values = new int[all.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = indices.get(all.get(i));
+                    visited.add(all.get(i));
+                }
+                links.add(generator.link(edge));
+                parallel.add(values);
+            }
+            this.links = links.stream().mapToInt(l -> l).toArray();
+            this.parallel = parallel.toArray(new int[0][]);
+            Set<Node> nodes = generator.getNodes();
+            this.nodes = new int[nodes.size()];
+            nodeValues = new int[nodes.size()];
+            int i = 0;
+            for (Node node : nodes) {
+                this.nodes[i] = generator.index(node);
+                nodeValues[i++] = indices.get(node);
+            }
+        }
+
+        void apply(CutGenerator generator, double[] values, double creepFlow) {
+            for (int i = 0; i < links.length; i++) {
                 double weight = 0;
-                for (Edge e : graph.getAllEdges(graph.getEdgeSource(edge), graph.getEdgeTarget(edge))) {
-                    weight += values[indices.get(e)];
-                    visited.add(e);
+                for (int k : parallel[i]) {
+                    weight += values[k];
                 }
-                generator.setCapacity(edge, weight + ADDITION_CAPACITY);
+                generator.setCapacity(links[i], weight + creepFlow);
             }
-            for (Node node : generator.getNodes()) {
-                generator.setVertexCapacity(node, values[indices.get(node)] - EPS);
+            for (int i = 0; i < nodes.length; i++) {
+                generator.setVertexCapacity(nodes[i], values[nodeValues[i]] - EPS);
             }
         }
     }
 
-    private void init() {
-        inited = true;
-        indices = new HashMap<>();
-        int i = 0;
-        vars = new IloNumVar[w.size() + y.size()];
-        for (Edge e : graph.edgeSet()) {
-            vars[i] = w.get(e);
-            indices.put(e, i++);
+    /**
+     * Generators of one thread of a copy, capacities of a generator are updated on its first use
+     * in a round. Only the first workspace of the original separator uses the original generators.
+     */
+    private class Workspace {
+        private final CutGenerator[] generators;
+        private final int[] updated;
+
+        Workspace(boolean shared) {
+            List<CutGenerator> generatorList = components.generatorList;
+            generators = new CutGenerator[generatorList.size()];
+            updated = new int[generators.length];
+            for (int i = 0; i < generators.length; i++) {
+                generators[i] = shared ? generatorList.get(i) : generatorList.get(i).copy();
+            }
         }
-        for (Node v : graph.vertexSet()) {
-            vars[i] = y.get(v);
-            indices.put(v, i++);
+
+        CutGenerator generator(int i, double[] values) {
+            if (updated[i] != round) {
+                updated[i] = round;
+                components.capacities[i].apply(generators[i], values, creepFlow);
+            }
+            return generators[i];
         }
     }
 
-    public void addComponent(Graph graph, Node root) {
-        CutGenerator generator = new CutGenerator(graph, root);
-        generatorList.add(generator);
-        for (Node node : generator.getNodes()) {
-            if (node != generator.getRoot()) {
-                generators.put(node, generator);
-                nodes.add(node);
+    /**
+     * Nodes of a round taken one by one by the callback thread and helpers. Helpers starting
+     * after the callback thread is done skip the round, so it never waits for queued tasks.
+     */
+    private class Round {
+        private final List<Node> nodes;
+        private final double[] values;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger found = new AtomicInteger();
+        private final List<int[]> cuts = new ArrayList<>();
+        private int active;
+        private boolean closed;
+        private RuntimeException error;
+
+        Round(List<Node> nodes, double[] values) {
+            this.nodes = nodes;
+            this.values = values;
+        }
+
+        void help(Workspace workspace) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                active++;
+            }
+            try {
+                run(workspace);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    error = e;
+                }
+            } finally {
+                synchronized (this) {
+                    active--;
+                    notifyAll();
+                }
+            }
+        }
+
+        void run(Workspace workspace) {
+            List<int[]> res = new ArrayList<>();
+            for (int k = next.getAndIncrement(); k < nodes.size() && found.get() < maxToAdd;
+                 k = next.getAndIncrement()) {
+                Node node = nodes.get(k);
+                CutGenerator generator = workspace.generator(components.generators.get(node), values);
+                for (List<Edge> cut : generator.findCuts(node)) {
+                    Set<Edge> minCut = new HashSet<>(cut);
+                    int[] vars = new int[minCut.size() + 1];
+                    int i = 0;
+                    for (Edge e : minCut) {
+                        vars[i++] = w.get(e);
+                    }
+                    vars[i] = y.get(node);
+                    res.add(vars);
+                    found.incrementAndGet();
+                }
+            }
+            synchronized (this) {
+                cuts.addAll(res);
+            }
+        }
+
+        /**
+         * Waits for helpers which have started and rethrows their errors.
+         */
+        synchronized void close() {
+            closed = true;
+            boolean interrupted = false;
+            while (active > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
             }
         }
-        inited = false;
     }
 }
@@ -0,0 +1,77 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Long-lived pool of threads shared by all stages of solving: input parsing,
+ * preprocessing and solving of components by {@link Worker}s.
+ * One pool may serve many solves, so threads are started once and the total
+ * number of busy threads doesn't exceed {@link #threads()}.
+ * Tasks may wait for other tasks of the same pool, waiting threads run queued tasks.
+ */
+public class SolverPool implements AutoCloseable {
+    private final ForkJoinPool pool;
+
+    public SolverPool(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    public int threads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Underlying pool for components which schedule fork-join tasks themselves.
+     */
+    public ForkJoinPool forkJoinPool() {
+        return pool;
+    }
+
+    public ForkJoinTask<?> submit(Runnable task) {
+        return pool.submit(task);
+    }
+
+    /**
+     * Runs tasks in the pool and waits for all of them.
+     * Exceptions thrown by tasks are rethrown after all tasks are finished.
+     */
+    public void invokeAll(Collection<? extends Runnable> tasks) {
+        List<ForkJoinTask<?>> futures = new ArrayList<>();
+        for (Runnable task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        joinAll(futures);
+    }
+
+    /**
+     * Waits for all submitted tasks and rethrows the first exception thrown by them.
+     */
+    public static void joinAll(Collection<? extends ForkJoinTask<?>> futures) {
+        RuntimeException error = null;
+        for (ForkJoinTask<?> future : futures) {
+            future.quietlyJoin();
+            if (error == null && future.isCompletedAbnormally()) {
+                Throwable e = future.getException();
+                error = e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Lets already submitted tasks finish and releases threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -1,5 +1,6 @@
 package ru.itmo.ctlab.sgmwcs.solver;
 
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
 import ru.itmo.ctlab.sgmwcs.Signals;
 import ru.itmo.ctlab.sgmwcs.graph.Edge;
 import ru.itmo.ctlab.sgmwcs.graph.Graph;
@@ -20,10 +21,14 @@ public class TreeSolver {
             this.units = new HashSet<>();
         }
 
-        Set<Integer> sets() {
+        BitSet sets() {
             return s.unitSets(units);
         }
 
+        double weight() {
+            return s.weightSum(sets());
+        }
+
         Solution(Set<Unit> units) {
             this.units = units;
         }
@@ -31,7 +36,7 @@ public class TreeSolver {
     }
 
     private final Graph g;
-    private final Signals s;
+    private final CompactSignals s;
     private Set<Unit> withoutRoot;
     private Set<Unit> withRoot;
 
@@ -45,38 +50,44 @@ public class TreeSolver {
 
 
     public TreeSolver(Graph g, Signals s) {
+        this(g, new CompactSignals(s));
+    }
+
+    public TreeSolver(Graph g, CompactSignals s) {
         this.g = g;
         this.s = s;
     }
 
     public Solution solveRooted(Node root) {
-        return solve(root, null, Collections.emptySet());
+        return solve(root, null, new BitSet());
     }
 
-    private Solution solve(Node root, Node parent, Set<Integer> parentSets) {
-        List<Node> nodes = g.neighborListOf(root);
-        assert (parent == null || nodes.contains(parent));
+    private Solution solve(Node root, Node parent, BitSet parentSets) {
+        assert (parent == null || g.getEdge(root, parent) != null);
         Set<Unit> rootSet = new HashSet<>();
         rootSet.add(root);
         Solution nonEmpty = new Solution(rootSet);
         Solution empty = new Solution();
         if (parent != null) {
             Edge e = g.getEdge(root, parent);
-            nodes.remove(parent);
             rootSet.add(e);
         }
-        if (nodes.isEmpty()
+        // g is a tree, so the only neighbor of a leaf is its parent
+        boolean leaf = g.degreeOf(root) == (parent == null ? 0 : 1);
+        if (leaf
                 && s.minSum(root) < 0
-                && parentSets.containsAll(
+                && CompactSignals.containsAll(parentSets,
                 s.positiveUnitSets(nonEmpty.units))) {
             return empty;
         } else {
             List<Solution> childSols = new ArrayList<>();
-            Set<Integer> signals = new HashSet<>(nonEmpty.sets());
-            signals.addAll(parentSets);
-            for (Node node : nodes) {
-                childSols.add(solve(node, root, signals));
-            }
+            BitSet signals = nonEmpty.sets();
+            signals.or(parentSets);
+            g.forEachNeighbor(root, node -> {
+                if (node != parent) {
+                    childSols.add(solve(node, root, signals));
+                }
+            });
             /*while (!childSols.isEmpty()) {
                 Solution max = childSols.stream().max(
                         Comparator.comparingDouble(sol -> s.weightSum(sol.sets()))
@@ -90,10 +101,10 @@ public class TreeSolver {
                 }
             }*/
             for (Solution childSol: childSols) {
-                Set<Integer> childSets = new HashSet<>(childSol.sets());
+                BitSet childSets = childSol.sets();
 //                 Set<Integer> setSum = new HashSet<>(childSets);
    //             setSum.addAll(sigs);
-                childSets.addAll(signals);
+                childSets.or(signals);
                 if (s.weightSum(childSets) >= s.weightSum(signals)) {
                     nonEmpty.units.addAll(childSol.units);
                 }
@@ -12,15 +12,16 @@ import java.util.stream.Collectors;
 public class Worker implements Runnable {
     private final Signals signals;
     private final Graph graph;
-    private final RLTSolver solver;
+    private final RootedSolver solver;
     private final Node root;
     private List<Unit> result;
     private boolean isSolvedToOptimality;
     private boolean isOk;
     private long startTime;
     private int logLevel;
+    private double upperBound = Double.NaN;
 
-    public Worker(Graph graph, Node root, Signals signals, RLTSolver solver, long time) {
+    public Worker(Graph graph, Node root, Signals signals, RootedSolver solver, long time) {
         this.solver = solver;
         this.graph = graph;
         this.signals = signals;
@@ -30,6 +31,21 @@ public class Worker implements Runnable {
         startTime = time;
     }
 
+    /**
+     * Sets the solution found by a heuristic, it is the result if the worker
+     * isn't run or doesn't find a better one.
+     */
+    public void setInitialSolution(Collection<Unit> solution) {
+        result = new ArrayList<>(solution);
+    }
+
+    /**
+     * Sets the number of threads the solver of the component may use.
+     */
+    public void setThreadsNum(int threads) {
+        solver.setThreadsNum(threads);
+    }
+
     @Override
     public void run() {
         Set<Node> vertexSet = graph.vertexSet();
@@ -55,6 +71,10 @@ public class Worker implements Runnable {
             result = Collections.emptyList();
             return;
         }*/
+        // No model is built if the component can't improve the best known solution
+        if (upperBound() <= solver.getLB()) {
+            return;
+        }
         double tl = solver.getTimeLimit().getRemainingTime() - (System.currentTimeMillis() - startTime) / 1000.0;
         if (tl <= 0) {
             isSolvedToOptimality = false;
@@ -74,6 +94,18 @@ public class Worker implements Runnable {
         }
     }
 
+    /**
+     * @return sum of positive signals of the component, no solution in it weighs more.
+     */
+    public double upperBound() {
+        if (Double.isNaN(upperBound)) {
+            Set<Unit> units = new HashSet<>(graph.vertexSet());
+            units.addAll(graph.edgeSet());
+            upperBound = signals.weightSum(signals.positiveUnitSets(units));
+        }
+        return upperBound;
+    }
+
     public List<Unit> getResult() {
         return result;
     }
@@ -0,0 +1,102 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.util.*;
+
+/**
+ * Nodes touched by reductions since the last run of a reduction rule.
+ * A rule whose decision for a unit depends only on units within <code>radius</code>
+ * hops re-examines only the neighbourhood of touched nodes. Rules which search
+ * paths use <code>radius</code> {@link #COMPONENT} and re-examine whole
+ * connected components containing touched nodes.
+ * Units are examined in the order of {@link Graph#vertexSet()} and {@link Graph#edgeSet()},
+ * so rules whose decisions depend on the order remove the same units as full sweeps do.
+ */
+class Worklist {
+    static final int COMPONENT = -1;
+
+    private final Graph graph;
+    private final int radius;
+    private final Comparator<Unit> order;
+    private boolean all;
+    private Set<Node> dirty;
+
+    /**
+     * @param order positions of units in {@link Graph#vertexSet()} and {@link Graph#edgeSet()}.
+     */
+    Worklist(Graph graph, int radius, Map<Unit, Integer> order) {
+        this.graph = graph;
+        this.radius = radius;
+        this.order = Comparator.comparingInt(u -> order.getOrDefault(u, Integer.MAX_VALUE));
+        this.all = true;
+        this.dirty = new LinkedHashSet<>();
+    }
+
+    void touch(Node v) {
+        if (!all) {
+            dirty.add(v);
+        }
+    }
+
+    void touchAll() {
+        all = true;
+        dirty.clear();
+    }
+
+    boolean isAll() {
+        return all;
+    }
+
+    /**
+     * Returns nodes to be examined by the rule and forgets touched nodes.
+     */
+    List<Node> nodes() {
+        if (all) {
+            all = false;
+            dirty.clear();
+            return new ArrayList<>(graph.vertexSet());
+        }
+        Set<Node> visited = new LinkedHashSet<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        for (Node v : dirty) {
+            if (graph.containsVertex(v) && visited.add(v)) {
+                queue.add(v);
+            }
+        }
+        dirty = new LinkedHashSet<>();
+        for (int depth = 0; (radius == COMPONENT || depth < radius) && !queue.isEmpty(); depth++) {
+            for (int i = queue.size(); i > 0; i--) {
+                graph.forEachNeighbor(queue.poll(), u -> {
+                    if (visited.add(u)) {
+                        queue.add(u);
+                    }
+                });
+            }
+        }
+        List<Node> res = new ArrayList<>(visited);
+        res.sort(order);
+        return res;
+    }
+
+    /**
+     * Same as {@link #nodes()} but returns edges incident to these nodes.
+     */
+    List<Edge> edges() {
+        if (all) {
+            all = false;
+            dirty.clear();
+            return new ArrayList<>(graph.edgeSet());
+        }
+        Set<Edge> edges = new LinkedHashSet<>();
+        for (Node v : nodes()) {
+            graph.forEachIncidentEdge(v, (e, u) -> edges.add(e));
+        }
+        List<Edge> res = new ArrayList<>(edges);
+        res.sort(order);
+        return res;
+    }
+}
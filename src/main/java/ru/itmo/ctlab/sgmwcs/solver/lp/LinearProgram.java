@@ -0,0 +1,348 @@
+package ru.itmo.ctlab.sgmwcs.solver.lp;
+
+import java.util.Arrays;
+
+/**
+ * Linear program <code>max cx, lo &lt;= Ax &lt;= hi, l &lt;= x &lt;= u</code> solved by
+ * the dual simplex method for bounded variables on a dense tableau.
+ * Variables must have finite bounds, so the basis of row activities is dual feasible
+ * from the start and stays so after bounds of variables are changed or rows are added.
+ * This lets branch-and-bound reoptimize from the last basis after each change.
+ */
+public class LinearProgram {
+    public enum Status {
+        OPTIMAL, INFEASIBLE, ITERATION_LIMIT
+    }
+
+    private static final double PRIMAL_TOL = 1e-7;
+    private static final double DUAL_TOL = 1e-9;
+    private static final double PIVOT_TOL = 1e-9;
+    private static final int STALL = 50;
+
+    private int vars;
+    private int cols;
+    private int rows;
+    private double[] lo = new double[16];
+    private double[] hi = new double[16];
+    private double[] cost = new double[16];
+    private double[] x = new double[16];
+    private double[] d = new double[16];
+    private int[] basic = new int[16];
+    private boolean[] atUpper = new boolean[16];
+    private double[][] tableau = new double[16][];
+    private int[] head = new int[16];
+    private int iterations;
+    private int[] nz = new int[16];
+
+    /**
+     * Adds a variable, all variables must be added before the first row.
+     *
+     * @return index of the variable.
+     */
+    public int addVariable(double lo, double hi, double cost) {
+        if (rows > 0) {
+            throw new IllegalStateException("Variables must be added before rows");
+        }
+        if (Double.isInfinite(lo) || Double.isInfinite(hi) || lo > hi) {
+            throw new IllegalArgumentException("Bounds of variables must be finite");
+        }
+        int j = addColumn(lo, hi, cost);
+        vars++;
+        return j;
+    }
+
+    /**
+     * Adds the row <code>lo &lt;= sum coefs[k] * x[vars[k]] &lt;= hi</code>,
+     * one of the bounds may be infinite. Rows may be added between solves.
+     */
+    public void addRow(int[] vars, double[] coefs, double lo, double hi) {
+        int slack = addColumn(lo, hi, 0);
+        if (rows == tableau.length) {
+            tableau = Arrays.copyOf(tableau, 2 * rows);
+            head = Arrays.copyOf(head, 2 * rows);
+        }
+        // Row of the tableau is s - ax = 0 expressed through nonbasic columns
+        double[] row = new double[x.length];
+        for (int k = 0; k < vars.length; k++) {
+            row[vars[k]] -= coefs[k];
+        }
+        for (int k = 0; k < vars.length; k++) {
+            int b = basic[vars[k]];
+            double a = row[vars[k]];
+            if (b >= 0 && a != 0) {
+                double[] t = tableau[b];
+                for (int j = 0; j < cols; j++) {
+                    row[j] -= a * t[j];
+                }
+            }
+        }
+        row[slack] = 1;
+        tableau[rows] = row;
+        head[rows] = slack;
+        basic[slack] = rows;
+        rows++;
+        updateBasic(rows - 1);
+    }
+
+    private int addColumn(double lo, double hi, double cost) {
+        if (cols == x.length) {
+            int size = 2 * cols;
+            this.lo = Arrays.copyOf(this.lo, size);
+            this.hi = Arrays.copyOf(this.hi, size);
+            this.cost = Arrays.copyOf(this.cost, size);
+            x = Arrays.copyOf(x, size);
+            nz = Arrays.copyOf(nz, size);
+            d = Arrays.copyOf(d, size);
+            basic = Arrays.copyOf(basic, size);
+            atUpper = Arrays.copyOf(atUpper, size);
+            for (int i = 0; i < rows; i++) {
+                tableau[i] = Arrays.copyOf(tableau[i], size);
+            }
+        }
+        int j = cols++;
+        this.lo[j] = lo;
+        this.hi[j] = hi;
+        this.cost[j] = cost;
+        d[j] = cost;
+        basic[j] = -1;
+        atUpper[j] = cost > 0;
+        x[j] = atUpper[j] ? hi : lo;
+        return j;
+    }
+
+    public int variables() {
+        return vars;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public double lower(int var) {
+        return lo[var];
+    }
+
+    public double upper(int var) {
+        return hi[var];
+    }
+
+    /**
+     * Changes bounds of the variable, the basis stays dual feasible.
+     */
+    public void setBounds(int var, double lo, double hi) {
+        if (var >= vars || Double.isInfinite(lo) || Double.isInfinite(hi) || lo > hi) {
+            throw new IllegalArgumentException();
+        }
+        this.lo[var] = lo;
+        this.hi[var] = hi;
+        if (basic[var] < 0) {
+            if (d[var] > DUAL_TOL) {
+                atUpper[var] = true;
+            } else if (d[var] < -DUAL_TOL) {
+                atUpper[var] = false;
+            }
+            double value = atUpper[var] ? hi : lo;
+            double delta = value - x[var];
+            x[var] = value;
+            if (delta != 0) {
+                for (int i = 0; i < rows; i++) {
+                    x[head[i]] -= tableau[i][var] * delta;
+                }
+            }
+        }
+    }
+
+    public double value(int var) {
+        return x[var];
+    }
+
+    public double objective() {
+        double res = 0;
+        for (int j = 0; j < vars; j++) {
+            res += cost[j] * x[j];
+        }
+        return res;
+    }
+
+    /**
+     * @return number of pivots made by all solves.
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * Pivots are chosen by the largest infeasibility and the Harris ratio test.
+     * When the objective doesn't decrease for a while, Bland's rule of the smallest
+     * indices is used until it does, so degenerate bases don't cycle.
+     */
+    public Status solve() {
+        int limit = 50 * (cols + rows) + 1000;
+        double last = Double.POSITIVE_INFINITY;
+        int stalled = 0;
+        for (int it = 0; it < limit; it++) {
+            double obj = objective();
+            if (obj < last - DUAL_TOL * (1 + Math.abs(last))) {
+                last = obj;
+                stalled = 0;
+            } else {
+                stalled++;
+            }
+            boolean bland = stalled > STALL;
+            int r = leavingRow(bland);
+            if (r < 0) {
+                return Status.OPTIMAL;
+            }
+            int b = head[r];
+            boolean increase = x[b] < lo[b];
+            int q = bland ? blandColumn(r, increase) : enteringColumn(r, increase);
+            if (q < 0) {
+                return Status.INFEASIBLE;
+            }
+            pivot(r, q, increase);
+        }
+        return Status.ITERATION_LIMIT;
+    }
+
+    private int leavingRow(boolean bland) {
+        int res = -1;
+        double max = 0;
+        for (int i = 0; i < rows; i++) {
+            int b = head[i];
+            double v = Math.max(lo[b] - x[b], x[b] - hi[b]);
+            double tol = PRIMAL_TOL * (1 + Math.abs(x[b]));
+            if (v > tol && (bland ? res < 0 || b < head[res] : v > max)) {
+                max = v;
+                res = i;
+            }
+        }
+        return res;
+    }
+
+    private int blandColumn(int r, boolean increase) {
+        double[] t = tableau[r];
+        double min = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < cols; j++) {
+            double a = eligible(j, t[j], increase);
+            if (a != 0) {
+                min = Math.min(min, dualSlack(j) / a);
+            }
+        }
+        for (int j = 0; j < cols; j++) {
+            double a = eligible(j, t[j], increase);
+            if (a != 0 && dualSlack(j) / a <= min + DUAL_TOL) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Harris ratio test: among columns whose ratio is within tolerance of the minimal one
+     * the column with the largest pivot is chosen.
+     */
+    private int enteringColumn(int r, boolean increase) {
+        double[] t = tableau[r];
+        double bound = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < cols; j++) {
+            double a = eligible(j, t[j], increase);
+            if (a != 0) {
+                bound = Math.min(bound, (dualSlack(j) + DUAL_TOL) / a);
+            }
+        }
+        int res = -1;
+        double best = 0;
+        for (int j = 0; j < cols; j++) {
+            double a = eligible(j, t[j], increase);
+            if (a != 0 && dualSlack(j) / a <= bound && a > best) {
+                best = a;
+                res = j;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return how far the reduced cost of nonbasic column <code>j</code> may move before
+     * the basis loses dual feasibility.
+     */
+    private double dualSlack(int j) {
+        return Math.max(atUpper[j] ? d[j] : -d[j], 0);
+    }
+
+    /**
+     * @return absolute value of the pivot if moving nonbasic column <code>j</code> away from
+     * its bound moves the leaving variable in the needed direction and 0 otherwise.
+     */
+    private double eligible(int j, double a, boolean increase) {
+        if (basic[j] >= 0 || lo[j] == hi[j] || Math.abs(a) < PIVOT_TOL) {
+            return 0;
+        }
+        boolean up = !atUpper[j];
+        // x_b = -sum a_j x_j, so increasing x_j changes x_b by -a_j
+        boolean fits = up == (increase ? a < 0 : a > 0);
+        return fits ? Math.abs(a) : 0;
+    }
+
+    private void pivot(int r, int q, boolean increase) {
+        int b = head[r];
+        double[] t = tableau[r];
+        double p = t[q];
+        int nonzeros = 0;
+        for (int j = 0; j < cols; j++) {
+            if (t[j] != 0) {
+                t[j] /= p;
+                nz[nonzeros++] = j;
+            }
+        }
+        t[q] = 1;
+        for (int i = 0; i < rows; i++) {
+            if (i == r) {
+                continue;
+            }
+            double[] row = tableau[i];
+            double f = row[q];
+            if (f != 0) {
+                for (int k = 0; k < nonzeros; k++) {
+                    int j = nz[k];
+                    row[j] -= f * t[j];
+                }
+                row[q] = 0;
+            }
+        }
+        double f = d[q];
+        if (f != 0) {
+            for (int k = 0; k < nonzeros; k++) {
+                int j = nz[k];
+                d[j] -= f * t[j];
+            }
+        }
+        d[q] = 0;
+        head[r] = q;
+        basic[q] = r;
+        basic[b] = -1;
+        // Leaving variable becomes nonbasic at the violated bound
+        atUpper[b] = !increase;
+        x[b] = increase ? lo[b] : hi[b];
+        iterations++;
+        // Basic values are recomputed from scratch so rounding errors don't accumulate
+        recompute();
+    }
+
+    private void updateBasic(int i) {
+        double[] t = tableau[i];
+        double v = 0;
+        for (int j = 0; j < cols; j++) {
+            if (basic[j] < 0 && t[j] != 0) {
+                v -= t[j] * x[j];
+            }
+        }
+        x[head[i]] = v;
+    }
+
+    private void recompute() {
+        for (int i = 0; i < rows; i++) {
+            updateBasic(i);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.itmo.ctlab.sgmwcs.solver.mip;
+
+import ru.itmo.ctlab.sgmwcs.solver.SolverException;
+
+/**
+ * Solver of {@link Model}s. A backend solves one model, parameters and callbacks
+ * are set after the model is loaded.
+ */
+public interface Backend {
+    void load(Model model) throws SolverException;
+
+    /**
+     * Adds a possibly partial solution the search starts from. Variables which aren't given
+     * are completed by the backend: CPLEX repairs the start, {@link BranchAndBound} sets
+     * them to zero. Starts which can't be completed to a feasible solution are ignored.
+     */
+    void addStart(int[] vars, double[] values) throws SolverException;
+
+    void use(MipCallback callback) throws SolverException;
+
+    /**
+     * @param seconds time limit, infinite means no limit.
+     */
+    void setTimeLimit(double seconds) throws SolverException;
+
+    /**
+     * Limits the number of threads, backends choose it themselves by default.
+     */
+    void setThreads(int threads) throws SolverException;
+
+    void setLogging(boolean logging) throws SolverException;
+
+    /**
+     * @return whether a solution is found.
+     */
+    boolean solve() throws SolverException;
+
+    /**
+     * @return whether the search stopped because of the time limit.
+     */
+    boolean isTimeLimitReached() throws SolverException;
+
+    double value(int var) throws SolverException;
+
+    double objValue() throws SolverException;
+
+    double bestObjValue() throws SolverException;
+
+    /**
+     * Releases resources of the backend.
+     */
+    void end();
+}
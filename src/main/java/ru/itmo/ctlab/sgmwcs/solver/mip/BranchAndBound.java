@@ -0,0 +1,369 @@
+package ru.itmo.ctlab.sgmwcs.solver.mip;
+
+import ru.itmo.ctlab.sgmwcs.solver.SolverException;
+import ru.itmo.ctlab.sgmwcs.solver.lp.LinearProgram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Backend which doesn't need CPLEX: depth-first branch-and-bound over {@link LinearProgram}
+ * reoptimized from the basis of the parent node. Cut callbacks are invoked in rounds near
+ * the root of the search tree while they improve the bound noticeably, heuristic callbacks
+ * once per node. The tableau is dense, so the backend is meant for small models.
+ * <p>
+ * Variables must have finite bounds. Lazy rows are a part of relaxations. Solutions of
+ * heuristics and starts are accepted only if they satisfy all rows of the model.
+ * The search is single-threaded.
+ */
+public class BranchAndBound implements Backend {
+    private static final double EPS = 1e-6;
+    private static final int MAX_ROUNDS = 20;
+    private static final int CUT_DEPTH = 4;
+    private static final double MIN_IMPROVEMENT = 1e-3;
+
+    private Model model;
+    private LinearProgram lp;
+    private int[] integer;
+    private final List<MipCallback> cuts = new ArrayList<>();
+    private final List<MipCallback> heuristics = new ArrayList<>();
+    private final List<MipCallback> incumbents = new ArrayList<>();
+    private double timeLimit = Double.POSITIVE_INFINITY;
+    private boolean logging;
+
+    private double[] incumbent;
+    private double incumbentObj = Double.NEGATIVE_INFINITY;
+    private double bound = Double.POSITIVE_INFINITY;
+    private long deadline;
+    private boolean limitReached;
+    private boolean aborted;
+    private int explored;
+
+    @Override
+    public void load(Model model) throws SolverException {
+        this.model = model;
+        lp = new LinearProgram();
+        int n = model.variables();
+        int[] integer = new int[n];
+        int k = 0;
+        for (int j = 0; j < n; j++) {
+            double lo = model.lower(j), hi = model.upper(j);
+            if (Double.isInfinite(lo) || Double.isInfinite(hi)) {
+                throw new SolverException("Variable " + model.name(j) + " must have finite bounds");
+            }
+            lp.addVariable(lo, hi, model.cost(j));
+            if (model.isInteger(j)) {
+                integer[k++] = j;
+            }
+        }
+        this.integer = Arrays.copyOf(integer, k);
+        for (int i = 0; i < model.rows(); i++) {
+            double lo = model.rowLower(i), hi = model.rowUpper(i);
+            if (lo == Double.NEGATIVE_INFINITY && hi == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            int from = model.rowStart(i), to = model.rowStart(i + 1);
+            int[] vars = new int[to - from];
+            double[] coefs = new double[to - from];
+            for (int t = from; t < to; t++) {
+                vars[t - from] = model.index(t);
+                coefs[t - from] = model.coef(t);
+            }
+            lp.addRow(vars, coefs, lo, hi);
+        }
+    }
+
+    @Override
+    public void addStart(int[] vars, double[] values) {
+        double[] solution = solution(vars, values);
+        if (feasible(solution)) {
+            offer(solution);
+        }
+    }
+
+    @Override
+    public void use(MipCallback callback) {
+        switch (callback.type()) {
+            case CUT:
+                cuts.add(callback);
+                break;
+            case HEURISTIC:
+                heuristics.add(callback);
+                break;
+            case INCUMBENT:
+                incumbents.add(callback);
+                break;
+        }
+    }
+
+    @Override
+    public void setTimeLimit(double seconds) {
+        timeLimit = seconds;
+    }
+
+    /**
+     * The search is single-threaded, the number of threads is ignored.
+     */
+    @Override
+    public void setThreads(int threads) {
+    }
+
+    @Override
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+
+    @Override
+    public boolean solve() throws SolverException {
+        deadline = timeLimit >= Long.MAX_VALUE / 1e9 ? Long.MAX_VALUE
+                : System.nanoTime() + (long) (Math.max(timeLimit, 0) * 1e9);
+        branch(0);
+        if (!limitReached && !aborted) {
+            bound = incumbentObj;
+        }
+        if (logging) {
+            System.out.println("Branch-and-bound nodes: " + explored + ", simplex iterations: " + lp.iterations());
+        }
+        return incumbent != null;
+    }
+
+    /**
+     * @return whether the search stopped because of the time limit or the limit of simplex iterations.
+     */
+    @Override
+    public boolean isTimeLimitReached() {
+        return limitReached;
+    }
+
+    @Override
+    public double value(int var) {
+        return incumbent[var];
+    }
+
+    @Override
+    public double objValue() {
+        return incumbentObj;
+    }
+
+    @Override
+    public double bestObjValue() {
+        return bound;
+    }
+
+    @Override
+    public void end() {
+        lp = null;
+    }
+
+    private void branch(int depth) throws SolverException {
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+            limitReached = true;
+        }
+        if (limitReached || aborted) {
+            return;
+        }
+        explored++;
+        double last = Double.POSITIVE_INFINITY;
+        for (int round = 0; ; round++) {
+            LinearProgram.Status status = lp.solve();
+            if (status == LinearProgram.Status.ITERATION_LIMIT) {
+                limitReached = true;
+                return;
+            }
+            double obj = lp.objective();
+            if (depth == 0) {
+                bound = status == LinearProgram.Status.INFEASIBLE ? Double.NEGATIVE_INFINITY : obj;
+            }
+            if (status == LinearProgram.Status.INFEASIBLE || obj <= incumbentObj + EPS) {
+                return;
+            }
+            if (depth > CUT_DEPTH || round == MAX_ROUNDS || last - obj < MIN_IMPROVEMENT || !separate()) {
+                break;
+            }
+            if (aborted) {
+                return;
+            }
+            last = obj;
+        }
+        int var = fractional();
+        if (var < 0) {
+            found(lpSolution());
+            return;
+        }
+        for (MipCallback heuristic : heuristics) {
+            heuristic.invoke(new Context(null));
+        }
+        if (aborted || lp.objective() <= incumbentObj + EPS) {
+            return;
+        }
+        double lo = lp.lower(var), hi = lp.upper(var), value = lp.value(var);
+        lp.setBounds(var, Math.ceil(value), hi);
+        branch(depth + 1);
+        lp.setBounds(var, lo, Math.floor(value));
+        branch(depth + 1);
+        lp.setBounds(var, lo, hi);
+    }
+
+    private boolean separate() throws SolverException {
+        int rows = lp.rows();
+        for (MipCallback cut : cuts) {
+            cut.invoke(new Context(null));
+        }
+        return lp.rows() > rows;
+    }
+
+    /**
+     * @return the most fractional integer variable or -1 if the solution of the relaxation is integral.
+     */
+    private int fractional() {
+        int res = -1;
+        double max = EPS;
+        for (int var : integer) {
+            double v = lp.value(var);
+            double f = Math.min(v - Math.floor(v), Math.ceil(v) - v);
+            if (f > max) {
+                max = f;
+                res = var;
+            }
+        }
+        return res;
+    }
+
+    private double[] lpSolution() {
+        double[] res = new double[model.variables()];
+        for (int j = 0; j < res.length; j++) {
+            res[j] = lp.value(j);
+        }
+        for (int var : integer) {
+            res[var] = Math.round(res[var]);
+        }
+        return res;
+    }
+
+    private double[] solution(int[] vars, double[] values) {
+        double[] res = new double[model.variables()];
+        for (int k = 0; k < vars.length; k++) {
+            res[vars[k]] = values[k];
+        }
+        return res;
+    }
+
+    private double objective(double[] solution) {
+        double res = 0;
+        for (int j = 0; j < solution.length; j++) {
+            res += model.cost(j) * solution[j];
+        }
+        return res;
+    }
+
+    /**
+     * Checks solutions which don't come from relaxations.
+     */
+    private boolean feasible(double[] solution) {
+        for (int j = 0; j < solution.length; j++) {
+            double v = solution[j];
+            if (v < model.lower(j) - EPS || v > model.upper(j) + EPS
+                    || model.isInteger(j) && Math.abs(v - Math.rint(v)) > EPS) {
+                return false;
+            }
+        }
+        for (int i = 0; i < model.rows(); i++) {
+            double activity = 0;
+            for (int t = model.rowStart(i); t < model.rowStart(i + 1); t++) {
+                activity += model.coef(t) * solution[model.index(t)];
+            }
+            double tol = EPS * (1 + Math.abs(activity));
+            if (activity < model.rowLower(i) - tol || activity > model.rowUpper(i) + tol) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void offer(double[] solution) {
+        double obj = objective(solution);
+        if (obj <= incumbentObj) {
+            return;
+        }
+        incumbent = solution;
+        incumbentObj = obj;
+    }
+
+    /**
+     * Takes the solution as the incumbent if it is better and notifies incumbent callbacks.
+     */
+    private void found(double[] solution) throws SolverException {
+        double before = incumbentObj;
+        offer(solution);
+        if (incumbentObj > before) {
+            for (MipCallback callback : incumbents) {
+                callback.invoke(new Context(solution));
+            }
+        }
+    }
+
+    /**
+     * Context of the relaxation of the current node or of a candidate solution.
+     */
+    private class Context implements MipCallback.Context {
+        private final double[] solution;
+
+        Context(double[] solution) {
+            this.solution = solution;
+        }
+
+        @Override
+        public double value(int var) {
+            return solution == null ? lp.value(var) : solution[var];
+        }
+
+        @Override
+        public double[] values(int[] vars) {
+            double[] res = new double[vars.length];
+            for (int k = 0; k < vars.length; k++) {
+                res[k] = value(vars[k]);
+            }
+            return res;
+        }
+
+        @Override
+        public double objValue() {
+            return solution == null ? lp.objective() : objective(solution);
+        }
+
+        @Override
+        public double bestObjValue() {
+            return bound;
+        }
+
+        @Override
+        public double incumbentObjValue() {
+            return incumbentObj;
+        }
+
+        @Override
+        public void addCut(int[] vars, double[] coefs, double lo, double hi) {
+            if (solution != null) {
+                throw new UnsupportedOperationException();
+            }
+            lp.addRow(vars, coefs, lo, hi);
+        }
+
+        @Override
+        public void setSolution(int[] vars, double[] values) throws SolverException {
+            if (solution != null) {
+                throw new UnsupportedOperationException();
+            }
+            double[] candidate = solution(vars, values);
+            if (feasible(candidate)) {
+                found(candidate);
+            }
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+}
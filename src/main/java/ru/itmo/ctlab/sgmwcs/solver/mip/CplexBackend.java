@@ -0,0 +1,467 @@
+package ru.itmo.ctlab.sgmwcs.solver.mip;
+
+import ilog.concert.*;
+import ilog.cplex.IloCplex;
+import ru.itmo.ctlab.sgmwcs.solver.SolverException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solves models by CPLEX. Variables and rows are created by arrays in a few calls
+ * instead of building Concert expressions term by term.
+ */
+public class CplexBackend implements Backend {
+    private IloCplex cplex;
+    private IloNumVar[] vars;
+
+    @Override
+    public void load(Model model) throws SolverException {
+        try {
+            cplex = new IloCplex();
+            int n = model.variables();
+            double[] lo = new double[n];
+            double[] hi = new double[n];
+            IloNumVarType[] types = new IloNumVarType[n];
+            String[] names = new String[n];
+            int costs = 0;
+            for (int j = 0; j < n; j++) {
+                lo[j] = finite(model.lower(j));
+                hi[j] = finite(model.upper(j));
+                boolean bool = model.isInteger(j) && lo[j] >= 0 && hi[j] <= 1;
+                types[j] = bool ? IloNumVarType.Bool : model.isInteger(j) ? IloNumVarType.Int : IloNumVarType.Float;
+                names[j] = model.name(j);
+                if (model.cost(j) != 0) {
+                    costs++;
+                }
+            }
+            vars = cplex.numVarArray(n, lo, hi, types, names);
+            double[] objCoefs = new double[costs];
+            IloNumVar[] objVars = new IloNumVar[costs];
+            for (int j = 0, k = 0; j < n; j++) {
+                if (model.cost(j) != 0) {
+                    objCoefs[k] = model.cost(j);
+                    objVars[k++] = vars[j];
+                }
+            }
+            cplex.addMaximize(cplex.scalProd(objCoefs, objVars));
+            List<IloRange> rows = new ArrayList<>();
+            List<IloRange> lazy = new ArrayList<>();
+            for (int i = 0; i < model.rows(); i++) {
+                int from = model.rowStart(i), to = model.rowStart(i + 1);
+                double[] coefs = new double[to - from];
+                IloNumVar[] terms = new IloNumVar[to - from];
+                for (int k = from; k < to; k++) {
+                    coefs[k - from] = model.coef(k);
+                    terms[k - from] = vars[model.index(k)];
+                }
+                IloRange range = cplex.range(finite(model.rowLower(i)), cplex.scalProd(coefs, terms),
+                        finite(model.rowUpper(i)));
+                (model.isLazy(i) ? lazy : rows).add(range);
+            }
+            cplex.add(rows.toArray(new IloRange[0]));
+            if (!lazy.isEmpty()) {
+                cplex.addLazyConstraints(lazy.toArray(new IloRange[0]));
+            }
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    private static double finite(double value) {
+        return Math.max(-Double.MAX_VALUE, Math.min(Double.MAX_VALUE, value));
+    }
+
+    private IloNumVar[] vars(int[] indices) {
+        IloNumVar[] res = new IloNumVar[indices.length];
+        for (int k = 0; k < indices.length; k++) {
+            res[k] = vars[indices[k]];
+        }
+        return res;
+    }
+
+    @Override
+    public void addStart(int[] vars, double[] values) throws SolverException {
+        try {
+            cplex.addMIPStart(vars(vars), values, IloCplex.MIPStartEffort.Repair);
+        } catch (IloException e) {
+            throw new SolverException("Start solution not applied: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void use(MipCallback callback) throws SolverException {
+        try {
+            switch (callback.type()) {
+                case CUT:
+                    cplex.use(new CutAdapter(callback));
+                    break;
+                case HEURISTIC:
+                    cplex.use(new HeuristicAdapter(callback));
+                    break;
+                case INCUMBENT:
+                    cplex.use(new IncumbentAdapter(callback));
+                    break;
+            }
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void setTimeLimit(double seconds) throws SolverException {
+        try {
+            if (seconds <= 0) {
+                cplex.setParam(IloCplex.DoubleParam.TiLim, 1e-9);
+            } else if (seconds != Double.POSITIVE_INFINITY) {
+                cplex.setParam(IloCplex.DoubleParam.TiLim, seconds);
+            }
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void setThreads(int threads) throws SolverException {
+        try {
+            cplex.setParam(IloCplex.IntParam.Threads, threads);
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void setLogging(boolean logging) {
+        if (!logging) {
+            cplex.setOut(null);
+            cplex.setWarning(null);
+        }
+    }
+
+    @Override
+    public boolean solve() throws SolverException {
+        try {
+            return cplex.solve();
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isTimeLimitReached() throws SolverException {
+        try {
+            return cplex.getCplexStatus() == IloCplex.CplexStatus.AbortTimeLim;
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public double value(int var) throws SolverException {
+        try {
+            return cplex.getValue(vars[var]);
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public double objValue() throws SolverException {
+        try {
+            return cplex.getObjValue();
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public double bestObjValue() throws SolverException {
+        try {
+            return cplex.getBestObjValue();
+        } catch (IloException e) {
+            throw new SolverException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void end() {
+        if (cplex != null) {
+            cplex.end();
+        }
+    }
+
+    /**
+     * Protected methods of CPLEX callbacks the context needs.
+     */
+    private interface Access {
+        double value(IloNumVar var) throws IloException;
+
+        double[] values(IloNumVar[] vars) throws IloException;
+
+        double objValue() throws IloException;
+
+        double bestObjValue() throws IloException;
+
+        double incumbentObjValue() throws IloException;
+
+        void stop();
+    }
+
+    /**
+     * Context of the callbacks controlling the search, operations not allowed for the
+     * kind of the callback throw {@link UnsupportedOperationException}.
+     */
+    private class Context implements MipCallback.Context {
+        private final Access access;
+
+        Context(Access access) {
+            this.access = access;
+        }
+
+        @Override
+        public double value(int var) throws SolverException {
+            try {
+                return access.value(vars[var]);
+            } catch (IloException e) {
+                throw new SolverException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double[] values(int[] indices) throws SolverException {
+            try {
+                return access.values(vars(indices));
+            } catch (IloException e) {
+                throw new SolverException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double objValue() throws SolverException {
+            try {
+                return access.objValue();
+            } catch (IloException e) {
+                throw new SolverException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double bestObjValue() throws SolverException {
+            try {
+                return access.bestObjValue();
+            } catch (IloException e) {
+                throw new SolverException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double incumbentObjValue() throws SolverException {
+            try {
+                return access.incumbentObjValue();
+            } catch (IloException e) {
+                throw new SolverException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void addCut(int[] vars, double[] coefs, double lo, double hi) throws SolverException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setSolution(int[] vars, double[] values) throws SolverException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void abort() {
+            access.stop();
+        }
+    }
+
+    private class CutAdapter extends IloCplex.UserCutCallback implements Access {
+        private final MipCallback callback;
+        private final Context context = new Context(this) {
+            @Override
+            public void addCut(int[] indices, double[] coefs, double lo, double hi) throws SolverException {
+                try {
+                    IloRange cut;
+                    // Concert objects are created under the lock since the callback may run in parallel
+                    synchronized (cplex) {
+                        cut = cplex.range(finite(lo), cplex.scalProd(coefs, vars(indices)), finite(hi));
+                    }
+                    add(cut, IloCplex.CutManagement.UseCutPurge);
+                } catch (IloException e) {
+                    throw new SolverException(e.getMessage());
+                }
+            }
+        };
+
+        CutAdapter(MipCallback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Invoked by CPLEX for every thread of a parallel search, each thread gets
+         * its own copy of the callback.
+         */
+        @Override
+        public CutAdapter clone() {
+            return new CutAdapter(callback.copy());
+        }
+
+        @Override
+        protected void main() throws IloException {
+            try {
+                callback.invoke(context);
+            } catch (SolverException e) {
+                throw new IloException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double value(IloNumVar var) throws IloException {
+            return getValue(var);
+        }
+
+        @Override
+        public double[] values(IloNumVar[] vars) throws IloException {
+            return getValues(vars);
+        }
+
+        @Override
+        public double objValue() throws IloException {
+            return getObjValue();
+        }
+
+        @Override
+        public double bestObjValue() throws IloException {
+            return getBestObjValue();
+        }
+
+        @Override
+        public double incumbentObjValue() throws IloException {
+            return getIncumbentObjValue();
+        }
+
+        @Override
+        public void stop() {
+            abort();
+        }
+    }
+
+    private class HeuristicAdapter extends IloCplex.HeuristicCallback implements Access {
+        private final MipCallback callback;
+        private final Context context = new Context(this) {
+            @Override
+            public void setSolution(int[] indices, double[] values) throws SolverException {
+                try {
+                    HeuristicAdapter.this.setSolution(vars(indices), values);
+                } catch (IloException e) {
+                    throw new SolverException(e.getMessage());
+                }
+            }
+        };
+
+        HeuristicAdapter(MipCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public HeuristicAdapter clone() {
+            return new HeuristicAdapter(callback.copy());
+        }
+
+        @Override
+        protected void main() throws IloException {
+            try {
+                callback.invoke(context);
+            } catch (SolverException e) {
+                throw new IloException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double value(IloNumVar var) throws IloException {
+            return getValue(var);
+        }
+
+        @Override
+        public double[] values(IloNumVar[] vars) throws IloException {
+            return getValues(vars);
+        }
+
+        @Override
+        public double objValue() throws IloException {
+            return getObjValue();
+        }
+
+        @Override
+        public double bestObjValue() throws IloException {
+            return getBestObjValue();
+        }
+
+        @Override
+        public double incumbentObjValue() throws IloException {
+            return getIncumbentObjValue();
+        }
+
+        @Override
+        public void stop() {
+            abort();
+        }
+    }
+
+    private class IncumbentAdapter extends IloCplex.IncumbentCallback implements Access {
+        private final MipCallback callback;
+        private final Context context = new Context(this);
+
+        IncumbentAdapter(MipCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public IncumbentAdapter clone() {
+            return new IncumbentAdapter(callback.copy());
+        }
+
+        @Override
+        protected void main() throws IloException {
+            try {
+                callback.invoke(context);
+            } catch (SolverException e) {
+                throw new IloException(e.getMessage());
+            }
+        }
+
+        @Override
+        public double value(IloNumVar var) throws IloException {
+            return getValue(var);
+        }
+
+        @Override
+        public double[] values(IloNumVar[] vars) throws IloException {
+            return getValues(vars);
+        }
+
+        @Override
+        public double objValue() throws IloException {
+            return getObjValue();
+        }
+
+        @Override
+        public double bestObjValue() throws IloException {
+            return getBestObjValue();
+        }
+
+        @Override
+        public double incumbentObjValue() throws IloException {
+            return getIncumbentObjValue();
+        }
+
+        @Override
+        public void stop() {
+            abort();
+        }
+    }
+}
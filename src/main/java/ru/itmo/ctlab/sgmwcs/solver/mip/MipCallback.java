@@ -0,0 +1,75 @@
+package ru.itmo.ctlab.sgmwcs.solver.mip;
+
+import ru.itmo.ctlab.sgmwcs.solver.SolverException;
+
+/**
+ * Callback invoked by a {@link Backend} during the search, variables are referred to
+ * by their indices in the {@link Model}.
+ */
+public interface MipCallback {
+    enum Type {
+        /**
+         * Invoked on fractional solutions of relaxations, may add cuts.
+         */
+        CUT,
+        /**
+         * Invoked on solutions of relaxations, may set a solution found by a heuristic.
+         */
+        HEURISTIC,
+        /**
+         * Invoked when a new incumbent solution is found.
+         */
+        INCUMBENT
+    }
+
+    Type type();
+
+    void invoke(Context context) throws SolverException;
+
+    /**
+     * Returns the callback invoked by another thread of a parallel search.
+     * By default the callback itself is shared, so it must be thread-safe;
+     * callbacks keeping per-thread state return a copy.
+     */
+    default MipCallback copy() {
+        return this;
+    }
+
+    interface Context {
+        /**
+         * @return value of the variable in the current relaxation or candidate solution.
+         */
+        double value(int var) throws SolverException;
+
+        double[] values(int[] vars) throws SolverException;
+
+        /**
+         * @return objective of the current relaxation or candidate solution.
+         */
+        double objValue() throws SolverException;
+
+        /**
+         * @return upper bound of the objective over the whole search.
+         */
+        double bestObjValue() throws SolverException;
+
+        double incumbentObjValue() throws SolverException;
+
+        /**
+         * Adds the cut <code>lo &lt;= sum coefs[k] * x[vars[k]] &lt;= hi</code> valid for the whole
+         * search, allowed for {@link Type#CUT} callbacks.
+         */
+        void addCut(int[] vars, double[] coefs, double lo, double hi) throws SolverException;
+
+        /**
+         * Proposes a solution, variables which aren't given are zero.
+         * Allowed for {@link Type#HEURISTIC} callbacks.
+         */
+        void setSolution(int[] vars, double[] values) throws SolverException;
+
+        /**
+         * Stops the search, the best solution found so far is the result.
+         */
+        void abort() throws SolverException;
+    }
+}
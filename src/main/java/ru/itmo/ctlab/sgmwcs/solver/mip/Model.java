@@ -0,0 +1,201 @@
+package ru.itmo.ctlab.sgmwcs.solver.mip;
+
+import java.util.Arrays;
+
+/**
+ * Mixed integer program <code>max cx, lo &lt;= Ax &lt;= hi, l &lt;= x &lt;= u</code> stored in
+ * primitive arrays: bounds and costs of variables by index and rows of <code>A</code>
+ * in compressed sparse row format. Models are built once and loaded into a {@link Backend}.
+ * <p>
+ * Rows are built term by term:
+ * <pre>
+ *     model.row().add(x, 1).add(y, -1).le(0);
+ * </pre>
+ * only one row may be under construction at a time.
+ */
+public class Model {
+    private int vars;
+    private double[] lower = new double[16];
+    private double[] upper = new double[16];
+    private double[] cost = new double[16];
+    private boolean[] integer = new boolean[16];
+    private String[] names = new String[16];
+
+    private int rows;
+    private int[] start = new int[17];
+    private double[] rowLower = new double[16];
+    private double[] rowUpper = new double[16];
+    private boolean[] lazy = new boolean[16];
+    private int terms;
+    private int[] index = new int[64];
+    private double[] coef = new double[64];
+    private final Row row = new Row();
+
+    public int addVariable(double lo, double hi, boolean integer, String name) {
+        if (lo > hi) {
+            throw new IllegalArgumentException("Empty domain of variable " + name);
+        }
+        if (vars == lower.length) {
+            int size = 2 * vars;
+            lower = Arrays.copyOf(lower, size);
+            upper = Arrays.copyOf(upper, size);
+            cost = Arrays.copyOf(cost, size);
+            this.integer = Arrays.copyOf(this.integer, size);
+            names = Arrays.copyOf(names, size);
+        }
+        lower[vars] = lo;
+        upper[vars] = hi;
+        this.integer[vars] = integer;
+        names[vars] = name;
+        return vars++;
+    }
+
+    public int addBoolean(String name) {
+        return addVariable(0, 1, true, name);
+    }
+
+    public int addNumeric(double lo, double hi, String name) {
+        return addVariable(lo, hi, false, name);
+    }
+
+    public void setBounds(int var, double lo, double hi) {
+        lower[var] = lo;
+        upper[var] = hi;
+    }
+
+    /**
+     * Sets the coefficient of the variable in the maximized objective.
+     */
+    public void setCost(int var, double cost) {
+        this.cost[var] = cost;
+    }
+
+    /**
+     * Starts a new row, the previous one must be finished.
+     */
+    public Row row() {
+        if (row.building) {
+            throw new IllegalStateException("Previous row is not finished");
+        }
+        row.building = true;
+        row.lazy = false;
+        return row;
+    }
+
+    public int variables() {
+        return vars;
+    }
+
+    public double lower(int var) {
+        return lower[var];
+    }
+
+    public double upper(int var) {
+        return upper[var];
+    }
+
+    public double cost(int var) {
+        return cost[var];
+    }
+
+    public boolean isInteger(int var) {
+        return integer[var];
+    }
+
+    public String name(int var) {
+        return names[var];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Terms of row <code>i</code> are at positions from <code>rowStart(i)</code> inclusive
+     * to <code>rowStart(i + 1)</code> exclusive of {@link #index(int)} and {@link #coef(int)}.
+     */
+    public int rowStart(int i) {
+        return start[i];
+    }
+
+    public int index(int term) {
+        return index[term];
+    }
+
+    public double coef(int term) {
+        return coef[term];
+    }
+
+    public double rowLower(int i) {
+        return rowLower[i];
+    }
+
+    public double rowUpper(int i) {
+        return rowUpper[i];
+    }
+
+    /**
+     * @return whether the row may be checked only for candidate solutions instead of being
+     * a part of relaxations.
+     */
+    public boolean isLazy(int i) {
+        return lazy[i];
+    }
+
+    public class Row {
+        private boolean building;
+        private boolean lazy;
+
+        private Row() {
+        }
+
+        public Row add(int var, double c) {
+            if (terms == index.length) {
+                index = Arrays.copyOf(index, 2 * terms);
+                coef = Arrays.copyOf(coef, 2 * terms);
+            }
+            index[terms] = var;
+            coef[terms++] = c;
+            return this;
+        }
+
+        public Row add(int[] vars, double c) {
+            for (int var : vars) {
+                add(var, c);
+            }
+            return this;
+        }
+
+        public Row lazy() {
+            lazy = true;
+            return this;
+        }
+
+        public void le(double hi) {
+            range(Double.NEGATIVE_INFINITY, hi);
+        }
+
+        public void ge(double lo) {
+            range(lo, Double.POSITIVE_INFINITY);
+        }
+
+        public void eq(double value) {
+            range(value, value);
+        }
+
+        public void range(double lo, double hi) {
+            if (rows == rowLower.length) {
+                int size = 2 * rows;
+                rowLower = Arrays.copyOf(rowLower, size);
+                rowUpper = Arrays.copyOf(rowUpper, size);
+                Model.this.lazy = Arrays.copyOf(Model.this.lazy, size);
+                start = Arrays.copyOf(start, size + 1);
+            }
+            rowLower[rows] = lo;
+            rowUpper[rows] = hi;
+            Model.this.lazy[rows] = lazy;
+            start[++rows] = terms;
+            building = false;
+        }
+    }
+}
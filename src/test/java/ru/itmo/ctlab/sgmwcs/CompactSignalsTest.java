@@ -0,0 +1,73 @@
+package ru.itmo.ctlab.sgmwcs;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CompactSignalsTest {
+    private static final int SEED = 20200703;
+    private static final int TESTS = 500;
+    private static final int MAX_SIZE = 30;
+    private static final double EPS = 1e-9;
+    private Random random;
+
+    public CompactSignalsTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testSameAsSignals() {
+        for (int t = 0; t < TESTS; t++) {
+            int n = random.nextInt(MAX_SIZE) + 1;
+            List<Unit> units = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                units.add(new Node(i));
+                units.add(new Edge(i));
+            }
+            Signals signals = new Signals();
+            for (Unit unit : units) {
+                signals.addAndSetWeight(unit, random.nextInt(21) - 10.0);
+            }
+            for (int i = 0; i < n; i++) {
+                int sig = signals.addSignal(random.nextInt(21) - 10.0);
+                for (Unit unit : units) {
+                    if (random.nextInt(n) == 0) {
+                        signals.add(unit, sig);
+                    }
+                }
+            }
+            CompactSignals compact = new CompactSignals(signals);
+            Assert.assertEquals(signals.size(), compact.size());
+            for (int i = 0; i < signals.size(); i++) {
+                Assert.assertEquals(signals.weight(i), compact.weight(i), EPS);
+                Assert.assertEquals(new HashSet<>(signals.set(i)), new HashSet<>(compact.set(i)));
+            }
+            for (Unit unit : units) {
+                Assert.assertEquals(signals.weight(unit), compact.weight(unit), EPS);
+                Assert.assertEquals(signals.minSum(unit), compact.minSum(unit), EPS);
+            }
+            for (int k = 0; k < 10; k++) {
+                List<Unit> subset = units.stream()
+                        .filter(u -> random.nextBoolean())
+                        .collect(Collectors.toList());
+                Assert.assertEquals(signals.unitSets(subset), toSet(compact.unitSets(subset)));
+                Assert.assertEquals(signals.positiveUnitSets(subset), toSet(compact.positiveUnitSets(subset)));
+                Assert.assertEquals(signals.negativeUnitSets(subset), toSet(compact.negativeUnitSets(subset)));
+                Assert.assertEquals(signals.sum(subset), compact.sum(subset), EPS);
+                Assert.assertEquals(signals.minSum(subset), compact.minSum(subset), EPS);
+            }
+        }
+    }
+
+    private static Set<Integer> toSet(BitSet sets) {
+        return sets.stream().boxed().collect(Collectors.toSet());
+    }
+}
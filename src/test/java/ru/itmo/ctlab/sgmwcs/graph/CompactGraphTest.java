@@ -0,0 +1,172 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CompactGraphTest {
+    private static final int SEED = 20200701;
+    private static final int TESTS = 500;
+    private static final int MAX_SIZE = 30;
+    private static final int OPERATIONS = 200;
+    private Random random;
+
+    public CompactGraphTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testSameAsGraph() {
+        for (int t = 0; t < TESTS; t++) {
+            int n = random.nextInt(MAX_SIZE) + 1;
+            Graph expected = new Graph();
+            Graph actual = new CompactGraph();
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                Node v = new Node(i);
+                nodes.add(v);
+                expected.addVertex(v);
+                actual.addVertex(v);
+            }
+            int edges = 0;
+            for (int op = 0; op < OPERATIONS; op++) {
+                List<Node> vs = new ArrayList<>(expected.vertexSet());
+                if (vs.isEmpty()) {
+                    break;
+                }
+                int kind = random.nextInt(10);
+                if (kind < 6) {
+                    Node v = vs.get(random.nextInt(vs.size()));
+                    Node u = vs.get(random.nextInt(vs.size()));
+                    Edge e = new Edge(edges++);
+                    expected.addEdge(v, u, e);
+                    actual.addEdge(v, u, e);
+                } else if (kind < 9 && !expected.edgeSet().isEmpty()) {
+                    List<Edge> es = new ArrayList<>(expected.edgeSet());
+                    Edge e = es.get(random.nextInt(es.size()));
+                    expected.removeEdge(e);
+                    actual.removeEdge(e);
+                } else if (kind == 9) {
+                    Node v = vs.get(random.nextInt(vs.size()));
+                    expected.removeVertex(v);
+                    actual.removeVertex(v);
+                }
+                check(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testSubgraph() {
+        for (int t = 0; t < TESTS; t++) {
+            int n = random.nextInt(MAX_SIZE) + 1;
+            Graph graph = new CompactGraph();
+            for (int i = 0; i < n; i++) {
+                graph.addVertex(new Node(i));
+            }
+            List<Node> nodes = new ArrayList<>(graph.vertexSet());
+            for (int i = 0; i < 2 * n; i++) {
+                graph.addEdge(nodes.get(random.nextInt(n)), nodes.get(random.nextInt(n)), new Edge(i));
+            }
+            Set<Node> subset = new HashSet<>();
+            for (Node v : nodes) {
+                if (random.nextBoolean()) {
+                    subset.add(v);
+                }
+            }
+            Graph sub = graph.subgraph(subset);
+            Assert.assertTrue(sub instanceof CompactGraph);
+            check(new Graph(graph).subgraph(subset), sub);
+        }
+    }
+
+    @Test
+    public void testCompaction() {
+        for (int t = 0; t < TESTS / 10; t++) {
+            int n = random.nextInt(10 * MAX_SIZE) + 1;
+            Graph expected = new Graph();
+            Graph actual = new CompactGraph();
+            for (int i = 0; i < n; i++) {
+                Node v = new Node(i);
+                expected.addVertex(v);
+                actual.addVertex(v);
+            }
+            List<Node> nodes = new ArrayList<>(expected.vertexSet());
+            int edges = 0;
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 4 * n; i++) {
+                    Node v = nodes.get(random.nextInt(n));
+                    Node u = nodes.get(random.nextInt(n));
+                    if (expected.containsVertex(v) && expected.containsVertex(u)) {
+                        Edge e = new Edge(edges++);
+                        expected.addEdge(v, u, e);
+                        actual.addEdge(v, u, e);
+                    }
+                }
+                for (Edge e : new ArrayList<>(expected.edgeSet())) {
+                    if (random.nextInt(4) != 0) {
+                        expected.removeEdge(e);
+                        actual.removeEdge(e);
+                    }
+                }
+                for (Node v : new ArrayList<>(expected.vertexSet())) {
+                    if (random.nextInt(10) == 0) {
+                        expected.removeVertex(v);
+                        actual.removeVertex(v);
+                    }
+                }
+                for (Graph g : Arrays.asList(expected, actual)) {
+                    Assert.assertEquals(g.edgeSet().size(), g.liveLinks());
+                    Assert.assertTrue(g.deadLinks() <= Math.max(256, g.liveLinks()));
+                }
+                check(expected, actual);
+                if (random.nextBoolean()) {
+                    expected.compact();
+                    actual.compact();
+                    Assert.assertEquals(0, expected.deadLinks());
+                    Assert.assertEquals(0, actual.deadLinks());
+                    check(expected, actual);
+                }
+            }
+        }
+    }
+
+    private void check(Graph expected, Graph actual) {
+        Assert.assertEquals(new ArrayList<>(expected.vertexSet()), new ArrayList<>(actual.vertexSet()));
+        Assert.assertEquals(new ArrayList<>(expected.edgeSet()), new ArrayList<>(actual.edgeSet()));
+        Assert.assertEquals(expected.connectedSets(), actual.connectedSets());
+        for (Node v : expected.vertexSet()) {
+            Assert.assertTrue(actual.containsVertex(v));
+            Assert.assertEquals(expected.degreeOf(v), actual.degreeOf(v));
+            Assert.assertEquals(new ArrayList<>(expected.edgesOf(v)), new ArrayList<>(actual.edgesOf(v)));
+            Assert.assertEquals(expected.neighborListOf(v), actual.neighborListOf(v));
+            for (Graph g : Arrays.asList(expected, actual)) {
+                List<Node> neighbors = new ArrayList<>();
+                List<Integer> nums = new ArrayList<>();
+                List<Edge> edges = new ArrayList<>();
+                g.forEachNeighbor(v, neighbors::add);
+                g.forEachNeighborNum(v, nums::add);
+                g.forEachIncidentEdge(v, (e, u) -> {
+                    Assert.assertEquals(g.getOppositeVertex(v, e), u);
+                    edges.add(e);
+                });
+                Assert.assertEquals(expected.neighborListOf(v), neighbors);
+                Assert.assertEquals(neighbors.stream().map(Node::getNum).collect(Collectors.toList()), nums);
+                Assert.assertEquals(new ArrayList<>(expected.edgesOf(v)), edges);
+            }
+            for (Node u : expected.neighborListOf(v)) {
+                Assert.assertEquals(expected.getAllEdges(v, u), actual.getAllEdges(v, u));
+                Assert.assertEquals(expected.getEdge(v, u), actual.getEdge(v, u));
+            }
+        }
+        for (Edge e : expected.edgeSet()) {
+            Assert.assertEquals(expected.getEdgeSource(e), actual.getEdgeSource(e));
+            Assert.assertEquals(expected.getEdgeTarget(e), actual.getEdgeTarget(e));
+        }
+    }
+}
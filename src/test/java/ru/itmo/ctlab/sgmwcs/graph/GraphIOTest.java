@@ -0,0 +1,280 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.Signals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class GraphIOTest {
+    private static final int SEED = 20200704;
+    private static final int TESTS = 100;
+    private static final int MAX_SIZE = 50;
+    private Random random;
+
+    public GraphIOTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testMappedSameAsReader() throws IOException, ParseException {
+        for (int t = 0; t < TESTS; t++) {
+            File[] files = generate();
+            GraphIO plain = new GraphIO(files[0], files[1], files[2]);
+            GraphIO mapped = new GraphIO(files[0], files[1], files[2]);
+            mapped.setMemoryMapped(true);
+            mapped.setThreads(t % 2 == 0 ? 1 : 4);
+            Graph expected = plain.read();
+            Graph actual = mapped.read();
+            assertSame(files, plain, expected, mapped, actual);
+            for (File f : files) {
+                new File(f + ".out").delete();
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testBinarySameAsReader() throws IOException, ParseException {
+        for (int t = 0; t < TESTS; t++) {
+            File[] files = generate();
+            File binary = File.createTempFile("graphio", ".bin");
+            GraphIO plain = new GraphIO(files[0], files[1], files[2]);
+            Graph expected = plain.read();
+            plain.writeBinary(expected, binary);
+            byte[] bytes = Files.readAllBytes(binary.toPath());
+            GraphIO loaded = new GraphIO(files[0], files[1], null);
+            loaded.setBinary(binary);
+            Graph actual = loaded.read();
+            assertSame(files, plain, expected, loaded, actual);
+            Set<Unit> units = Collections.newSetFromMap(new IdentityHashMap<>());
+            units.addAll(actual.units());
+            Signals signals = loaded.getSignals();
+            for (int i = 0; i < signals.size(); i++) {
+                for (Unit unit : signals.set(i)) {
+                    Assert.assertTrue(units.contains(unit));
+                }
+            }
+            GraphIO mapped = new GraphIO(files[0], files[1], files[2]);
+            mapped.setMemoryMapped(true);
+            mapped.writeBinary(mapped.read(), binary);
+            Assert.assertArrayEquals(bytes, Files.readAllBytes(binary.toPath()));
+            loaded.writeBinary(actual, binary);
+            Assert.assertArrayEquals(bytes, Files.readAllBytes(binary.toPath()));
+            binary.delete();
+            for (File f : files) {
+                new File(f + ".out").delete();
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryErrors() throws IOException, ParseException {
+        File[] files = generate();
+        File binary = File.createTempFile("graphio", ".bin");
+        GraphIO plain = new GraphIO(files[0], files[1], files[2]);
+        plain.writeBinary(plain.read(), binary);
+        byte[] bytes = Files.readAllBytes(binary.toPath());
+        byte[][] corrupted = {
+                Arrays.copyOf(bytes, 10),
+                Arrays.copyOf(bytes, bytes.length - 1),
+                Arrays.copyOf(bytes, bytes.length + 1),
+                bytes.clone(),
+                bytes.clone(),
+                bytes.clone(),
+        };
+        corrupted[3][0] ^= 1;
+        corrupted[4][7] = 2;
+        corrupted[5][35] = (byte) 0xFF;
+        for (byte[] data : corrupted) {
+            Files.write(binary.toPath(), data);
+            GraphIO loaded = new GraphIO(files[0], files[1], null);
+            loaded.setBinary(binary);
+            Assert.assertNotNull(parseError(loaded));
+        }
+        binary.delete();
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testMappedErrors() throws IOException {
+        String[][] inputs = {
+                {"a s1\nb s2\na s3\n", "a b s1\n", "s1 1\ns2 1\ns3 1\n"},
+                {"a s1\n\nb\n", "", "s1 1\n"},
+                {"a s1\nb s2\n", "# comment\na b s1\na\n", "s1 1\ns2 1\n"},
+                {"a s1\nb s2\n", "a c s1\n", "s1 1\ns2 1\n"},
+                {"a s1\r\nb s2\r\n", "a b s3\r\n", "s1 1\r\ns2 1\r\ns4 1\r\n"},
+                {"a s1\nb s2\n", "a b s1\n", "s1 1\ns2 x\n"},
+                {"a s1\nb s2\n", "a b s1\n", "s1 1\n\ns2\n"},
+        };
+        for (String[] input : inputs) {
+            File[] files = new File[3];
+            for (int i = 0; i < 3; i++) {
+                files[i] = File.createTempFile("graphio", ".txt");
+                try (PrintWriter pw = new PrintWriter(files[i])) {
+                    pw.print(input[i]);
+                }
+            }
+            ParseException expected = parseError(new GraphIO(files[0], files[1], files[2]));
+            Assert.assertNotNull(expected);
+            for (int threads : new int[]{1, 4}) {
+                GraphIO mapped = new GraphIO(files[0], files[1], files[2]);
+                mapped.setMemoryMapped(true);
+                mapped.setThreads(threads);
+                ParseException actual = parseError(mapped);
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(expected.getMessage(), actual.getMessage());
+                Assert.assertEquals(expected.getErrorOffset(), actual.getErrorOffset());
+            }
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedSameAsMapped() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int t = 0; t < TESTS; t++) {
+                File[] files = generate();
+                for (File f : files) {
+                    List<String> expected = tokens(new MappedReader(f));
+                    for (int chunk : new int[]{1, 5, 64}) {
+                        Assert.assertEquals(expected, tokens(new ChunkedReader(f, pool, chunk)));
+                    }
+                    f.delete();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> tokens(TokenSource source) throws IOException {
+        List<String> res = new ArrayList<>();
+        try (TokenSource reader = source) {
+            while (reader.nextLine()) {
+                if (reader.isComment()) {
+                    continue;
+                }
+                while (reader.nextToken()) {
+                    Assert.assertEquals(NameDictionary.hash(reader.token(), 0, reader.tokenLength()),
+                            reader.tokenHash());
+                    res.add(reader.getLineNumber() + ":" + reader.tokenString());
+                }
+            }
+        }
+        return res;
+    }
+
+    private static void assertSame(File[] files, GraphIO plain, Graph expected, GraphIO other, Graph actual)
+            throws IOException {
+        Assert.assertEquals(new ArrayList<>(expected.vertexSet()), new ArrayList<>(actual.vertexSet()));
+        Assert.assertEquals(new ArrayList<>(expected.edgeSet()), new ArrayList<>(actual.edgeSet()));
+        for (Edge e : expected.edgeSet()) {
+            Assert.assertEquals(expected.getEdgeSource(e), actual.getEdgeSource(e));
+            Assert.assertEquals(expected.getEdgeTarget(e), actual.getEdgeTarget(e));
+        }
+        Signals es = plain.getSignals(), as = other.getSignals();
+        Assert.assertEquals(es.size(), as.size());
+        for (int i = 0; i < es.size(); i++) {
+            Assert.assertEquals(es.weight(i), as.weight(i), 0.0);
+            Assert.assertEquals(new HashSet<>(es.set(i)), new HashSet<>(as.set(i)));
+        }
+        List<Unit> units = new ArrayList<>(expected.vertexSet());
+        units.addAll(expected.edgeSet());
+        for (Unit unit : units) {
+            Assert.assertEquals(es.unitSets(unit), as.unitSets(unit));
+        }
+        plain.write(units);
+        List<String> nodesOut = read(new File(files[0] + ".out"));
+        List<String> edgesOut = read(new File(files[1] + ".out"));
+        other.write(units);
+        Assert.assertEquals(nodesOut, read(new File(files[0] + ".out")));
+        Assert.assertEquals(edgesOut, read(new File(files[1] + ".out")));
+    }
+
+    private static ParseException parseError(GraphIO io) throws IOException {
+        try {
+            io.read();
+        } catch (ParseException e) {
+            return e;
+        }
+        return null;
+    }
+
+    private File[] generate() throws IOException {
+        int n = random.nextInt(MAX_SIZE) + 1;
+        int signals = random.nextInt(2 * n) + 1;
+        File[] files = new File[3];
+        for (int i = 0; i < 3; i++) {
+            files[i] = File.createTempFile("graphio", ".txt");
+        }
+        String[] separators = {" ", "\t", "  \t"};
+        String[] lineEnds = {"\n", "\r\n", "\r"};
+        String lineEnd = lineEnds[random.nextInt(lineEnds.length)];
+        try (PrintWriter pw = new PrintWriter(files[0])) {
+            pw.print("# nodes" + lineEnd);
+            for (int i = 0; i < n; i++) {
+                pw.print("node" + i);
+                for (int k = random.nextInt(3); k >= 0; k--) {
+                    pw.print(separators[random.nextInt(separators.length)] + "S" + random.nextInt(signals));
+                }
+                pw.print(random.nextInt(5) == 0 ? lineEnd + lineEnd : lineEnd);
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(files[1])) {
+            for (int i = 0; i < 2 * n; i++) {
+                pw.print("node" + random.nextInt(n) + "\tnode" + random.nextInt(n));
+                for (int k = random.nextInt(2); k >= 0; k--) {
+                    pw.print(separators[random.nextInt(separators.length)] + "S" + random.nextInt(signals));
+                }
+                if (i + 1 < 2 * n || random.nextBoolean()) {
+                    pw.print(lineEnd);
+                }
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(files[2])) {
+            Set<String> used = new HashSet<>();
+            used.addAll(read(files[0]));
+            used.addAll(read(files[1]));
+            for (int i = 0; i < signals; i++) {
+                String name = "S" + i;
+                boolean appears = false;
+                for (String line : used) {
+                    if (Arrays.asList(line.split("\\s+")).contains(name)) {
+                        appears = true;
+                        break;
+                    }
+                }
+                if (appears) {
+                    pw.print(name + "\t" + (random.nextInt(10) == 0 ? "inf" : random.nextDouble() * 20 - 10) + lineEnd);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static List<String> read(File file) throws IOException {
+        List<String> res = new ArrayList<>();
+        try (Scanner sc = new Scanner(file)) {
+            while (sc.hasNextLine()) {
+                res.add(sc.nextLine());
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.itmo.ctlab.sgmwcs.graph;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SubgraphViewTest {
+    private static final int SEED = 20200702;
+    private static final int TESTS = 500;
+    private static final int MAX_SIZE = 30;
+    private Random random;
+
+    public SubgraphViewTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testSameAsSubgraph() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = t % 2 == 0 ? new Graph() : new CompactGraph();
+            int n = random.nextInt(MAX_SIZE) + 1;
+            for (int i = 0; i < n; i++) {
+                graph.addVertex(new Node(i));
+            }
+            List<Node> nodes = new ArrayList<>(graph.vertexSet());
+            for (int i = 0; i < 2 * n; i++) {
+                graph.addEdge(nodes.get(random.nextInt(n)), nodes.get(random.nextInt(n)), new Edge(i));
+            }
+            for (int i = 0; i < n / 2; i++) {
+                List<Edge> edges = new ArrayList<>(graph.edgeSet());
+                graph.removeEdge(edges.get(random.nextInt(edges.size())));
+            }
+            Set<Node> subset = new LinkedHashSet<>();
+            for (Node v : nodes) {
+                if (random.nextBoolean()) {
+                    subset.add(v);
+                }
+            }
+            Graph expected = graph.subgraph(subset);
+            SubgraphView view = new SubgraphView(graph, subset);
+            check(expected, view);
+            check(expected, view.materialize());
+            if (!subset.isEmpty()) {
+                Set<Node> rest = new LinkedHashSet<>(subset);
+                Node removed = rest.iterator().next();
+                rest.remove(removed);
+                expected.removeVertex(removed);
+                check(expected, new SubgraphView(view, rest));
+            }
+        }
+    }
+
+    private void check(Graph expected, Graph actual) {
+        Assert.assertEquals(expected.vertexSet(), actual.vertexSet());
+        Assert.assertEquals(expected.edgeSet(), new HashSet<>(actual.edgeSet()));
+        Assert.assertEquals(expected.edgeSet().size(), actual.edgeSet().size());
+        Assert.assertEquals(new HashSet<>(expected.connectedSets()), new HashSet<>(actual.connectedSets()));
+        for (Node v : expected.vertexSet()) {
+            Assert.assertTrue(actual.containsVertex(v));
+            Assert.assertEquals(expected.degreeOf(v), actual.degreeOf(v));
+            Assert.assertEquals(expected.edgesOf(v), actual.edgesOf(v));
+            Assert.assertEquals(new HashSet<>(expected.neighborListOf(v)), new HashSet<>(actual.neighborListOf(v)));
+            for (Node u : expected.neighborListOf(v)) {
+                Assert.assertEquals(new HashSet<>(expected.getAllEdges(v, u)), new HashSet<>(actual.getAllEdges(v, u)));
+            }
+        }
+        for (Edge e : expected.edgeSet()) {
+            Assert.assertTrue(actual.containsEdge(e));
+            Assert.assertEquals(expected.getEdgeSource(e), actual.getEdgeSource(e));
+            Assert.assertEquals(expected.getEdgeTarget(e), actual.getEdgeTarget(e));
+        }
+    }
+}
@@ -33,7 +33,7 @@ public class FlowTest {
             for (int j = 0; j < TESTS_PER_SIZE; j++) {
                 MyGraph graph = randomGraph(n, edges.get(j));
                 int s = random.nextInt(n);
-                EdmondsKarp maxFlow = build(graph);
+                MaxFlow maxFlow = build(new EdmondsKarp(n), graph);
                 for (int i = 0; i < n; i++) {
                     if (i == s) {
                         continue;
@@ -52,6 +52,69 @@ public class FlowTest {
         }
     }
 
+    @Test
+    public void testPushRelabel() {
+        for (int n = 3; n < MAX_SIZE; n++) {
+            for (int j = 0; j < TESTS_PER_SIZE; j++) {
+                MyGraph graph = randomGraph(n, random.nextInt((n * (n - 1)) / 2));
+                int s = random.nextInt(n);
+                MaxFlow expected = build(new EdmondsKarp(n), graph);
+                MaxFlow actual = build(new PushRelabel(n), graph);
+                for (int i = 0; i < n; i++) {
+                    if (i == s) {
+                        continue;
+                    }
+                    double threshold = random.nextBoolean() ? Double.POSITIVE_INFINITY : random.nextDouble() * 2;
+                    List<Pair<Integer, Integer>> cut = actual.computeMinCut(s, i, threshold);
+                    Assert.assertEquals(expected.computeMinCut(s, i, threshold) == null, cut == null);
+                    if (cut != null) {
+                        MinSourceSinkCut<Integer, Integer> checker = new MinSourceSinkCut<>(graph);
+                        checker.computeMinCut(s, i);
+                        Assert.assertEquals(checker.getCutWeight(), getCutCapacity(cut, graph), 1e-4);
+                        List<Pair<Integer, Integer>> back = actual.backCut(i);
+                        Assert.assertEquals(checker.getCutWeight(), getCutCapacity(back, graph), 1e-4);
+                        Assert.assertEquals(getCutCapacity(expected.backCut(i), graph),
+                                getCutCapacity(back, graph), 1e-4);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWarmStart() {
+        for (int n = 3; n < MAX_SIZE; n++) {
+            for (int j = 0; j < TESTS_PER_SIZE / 10; j++) {
+                MyGraph graph = randomGraph(n, random.nextInt((n * (n - 1)) / 2));
+                int s = random.nextInt(n);
+                MaxFlow actual = build(new PushRelabel(n), graph);
+                for (int round = 0; round < 10; round++) {
+                    for (Integer e : graph.edgeSet()) {
+                        if (random.nextInt(3) == 0) {
+                            double capacity = random.nextDouble();
+                            graph.setEdgeWeight(e, capacity);
+                            actual.setCapacity(graph.getEdgeSource(e), graph.getEdgeTarget(e), capacity);
+                        }
+                    }
+                    MaxFlow expected = build(new EdmondsKarp(n), graph);
+                    for (int k = 0; k < n; k++) {
+                        int t = random.nextInt(n);
+                        if (t == s) {
+                            continue;
+                        }
+                        double threshold = random.nextBoolean() ? Double.POSITIVE_INFINITY : random.nextDouble() * 2;
+                        List<Pair<Integer, Integer>> cut = actual.computeMinCut(s, t, threshold);
+                        List<Pair<Integer, Integer>> expectedCut = expected.computeMinCut(s, t, threshold);
+                        Assert.assertEquals(expectedCut == null, cut == null);
+                        if (cut != null) {
+                            Assert.assertEquals(getCutCapacity(expectedCut, graph), getCutCapacity(cut, graph), 1e-6);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     private MyGraph randomGraph(int n, int m){
         MyGraph graph = new MyGraph();
         for (int i = 0; i < n; i++) {
@@ -79,9 +142,7 @@ public class FlowTest {
         return sum;
     }
 
-    private EdmondsKarp build(MyGraph graph) {
-        int n = graph.vertexSet().size();
-        EdmondsKarp g = new EdmondsKarp(n);
+    private MaxFlow build(MaxFlow g, MyGraph graph) {
         for (Integer e : graph.edgeSet()) {
             int v = graph.getEdgeSource(e);
             int u = graph.getEdgeTarget(e);
@@ -0,0 +1,152 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.ReferenceSolver;
+import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.TestCase;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.util.*;
+
+import static ru.itmo.ctlab.sgmwcs.solver.Utils.sum;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BranchAndCutSolverTest {
+    private static final int SEED = 20201017;
+    private static final int TESTS = 150;
+    private static final int MAX_SIZE = 10;
+    private static final int MAX_EDGES = 15;
+    private Random random;
+    private ReferenceSolver referenceSolver;
+
+    public BranchAndCutSolverTest() {
+        random = new Random(SEED);
+        referenceSolver = new ReferenceSolver();
+    }
+
+    @Test
+    public void test01_unrooted() throws SolverException {
+        for (int i = 0; i < TESTS; i++) {
+            TestCase test = generate();
+            List<Unit> expected = referenceSolver.solve(test.graph(), test.signals());
+            List<Unit> actual = new BranchAndCutSolver().solve(test.graph(), test.signals());
+            check(test, expected, actual);
+        }
+    }
+
+    @Test
+    public void test02_rooted() throws SolverException {
+        for (int i = 0; i < TESTS; i++) {
+            TestCase test = generate();
+            List<Node> nodes = new ArrayList<>(test.graph().vertexSet());
+            Node root = nodes.get(random.nextInt(nodes.size()));
+            List<Unit> expected = referenceSolver.solve(test.graph(), test.signals(),
+                    Collections.singletonList(root));
+            BranchAndCutSolver solver = new BranchAndCutSolver();
+            solver.setRoot(root);
+            List<Unit> actual = solver.solve(test.graph(), test.signals());
+            Assert.assertTrue(actual.contains(root));
+            check(test, expected, actual);
+        }
+    }
+
+    @Test
+    public void test03_componentSolver() throws SolverException {
+        for (int i = 0; i < TESTS; i++) {
+            TestCase test = generate();
+            List<Unit> expected = referenceSolver.solve(test.graph(), test.signals());
+            ComponentSolver solver = new ComponentSolver(3, false);
+            solver.setJavaSolverSize(MAX_SIZE);
+            List<Unit> actual = solver.solve(test.graph(), test.signals());
+            check(test, expected, actual);
+        }
+    }
+
+    @Test
+    public void test04_separationThreads() throws SolverException {
+        try (SolverPool pool = new SolverPool(4)) {
+            CoreBudget cores = new CoreBudget(pool);
+            for (int i = 0; i < TESTS; i++) {
+                TestCase test = generate();
+                List<Node> nodes = new ArrayList<>(test.graph().vertexSet());
+                Node root = nodes.get(random.nextInt(nodes.size()));
+                List<Unit> expected = referenceSolver.solve(test.graph(), test.signals(),
+                        Collections.singletonList(root));
+                BranchAndCutSolver solver = new BranchAndCutSolver();
+                solver.setRoot(root);
+                solver.setSeparationThreads(4);
+                solver.setCores(cores);
+                List<Unit> actual = solver.solve(test.graph(), test.signals());
+                Assert.assertTrue(actual.contains(root));
+                check(test, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void test05_cutFamilies() throws SolverException {
+        for (int i = 0; i < TESTS; i++) {
+            TestCase test = generate();
+            List<Node> nodes = new ArrayList<>(test.graph().vertexSet());
+            Node root = nodes.get(random.nextInt(nodes.size()));
+            List<Unit> expected = referenceSolver.solve(test.graph(), test.signals(),
+                    Collections.singletonList(root));
+            BranchAndCutSolver solver = new BranchAndCutSolver();
+            solver.setRoot(root);
+            solver.setCutFamilies(true, 2, 1e-3);
+            List<Unit> actual = solver.solve(test.graph(), test.signals());
+            Assert.assertTrue(actual.contains(root));
+            check(test, expected, actual);
+        }
+    }
+
+    private void check(TestCase test, List<Unit> expected, List<Unit> actual) {
+        Graph graph = test.graph();
+        Set<Node> nodes = new HashSet<>();
+        Set<Edge> edges = new HashSet<>();
+        for (Unit unit : actual) {
+            if (unit instanceof Node) {
+                nodes.add((Node) unit);
+            } else {
+                edges.add((Edge) unit);
+            }
+        }
+        for (Edge e : edges) {
+            Assert.assertTrue(nodes.contains(graph.getEdgeSource(e)) && nodes.contains(graph.getEdgeTarget(e)));
+        }
+        if (!nodes.isEmpty()) {
+            Assert.assertEquals(1, graph.subgraph(nodes, edges).connectedSets().size());
+        }
+        Assert.assertEquals(sum(expected, test.signals()), sum(actual, test.signals()), 1e-6);
+    }
+
+    private TestCase generate() {
+        int n = random.nextInt(MAX_SIZE) + 1;
+        int m = n - 1 + random.nextInt(MAX_EDGES - n + 2);
+        Graph graph = new Graph();
+        Map<Unit, Double> weights = new HashMap<>();
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(i + 1);
+            graph.addVertex(nodes[i]);
+            weights.put(nodes[i], random.nextInt(16) - 8.0);
+        }
+        for (int i = 0; i < m && n > 1; i++) {
+            int u = i < n - 1 ? i + 1 : random.nextInt(n);
+            int v = i < n - 1 ? random.nextInt(i + 1) : random.nextInt(n - 1);
+            if (i >= n - 1 && v >= u) {
+                v++;
+            }
+            Edge edge = new Edge(i + 1);
+            graph.addEdge(nodes[u], nodes[v], edge);
+            weights.put(edge, random.nextInt(16) - 8.0);
+        }
+        return new TestCase(graph, weights, random);
+    }
+}
@@ -0,0 +1,62 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CutPoolTest {
+    private static final double EPS = 1e-5;
+
+    @Test
+    public void test01_duplicates() {
+        CutPool pool = new CutPool(3, EPS);
+        Assert.assertTrue(pool.add(new int[]{1, 2, 3, 0}));
+        Assert.assertFalse(pool.add(new int[]{3, 1, 2, 0}));
+        Assert.assertTrue(pool.add(new int[]{1, 2, 3, 4}));
+        Assert.assertTrue(pool.add(new int[]{1, 2, 0, 3}));
+        Assert.assertEquals(3, pool.size());
+    }
+
+    @Test
+    public void test02_selection() {
+        CutPool pool = new CutPool(3, EPS);
+        double[] values = {1, 0.2, 0.2, 0.2, 0.1};
+        IntToDoubleFunction value = var -> values[var];
+        pool.add(new int[]{1, 2, 0});
+        pool.add(new int[]{4, 0});
+        pool.add(new int[]{1, 2, 3, 0});
+        pool.add(new int[]{1, 2, 3, 4, 0});
+        List<int[]> cuts = pool.select(value, 2);
+        Assert.assertEquals(2, cuts.size());
+        Assert.assertArrayEquals(new int[]{4, 0}, cuts.get(0));
+        Assert.assertArrayEquals(new int[]{1, 2, 0}, cuts.get(1));
+        Assert.assertEquals(4, pool.select(value, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void test03_aging() {
+        CutPool pool = new CutPool(2, EPS);
+        double[] values = {1, 0.5, 0.6};
+        IntToDoubleFunction value = var -> values[var];
+        pool.add(new int[]{1, 0});
+        pool.add(new int[]{2, 0});
+        for (int round = 0; round < 5; round++) {
+            if (round == 1) {
+                values[2] = 1;
+            }
+            pool.select(value, 1);
+        }
+        Assert.assertEquals(1, pool.size());
+        Assert.assertArrayEquals(new int[]{1, 0}, pool.select(value, 1).get(0));
+        values[1] = 1;
+        for (int round = 0; round < 3; round++) {
+            Assert.assertTrue(pool.select(value, 1).isEmpty());
+        }
+        Assert.assertEquals(0, pool.size());
+    }
+}
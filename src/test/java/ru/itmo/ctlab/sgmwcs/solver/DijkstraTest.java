@@ -0,0 +1,97 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.CompactSignals;
+import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.util.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class DijkstraTest {
+    private static final int SEED = 20200715;
+    private static final int TESTS = 1000;
+    private static final int MAX_SIZE = 30;
+    private Random random;
+
+    public DijkstraTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void test01_boundedNE() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals);
+            CompactSignals snapshot = new CompactSignals(signals);
+            Dijkstra bounded = new Dijkstra(graph, snapshot);
+            Dijkstra unbounded = new Dijkstra(graph, snapshot);
+            unbounded.setBounded(false);
+            for (Node u : graph.vertexSet()) {
+                List<Node> neighbors = graph.neighborListOf(u);
+                neighbors.remove(u);
+                if (neighbors.isEmpty()) {
+                    continue;
+                }
+                Assert.assertEquals(unbounded.solveNE(u, neighbors), bounded.solveNE(u, neighbors));
+            }
+        }
+    }
+
+    @Test
+    public void test02_boundedNP() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals);
+            CompactSignals snapshot = new CompactSignals(signals);
+            Dijkstra bounded = new Dijkstra(graph, snapshot);
+            Dijkstra unbounded = new Dijkstra(graph, snapshot);
+            unbounded.setBounded(false);
+            for (Node u : graph.vertexSet()) {
+                Assert.assertEquals(unbounded.solveNP(u), bounded.solveNP(u));
+            }
+        }
+    }
+
+    /**
+     * Units get up to two signals, so paths share signals and distances have ties.
+     */
+    private void generate(Graph graph, Signals signals) {
+        int n = random.nextInt(MAX_SIZE) + 2;
+        int m = random.nextInt(2 * n) + n - 1;
+        int k = random.nextInt(n + m) + 1;
+        for (int i = 0; i < k; i++) {
+            signals.addSignal(random.nextInt(12) - 8.0);
+        }
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(i + 1);
+            graph.addVertex(nodes[i]);
+            addSignals(nodes[i], signals, k);
+        }
+        for (int i = 0; i < m; i++) {
+            int u = random.nextInt(n);
+            int v = random.nextInt(n - 1);
+            Edge edge = new Edge(i + 1);
+            graph.addEdge(nodes[u], nodes[v < u ? v : v + 1], edge);
+            addSignals(edge, signals, k);
+        }
+    }
+
+    private void addSignals(Unit unit, Signals signals, int k) {
+        int first = random.nextInt(k);
+        signals.add(unit, first);
+        int second = random.nextInt(k);
+        if (random.nextBoolean() && second != first) {
+            signals.add(unit, second);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.TestCase;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+import ru.itmo.ctlab.sgmwcs.graph.Unit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PreprocessingCacheTest {
+    private static final int SEED = 20200705;
+    private static final int TESTS = 200;
+    private static final int MAX_SIZE = 30;
+    private Random random;
+
+    public PreprocessingCacheTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testSameAsPreprocessing() throws IOException {
+        File dir = Files.createTempDirectory("prep").toFile();
+        PreprocessingCache cache = new PreprocessingCache(dir, Long.MAX_VALUE);
+        for (int t = 0; t < TESTS; t++) {
+            TestCase test = generate();
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            Utils.copy(test.graph(), test.signals(), graph, signals);
+            Set<Unit> units = new HashSet<>(graph.vertexSet());
+            units.addAll(graph.edgeSet());
+            String key = cache.key(graph, signals, 2, null);
+            Assert.assertEquals(key, cache.key(test.graph(), test.signals(), 2, null));
+            Assert.assertNotEquals(key, cache.key(graph, signals, 1, null));
+            Assert.assertFalse(cache.load(key, new Graph(), new Signals()));
+            new Preprocessor(graph, signals).preprocess(2);
+            Signals reduced = new Signals(signals, units);
+            cache.store(key, graph, reduced);
+            Graph loaded = new Graph();
+            Signals loadedSignals = new Signals();
+            Assert.assertTrue(cache.load(key, loaded, loadedSignals));
+            Assert.assertEquals(new ArrayList<>(graph.vertexSet()), new ArrayList<>(loaded.vertexSet()));
+            Assert.assertEquals(new ArrayList<>(graph.edgeSet()), new ArrayList<>(loaded.edgeSet()));
+            for (Edge e : graph.edgeSet()) {
+                Assert.assertEquals(graph.getEdgeSource(e), loaded.getEdgeSource(e));
+                Assert.assertEquals(graph.getEdgeTarget(e), loaded.getEdgeTarget(e));
+            }
+            Map<Unit, Unit> loadedUnits = new HashMap<>();
+            loaded.vertexSet().forEach(v -> loadedUnits.put(v, v));
+            loaded.edgeSet().forEach(e -> loadedUnits.put(e, e));
+            List<Unit> remaining = new ArrayList<>(graph.vertexSet());
+            remaining.addAll(graph.edgeSet());
+            for (Unit unit : remaining) {
+                Assert.assertEquals(reduced.weight(unit), loadedSignals.weight(unit), 0.0);
+                Assert.assertEquals(reduced.unitSets(unit), loadedSignals.unitSets(unit));
+                Assert.assertEquals(nums(unit.getAbsorbed()), nums(loadedUnits.get(unit).getAbsorbed()));
+            }
+        }
+        deleteAll(dir);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File dir = Files.createTempDirectory("prep").toFile();
+        PreprocessingCache cache = new PreprocessingCache(dir, 4096);
+        List<String> keys = new ArrayList<>();
+        for (int t = 0; t < 50; t++) {
+            TestCase test = generate();
+            String key = cache.key(test.graph(), test.signals(), 2, null);
+            cache.store(key, test.graph(), test.signals());
+            keys.add(key);
+            long total = 0;
+            for (File f : Objects.requireNonNull(dir.listFiles())) {
+                total += f.length();
+            }
+            Assert.assertTrue(total <= 4096 || dir.listFiles().length == 1);
+            Assert.assertTrue(cache.load(key, new Graph(), new Signals()));
+        }
+        Assert.assertFalse(cache.load(keys.get(0), new Graph(), new Signals()));
+        deleteAll(dir);
+    }
+
+    @Test
+    public void testBrokenEntry() throws IOException {
+        File dir = Files.createTempDirectory("prep").toFile();
+        PreprocessingCache cache = new PreprocessingCache(dir, Long.MAX_VALUE);
+        TestCase test = generate();
+        String key = cache.key(test.graph(), test.signals(), 2, null);
+        cache.store(key, test.graph(), test.signals());
+        File entry = Objects.requireNonNull(dir.listFiles())[0];
+        byte[] data = Files.readAllBytes(entry.toPath());
+        Files.write(entry.toPath(), Arrays.copyOf(data, data.length / 2));
+        Assert.assertFalse(cache.load(key, new Graph(), new Signals()));
+        Assert.assertFalse(entry.exists());
+        deleteAll(dir);
+    }
+
+    @Test
+    public void testSolverWithCache() throws IOException, SolverException {
+        File dir = Files.createTempDirectory("prep").toFile();
+        for (int t = 0; t < TESTS; t++) {
+            TestCase test = generate();
+            ComponentSolver solver = new ComponentSolver(3, false);
+            solver.setCplexOff(true);
+            solver.setPreprocessingLevel(2);
+            List<Unit> expected = solver.solve(test.graph(), test.signals());
+            solver.setPreprocessingCache(new PreprocessingCache(dir, Long.MAX_VALUE));
+            List<Unit> stored = solver.solve(test.graph(), test.signals());
+            List<Unit> loaded = solver.solve(test.graph(), test.signals());
+            Assert.assertEquals(sorted(expected), sorted(stored));
+            Assert.assertEquals(sorted(expected), sorted(loaded));
+        }
+        deleteAll(dir);
+    }
+
+    private static List<String> sorted(List<Unit> units) {
+        return units == null ? null : nums(units).stream().sorted().collect(Collectors.toList());
+    }
+
+    private static List<String> nums(List<Unit> units) {
+        return units.stream()
+                .map(u -> (u instanceof Edge ? "e" : "n") + u.getNum())
+                .collect(Collectors.toList());
+    }
+
+    private static void deleteAll(File dir) {
+        for (File f : Objects.requireNonNull(dir.listFiles())) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private TestCase generate() {
+        int n = random.nextInt(MAX_SIZE) + 1;
+        int m = random.nextInt(2 * n);
+        Graph graph = new Graph();
+        Map<Unit, Double> weights = new HashMap<>();
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(i + 1);
+            graph.addVertex(nodes[i]);
+            weights.put(nodes[i], random.nextInt(16) - 8.0);
+        }
+        for (int i = 0; i < m && n > 1; i++) {
+            int u = random.nextInt(n);
+            int v = random.nextInt(n - 1);
+            Edge edge = new Edge(i + 1);
+            graph.addEdge(nodes[u], nodes[v < u ? v : v + 1], edge);
+            weights.put(edge, random.nextInt(16) - 8.0);
+        }
+        return new TestCase(graph, weights, random);
+    }
+}
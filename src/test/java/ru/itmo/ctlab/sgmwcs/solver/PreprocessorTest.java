@@ -0,0 +1,163 @@
+package ru.itmo.ctlab.sgmwcs.solver;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import ru.itmo.ctlab.sgmwcs.ReferenceSolver;
+import ru.itmo.ctlab.sgmwcs.Signals;
+import ru.itmo.ctlab.sgmwcs.TimeLimit;
+import ru.itmo.ctlab.sgmwcs.graph.Edge;
+import ru.itmo.ctlab.sgmwcs.graph.Graph;
+import ru.itmo.ctlab.sgmwcs.graph.Node;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PreprocessorTest {
+    private static final int SEED = 20200712;
+    private static final int TESTS = 500;
+    private static final int MAX_SIZE = 40;
+    private static final int MAX_PARALLEL_SIZE = 400;
+    private static final int MAX_REFERENCE_SIZE = 12;
+    private Random random;
+
+    public PreprocessorTest() {
+        random = new Random(SEED);
+    }
+
+    @Test
+    public void testIncrementalSameAsFull() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals, MAX_SIZE);
+            for (int level = 0; level <= 2; level++) {
+                Graph full = new Graph();
+                Signals fullSignals = new Signals();
+                Utils.copy(graph, signals, full, fullSignals);
+                Preprocessor fullPreprocessor = new Preprocessor(full, fullSignals);
+                fullPreprocessor.setIncremental(false);
+                fullPreprocessor.preprocess(level);
+                Graph inc = new Graph();
+                Signals incSignals = new Signals();
+                Utils.copy(graph, signals, inc, incSignals);
+                new Preprocessor(inc, incSignals).preprocess(level);
+                Assert.assertEquals(new ArrayList<>(full.vertexSet()), new ArrayList<>(inc.vertexSet()));
+                Assert.assertEquals(new ArrayList<>(full.edgeSet()), new ArrayList<>(inc.edgeSet()));
+                for (Edge e : full.edgeSet()) {
+                    Assert.assertEquals(full.getEdgeSource(e), inc.getEdgeSource(e));
+                    Assert.assertEquals(full.getEdgeTarget(e), inc.getEdgeTarget(e));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSharedPool() {
+        try (SolverPool pool = new SolverPool(4)) {
+            for (int t = 0; t < TESTS / 10; t++) {
+                Graph graph = new Graph();
+                Signals signals = new Signals();
+                generate(graph, signals, MAX_PARALLEL_SIZE);
+                Graph sequential = new Graph();
+                Signals sequentialSignals = new Signals();
+                Utils.copy(graph, signals, sequential, sequentialSignals);
+                new Preprocessor(sequential, sequentialSignals, 1, 0).preprocess(2);
+                new Preprocessor(graph, signals, pool, 0).preprocess(2);
+                Assert.assertEquals(new HashSet<>(sequential.vertexSet()), new HashSet<>(graph.vertexSet()));
+                Assert.assertEquals(new HashSet<>(sequential.edgeSet()), new HashSet<>(graph.edgeSet()));
+            }
+        }
+    }
+
+    @Test
+    public void testStats() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals, MAX_SIZE);
+            int before = graph.vertexSet().size() + graph.edgeSet().size();
+            PreprocessingStats stats = new PreprocessingStats();
+            Preprocessor preprocessor = new Preprocessor(graph, signals);
+            preprocessor.setStats(stats);
+            preprocessor.preprocess(2);
+            List<PreprocessingStats.Record> records = stats.records();
+            Assert.assertFalse(records.isEmpty());
+            long removed = 0;
+            for (PreprocessingStats.Record record : records) {
+                Assert.assertTrue(record.iteration >= 1);
+                Assert.assertTrue(record.wallNanos >= 0);
+                Assert.assertTrue(record.tested >= 0);
+                removed += record.removed;
+            }
+            Assert.assertEquals(before - graph.vertexSet().size() - graph.edgeSet().size(), removed);
+            StringWriter csv = new StringWriter();
+            stats.writeCsv(new PrintWriter(csv));
+            Assert.assertEquals(records.size() + 1, csv.toString().split("\n").length);
+        }
+    }
+
+    @Test
+    public void testTimeLimit() {
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals, MAX_SIZE);
+            Graph copy = new Graph();
+            Signals copySignals = new Signals();
+            Utils.copy(graph, signals, copy, copySignals);
+            Preprocessor preprocessor = new Preprocessor(graph, signals);
+            preprocessor.setTimeLimit(new TimeLimit(0));
+            preprocessor.preprocess(2);
+            Assert.assertTrue(preprocessor.isInterrupted());
+            Assert.assertEquals(new HashSet<>(copy.vertexSet()), new HashSet<>(graph.vertexSet()));
+            Assert.assertEquals(new HashSet<>(copy.edgeSet()), new HashSet<>(graph.edgeSet()));
+        }
+    }
+
+    @Test
+    public void testAdaptiveSameOptimum() throws SolverException {
+        ReferenceSolver referenceSolver = new ReferenceSolver();
+        for (int t = 0; t < TESTS; t++) {
+            Graph graph = new Graph();
+            Signals signals = new Signals();
+            generate(graph, signals, MAX_REFERENCE_SIZE);
+            Graph adaptive = new Graph();
+            Signals adaptiveSignals = new Signals();
+            Utils.copy(graph, signals, adaptive, adaptiveSignals);
+            new Preprocessor(graph, signals).preprocess(2);
+            Preprocessor preprocessor = new Preprocessor(adaptive, adaptiveSignals);
+            preprocessor.setAdaptive(true);
+            preprocessor.preprocess(2);
+            Assert.assertFalse(preprocessor.isInterrupted());
+            double expected = Utils.sum(referenceSolver.solve(graph, signals), signals);
+            double actual = Utils.sum(referenceSolver.solve(adaptive, adaptiveSignals), adaptiveSignals);
+            Assert.assertEquals(expected, actual, 1e-6);
+        }
+    }
+
+    private void generate(Graph graph, Signals signals, int maxSize) {
+        int n = random.nextInt(maxSize) + 1;
+        int m = random.nextInt(2 * n);
+        int k = random.nextInt(n + m) + 1;
+        for (int i = 0; i < k; i++) {
+            signals.addSignal(random.nextInt(16) - 8.0);
+        }
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(i + 1);
+            graph.addVertex(nodes[i]);
+            signals.add(nodes[i], random.nextInt(k));
+        }
+        for (int i = 0; i < m && n > 1; i++) {
+            int u = random.nextInt(n);
+            int v = random.nextInt(n - 1);
+            Edge edge = new Edge(i + 1);
+            graph.addEdge(nodes[u], nodes[v < u ? v : v + 1], edge);
+            signals.add(edge, random.nextInt(k));
+        }
+    }
+}